@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.rest.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.handywedge.binarystore.store.aws.S3ClientHolder;
+import com.handywedge.binarystore.store.azure.ABSClientHolder;
+import com.handywedge.binarystore.store.common.MetadataFetcher;
+import com.handywedge.binarystore.store.common.PartUploader;
+import com.handywedge.binarystore.store.common.StoreException;
+import com.handywedge.binarystore.store.gcs.GCSClientHolder;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * ストレージクライアントの生成と破棄を行います。<br>
+ * 起動時にクライアントを生成しておくことで、最初のリクエストで接続確立のコストが掛からないようにします。
+ */
+@WebListener
+public class BinaryStoreServiceContextListener implements ServletContextListener {
+
+  private static Logger logger = LoggerFactory.getLogger(BinaryStoreServiceContextListener.class);
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    String curStorage = System.getenv("HW_STORAGE");
+    if (curStorage == null) {
+      return;
+    }
+    try {
+      switch (curStorage) {
+        case "S3":
+          S3ClientHolder.getClient();
+          break;
+        case "GCS":
+          GCSClientHolder.getClient();
+          break;
+        case "ABS":
+          ABSClientHolder.getClient();
+          break;
+        default:
+          break;
+      }
+    } catch (StoreException e) {
+      // 起動は継続し、最初のリクエストで再度生成する
+      logger.warn("ストレージクライアントの生成に失敗しました。storage={}", curStorage, e);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    S3ClientHolder.shutdown();
+    GCSClientHolder.shutdown();
+    ABSClientHolder.shutdown();
+    PartUploader.shutdown();
+    MetadataFetcher.shutdown();
+  }
+}
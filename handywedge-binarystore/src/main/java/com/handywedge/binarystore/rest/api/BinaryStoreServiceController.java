@@ -10,17 +10,25 @@ package com.handywedge.binarystore.rest.api;
 
 import static java.nio.charset.StandardCharsets.*;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import org.apache.http.HttpStatus;
 import org.glassfish.jersey.media.multipart.BodyPart;
@@ -52,6 +60,9 @@ public class BinaryStoreServiceController {
 
   private Logger logger = LoggerFactory.getLogger(BinaryStoreServiceController.class);
 
+  // ダウンロードの転送バッファサイズ
+  private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+
   private IStoreManager manager = null;
 
   private StorageInfo storage = null;
@@ -305,4 +316,167 @@ public class BinaryStoreServiceController {
     return Response.ok().build();
 
   }
+
+  /**
+   * バイナリデータをストレージから読み込みながら返却します。<br>
+   * Range（単一範囲のみ）とIf-None-Matchに対応します。
+   */
+  @GET
+  @Path("/download")
+  public Response download(@QueryParam("requestId") String requestId,
+      @QueryParam("bucketName") String bucketName, @QueryParam("fileName") String fileName,
+      @HeaderParam("Range") String range,
+      @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+    MDC.put("method", "DOWNLOAD");
+    logger.info("api start. fileName={}, range={}, ifNoneMatch={}", fileName, range, ifNoneMatch);
+
+    try {
+      init();
+      if (CommonUtils.isNullOrEmpty(fileName)) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL,
+            String.valueOf(fileName));
+      }
+      BinaryInfo binary = new BinaryInfo(getBucketName(requestId, bucketName));
+      binary.setFileName(fileName);
+
+      BinaryInfo metadata = manager.getMetadata(storage, binary);
+      if (metadata == null) {
+        StoreException se = new StoreException(HttpStatus.SC_NOT_FOUND,
+            ErrorClassification.NOT_FOUND, fileName);
+        logger.info("api end. {}", se.getMessage());
+        return Response.status(se.getHttpStatus()).entity(se.getMessage()).build();
+      }
+
+      EntityTag etag = metadata.getEtag() == null ? null : new EntityTag(metadata.getEtag());
+      if (etag != null && matchesEtag(ifNoneMatch, etag)) {
+        logger.info("api end. not modified.");
+        return Response.notModified(etag).build();
+      }
+
+      long size = metadata.getSize();
+      long[] byteRange = parseRange(range, size);
+      if (byteRange != null && byteRange.length == 0) {
+        logger.info("api end. range not satisfiable. size={}", size);
+        return Response.status(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+            .header("Content-Range", "bytes */" + size).build();
+      }
+      long offset = byteRange == null ? 0 : byteRange[0];
+      long length = byteRange == null ? size : byteRange[1] - byteRange[0] + 1;
+
+      ResponseBuilder builder =
+          Response.status(byteRange == null ? HttpStatus.SC_OK : HttpStatus.SC_PARTIAL_CONTENT)
+              .type(metadata.getContentType()).tag(etag).header("Accept-Ranges", "bytes")
+              .header(HttpHeaders.CONTENT_LENGTH, length);
+      if (byteRange != null) {
+        builder.header("Content-Range",
+            "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + size);
+      }
+      if (length == 0) {
+        logger.info("api end. empty binary.");
+        return builder.build();
+      }
+
+      // メタデータと同じ版を読み込む（ETag・世代番号で固定する）
+      InputStream in = manager.openStream(storage, metadata, offset, length);
+      StreamingOutput body = out -> {
+        long start = System.currentTimeMillis();
+        long written = 0;
+        // 固定長のバッファでストレージのストリームからレスポンスへ転送する
+        byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+        try (InputStream is = in) {
+          int n;
+          while ((n = is.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            written += n;
+          }
+          out.flush();
+        } catch (IOException e) {
+          logger.warn("download aborted. written={}/{}", written, length, e);
+          throw e;
+        }
+        logger.info("End download process. {} bytes [{}]ms", written,
+            (System.currentTimeMillis() - start));
+      };
+
+      logger.info("api end. offset={}, length={}", offset, length);
+      return builder.entity(body).build();
+    } catch (StoreException se) {
+      logger.error("api has Exception.", se);
+      return Response.status(se.getHttpStatus()).entity(se.getMessage()).build();
+    } catch (Exception e) {
+      StoreException se = new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+          ErrorClassification.RUNTIME_ERROR, e, e.getMessage());
+      logger.error("api has Exception.", se);
+      return Response.status(se.getHttpStatus()).entity(se.getMessage()).build();
+    }
+  }
+
+  /**
+   * If-None-Matchのいずれかのエンティティタグと一致するかを判定します。弱い比較で判定します。
+   */
+  private boolean matchesEtag(String ifNoneMatch, EntityTag etag) {
+    if (CommonUtils.isNullOrEmpty(ifNoneMatch)) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if ("*".equals(tag)) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+        tag = tag.substring(1, tag.length() - 1);
+      }
+      if (tag.equals(etag.getValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rangeヘッダーを解析し、開始位置と終了位置を返します。<br>
+   * Rangeヘッダーがない場合や解析できない場合、複数範囲の場合は全体を返すためnullを返します。
+   * 範囲がサイズを超えている場合は空の配列を返します。
+   */
+  private long[] parseRange(String range, long size) {
+    if (CommonUtils.isNullOrEmpty(range) || !range.startsWith("bytes=")
+        || range.indexOf(',') >= 0) {
+      return null;
+    }
+    String spec = range.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last = spec.substring(dash + 1).trim();
+      long start;
+      long end;
+      if (first.isEmpty()) {
+        // 末尾からの長さ（bytes=-500）
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0) {
+          return new long[0];
+        }
+        start = Math.max(size - suffix, 0);
+        end = size - 1;
+      } else {
+        start = Long.parseLong(first);
+        if (!last.isEmpty() && Long.parseLong(last) < start) {
+          return null;
+        }
+        end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+      }
+      if (start >= size) {
+        return new long[0];
+      }
+      return new long[] {start, end};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
 }
@@ -49,6 +49,28 @@ public interface IStoreManager {
    */
   public List<BinaryInfo> list(StorageInfo storage, BinaryInfo binary) throws StoreException;
 
+  /**
+   * バイナリデータのメタデータ（サイズ、Content-Type、ETag）のみを取得します。該当するバイナリデータが存在しない場合はnullを返します。
+   *
+   * @param storage ストレージ情報
+   * @param binary バイナリデータ情報
+   * @return バイナリデータ情報
+   */
+  public BinaryInfo getMetadata(StorageInfo storage, BinaryInfo binary) throws StoreException;
+
+  /**
+   * バイナリデータの指定範囲を読み込む入力ストリームを返します。ストリームは呼び出し元でクローズしてください。<br>
+   * メタデータ取得後に更新された場合に別の内容を返さないよう、ETag（GCSは世代番号）が一致する場合のみ読み込みます。
+   *
+   * @param storage ストレージ情報
+   * @param binary {@link #getMetadata}で取得したバイナリデータ情報
+   * @param offset 開始位置
+   * @param length 長さ
+   * @return 入力ストリーム
+   */
+  public InputStream openStream(StorageInfo storage, BinaryInfo binary, long offset, long length)
+      throws StoreException;
+
   /**
    * バイナリデータを削除します。
    *
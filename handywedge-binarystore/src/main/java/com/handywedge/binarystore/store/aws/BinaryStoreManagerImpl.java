@@ -7,51 +7,31 @@
  */
 package com.handywedge.binarystore.store.aws;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PushbackInputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.ClientConfiguration;
 import com.amazonaws.HttpMethod;
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.EnvironmentVariableCredentialsProvider;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
-import com.amazonaws.services.s3.model.CreateBucketRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
-import com.amazonaws.services.s3.model.GetBucketLocationRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
-import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
-import com.amazonaws.services.s3.model.MultipartUpload;
-import com.amazonaws.services.s3.model.MultipartUploadListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
@@ -61,65 +41,29 @@ import com.amazonaws.services.s3.model.UploadPartResult;
 import com.handywedge.binarystore.store.IStoreManager;
 import com.handywedge.binarystore.store.common.BinaryInfo;
 import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.MetadataFetcher;
+import com.handywedge.binarystore.store.common.PartUploader;
 import com.handywedge.binarystore.store.common.StorageInfo;
 import com.handywedge.binarystore.store.common.StoreException;
-import com.handywedge.binarystore.util.CommonUtils;
 import com.handywedge.binarystore.util.PropertiesUtil;
 
 public class BinaryStoreManagerImpl implements IStoreManager {
 
   private static Logger logger = LoggerFactory.getLogger(BinaryStoreManagerImpl.class);
 
-  // 転送のデフォルトパートサイズ
-  private static final long BINARY_PART_SIZE_5MB = 5 * 1024 * 1024;
-
-  // Defalut Region
-  private final Regions DEFAULT_REGION = Regions.AP_NORTHEAST_1;
+  // アップロードの最大サイズ
+  private static final long BINARY_MAX_SIZE = 5L * 1024 * 1024 * 1024;
 
   /**
-   * クライアント生成
+   * クライアント取得
    *
    * @param bucketName
    * @return s3client
    * @throws StoreException
-   * @throws Exception
    */
   private AmazonS3 getS3Client(String bucketName) throws StoreException {
-    logger.debug("get S3 Client start.");
-    // 認証情報
-    AWSCredentialsProvider provider = new EnvironmentVariableCredentialsProvider();
-
-    // クライアント設定
-    ClientConfiguration clientConfig = new ClientConfiguration()
-
-        // .withProtocol(Protocol.HTTPS) // Proxy設定
-        // .withProxyHost("proxyHost")
-        // .withProxyPort(80)
-        // .withProxyUsername("proxyUsername")
-        // .withProxyPassword("proxyPassword")
-
-        .withConnectionTimeout(10000);
-
-    // クライアント生成
-    AmazonS3 s3client = AmazonS3ClientBuilder.standard().withCredentials(provider)
-        .withClientConfiguration(clientConfig).withRegion(DEFAULT_REGION)
-        .withForceGlobalBucketAccessEnabled(true).build();
-
-    logger.debug("Region={}", s3client.getRegion());
-
-    try {
-      // バケット作成
-      if (!CommonUtils.isNullOrEmpty(bucketName) && !(s3client.doesBucketExistV2(bucketName))) {
-        s3client.createBucket(new CreateBucketRequest(bucketName, DEFAULT_REGION.getName()));
-      }
-      // Get location.
-      String bucketLocation = s3client.getBucketLocation(new GetBucketLocationRequest(bucketName));
-      logger.info("bucket location={}", bucketLocation);
-    } catch (AmazonClientException ace) {
-      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, ace, "バケット");
-    }
-
-    logger.info("get S3 Client end.");
+    AmazonS3 s3client = S3ClientHolder.getClient();
+    S3ClientHolder.ensureBucket(s3client, bucketName);
     return s3client;
   }
 
@@ -131,129 +75,13 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     AmazonS3 s3client = getS3Client(binary.getBucketName());
 
-    ObjectMetadata oMetadata = new ObjectMetadata();
-    oMetadata.setContentType(binary.getContentType());
-
-    // マルチパート初期化処理
-    InitiateMultipartUploadRequest initRequest =
-        new InitiateMultipartUploadRequest(binary.getBucketName(), binary.getFileName(), oMetadata);
-    InitiateMultipartUploadResult initResponse = s3client.initiateMultipartUpload(initRequest);
-
+    MultipartHandler handler = new MultipartHandler(s3client, binary);
     try {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      long written = IOUtils.copyLarge(inStream, baos, 0, BINARY_PART_SIZE_5MB);
-
-      byte[] data = baos.toByteArray();
-      InputStream awsInputStream = new ByteArrayInputStream(data);
-
-      if (written < BINARY_PART_SIZE_5MB) {
-        oMetadata.setContentLength(written);
-        s3client.putObject(binary.getBucketName(), binary.getFileName(), awsInputStream, oMetadata);
-      } else {
-        int firstByte = 0;
-        int partNumber = 1;
-        boolean isFirstChunck = true;
-        boolean overSizeLimit = false;
-        List<PartETag> partETags = new ArrayList<PartETag>();
-        InputStream firstChunck = new ByteArrayInputStream(data);
-        PushbackInputStream chunckableInputStream = new PushbackInputStream(inStream, 1);
-
-        long maxSize = BINARY_PART_SIZE_5MB * 1024;
-        String maxSizeStr = "5GB";
-        String prefix = MDC.get("requestId");
-        while (-1 != (firstByte = chunckableInputStream.read())) {
-          long partSize = 0;
-          chunckableInputStream.unread(firstByte);
-          File tempFile =
-              File.createTempFile(prefix.concat("-part").concat(String.valueOf(partNumber)), null);
-          tempFile.deleteOnExit();
-          try (OutputStream os =
-              new BufferedOutputStream(new FileOutputStream(tempFile.getAbsolutePath()))) {
-
-            if (isFirstChunck) {
-              partSize = IOUtils.copyLarge(firstChunck, os, 0, (BINARY_PART_SIZE_5MB));
-              isFirstChunck = false;
-            } else {
-              partSize = IOUtils.copyLarge(chunckableInputStream, os, 0, (BINARY_PART_SIZE_5MB));
-            }
-            written += partSize;
-
-            if (written > maxSize) { // 5GB以上
-              overSizeLimit = true;
-              logger.warn("OVERSIZED FILE ({}). STARTING ABORT", written);
-              break;
-            }
-          }
-
-          FileInputStream chunk = new FileInputStream(tempFile);
-          Boolean isLastPart = -1 == (firstByte = chunckableInputStream.read());
-          if (!isLastPart) {
-            chunckableInputStream.unread(firstByte);
-          }
-
-          oMetadata.setContentLength(partSize);
-
-          UploadPartRequest uploadRequest =
-              new UploadPartRequest().withBucketName(binary.getBucketName())
-                  .withKey(binary.getFileName()).withUploadId(initResponse.getUploadId())
-                  .withObjectMetadata(oMetadata).withInputStream(chunk).withPartSize(partSize)
-                  .withPartNumber(partNumber).withLastPart(isLastPart);
-          UploadPartResult result = s3client.uploadPart(uploadRequest);
-          partETags.add(result.getPartETag());
-          partNumber++;
-        }
-
-        if (overSizeLimit) {
-          ListMultipartUploadsRequest listRequest =
-              new ListMultipartUploadsRequest(binary.getBucketName());
-          MultipartUploadListing listResult = s3client.listMultipartUploads(listRequest);
-
-          int timesIterated = 20;
-          // loop and abort all the multipart uploads
-          while (listResult.getMultipartUploads().size() != 0 && timesIterated > 0) {
-            s3client.abortMultipartUpload(new AbortMultipartUploadRequest(binary.getBucketName(),
-                binary.getFileName(), initResponse.getUploadId()));
-            Thread.sleep(1000);
-            timesIterated--;
-            listResult = s3client.listMultipartUploads(listRequest);
-            logger.debug("Files that haven't been aborted are: {}",
-                listResult.getMultipartUploads().listIterator().toString());
-          }
-          if (timesIterated == 0) {
-            logger.warn("Files parts that couldn't be aborted in 20 seconds are:");
-            Iterator<MultipartUpload> multipartUploadIterator =
-                listResult.getMultipartUploads().iterator();
-            while (multipartUploadIterator.hasNext()) {
-              logger.warn(multipartUploadIterator.next().getKey());
-            }
-          }
-          throw new StoreException(HttpStatus.SC_REQUEST_TOO_LONG,
-              ErrorClassification.UPLOAD_TOO_LARGE, maxSizeStr);
-        } else {
-          CompleteMultipartUploadRequest compRequest = new CompleteMultipartUploadRequest(
-              binary.getBucketName(), binary.getFileName(), initResponse.getUploadId(), partETags);
-
-          CompleteMultipartUploadResult comMPUResult =
-              s3client.completeMultipartUpload(compRequest);
-          logger.debug("CompleteMultipartUploadResult={}", comMPUResult);
-        }
-      }
-    } catch (AmazonServiceException ase) {
-      s3client.abortMultipartUpload(new AbortMultipartUploadRequest(binary.getBucketName(),
-          binary.getFileName(), initResponse.getUploadId()));
-      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ase,
-          binary.toString());
-    } catch (AmazonClientException ace) {
-      s3client.abortMultipartUpload(new AbortMultipartUploadRequest(binary.getBucketName(),
-          binary.getFileName(), initResponse.getUploadId()));
-      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ace,
-          binary.toString());
-    } catch (IOException ioe) {
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.UPLOAD_FAIL,
-          ioe, binary.toString());
-    } catch (InterruptedException itre) {
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.UPLOAD_FAIL,
-          itre, binary.toString());
+      PartUploader.upload(inStream, BINARY_MAX_SIZE, handler);
+      handler.complete();
+    } catch (StoreException se) {
+      handler.abort();
+      throw se;
     } finally {
       if (inStream != null) {
         try {
@@ -266,6 +94,95 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     return getBinaryInfo(s3client, binary.getBucketName(), binary.getFileName());
   }
 
+  /**
+   * パート単位のアップロード処理
+   */
+  static class MultipartHandler implements PartUploader.PartHandler {
+
+    private final AmazonS3 s3client;
+
+    private final BinaryInfo binary;
+
+    private final ObjectMetadata oMetadata = new ObjectMetadata();
+
+    private final Map<Integer, PartETag> partETags = new ConcurrentSkipListMap<>();
+
+    private String uploadId;
+
+    MultipartHandler(AmazonS3 s3client, BinaryInfo binary) {
+      this.s3client = s3client;
+      this.binary = binary;
+      oMetadata.setContentType(binary.getContentType());
+    }
+
+    @Override
+    public void single(byte[] data, int length) throws StoreException {
+      try {
+        oMetadata.setContentLength(length);
+        s3client.putObject(binary.getBucketName(), binary.getFileName(),
+            new ByteArrayInputStream(data, 0, length), oMetadata);
+      } catch (AmazonClientException ace) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ace,
+            binary.toString());
+      }
+    }
+
+    @Override
+    public void initiate() throws StoreException {
+      try {
+        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(
+            binary.getBucketName(), binary.getFileName(), oMetadata);
+        uploadId = s3client.initiateMultipartUpload(initRequest).getUploadId();
+      } catch (AmazonClientException ace) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ace,
+            binary.toString());
+      }
+    }
+
+    @Override
+    public void part(int partNumber, byte[] data, int length) throws StoreException {
+      try {
+        UploadPartRequest uploadRequest = new UploadPartRequest()
+            .withBucketName(binary.getBucketName()).withKey(binary.getFileName())
+            .withUploadId(uploadId).withInputStream(new ByteArrayInputStream(data, 0, length))
+            .withPartSize(length).withPartNumber(partNumber);
+        UploadPartResult result = s3client.uploadPart(uploadRequest);
+        partETags.put(partNumber, result.getPartETag());
+      } catch (AmazonClientException ace) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ace,
+            binary.toString());
+      }
+    }
+
+    void complete() throws StoreException {
+      if (uploadId == null) {
+        return;
+      }
+      try {
+        CompleteMultipartUploadRequest compRequest =
+            new CompleteMultipartUploadRequest(binary.getBucketName(), binary.getFileName(),
+                uploadId, new ArrayList<>(partETags.values()));
+        CompleteMultipartUploadResult comMPUResult = s3client.completeMultipartUpload(compRequest);
+        logger.debug("CompleteMultipartUploadResult={}", comMPUResult);
+      } catch (AmazonClientException ace) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ace,
+            binary.toString());
+      }
+    }
+
+    void abort() {
+      if (uploadId == null) {
+        return;
+      }
+      // 実行中のパートは全て終了しているため、1度の中止で残りのパートも削除される
+      try {
+        s3client.abortMultipartUpload(new AbortMultipartUploadRequest(binary.getBucketName(),
+            binary.getFileName(), uploadId));
+      } catch (AmazonClientException ace) {
+        logger.warn("マルチパートアップロードの中止に失敗しました。uploadId={}", uploadId, ace);
+      }
+    }
+  }
 
   @Override
   public void delete(StorageInfo storage, BinaryInfo binary) throws StoreException {
@@ -304,12 +221,12 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     BinaryInfo binary = new BinaryInfo(bucketName);
     try {
-      S3Object s3binary = s3client.getObject(new GetObjectRequest(bucketName, fileName));
+      ObjectMetadata metadata = s3client.getObjectMetadata(bucketName, fileName);
 
-      if (null != s3binary) {
+      if (null != metadata) {
         binary.setFileName(fileName);
-        binary.setContentType(s3binary.getObjectMetadata().getContentType());
-        binary.setSize(s3binary.getObjectMetadata().getContentLength());
+        binary.setContentType(metadata.getContentType());
+        binary.setSize(metadata.getContentLength());
         binary.setUrl(s3client.getUrl(binary.getBucketName(), binary.getFileName()).toString());
 
         logger.debug("Generating pre-signed URL.");
@@ -340,16 +257,17 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     try {
       logger.debug("Get an binary");
-      if (!s3client.doesObjectExist(binary.getBucketName(), binary.getFileName())) {
+      // 本体は取得せず、メタデータ（HEAD）のみ取得する
+      ObjectMetadata metadata = getObjectMetadata(s3client, binary.getBucketName(),
+          binary.getFileName());
+      if (metadata == null) {
         logger.info("The Binary has not exsit.bucket={}, binary={}", binary.getBucketName(),
             binary.getFileName());
         return null;
       }
 
-      S3Object s3binary =
-          s3client.getObject(new GetObjectRequest(binary.getBucketName(), binary.getFileName()));
-      binary.setContentType(s3binary.getObjectMetadata().getContentType());
-      binary.setSize(s3binary.getObjectMetadata().getContentLength());
+      binary.setContentType(metadata.getContentType());
+      binary.setSize(metadata.getContentLength());
       binary.setUrl(s3client.getUrl(binary.getBucketName(), binary.getFileName()).toString());
 
       logger.debug("Generating pre-signed URL.");
@@ -379,20 +297,19 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     try {
       logger.debug("Listing binaries");
+      // 1ページの最大件数（1000件）で取得する
       final ListObjectsV2Request req =
-          new ListObjectsV2Request().withBucketName(binary.getBucketName()).withMaxKeys(2);
+          new ListObjectsV2Request().withBucketName(binary.getBucketName());
       ListObjectsV2Result result;
       do {
         result = s3client.listObjectsV2(req);
+        List<BinaryInfo> page = new ArrayList<BinaryInfo>();
         for (S3ObjectSummary binarySummary : result.getObjectSummaries()) {
           logger.debug(" - {}(size={})", binarySummary.getKey(), binarySummary.getSize());
           if (binarySummary.getSize() != 0) {
             BinaryInfo objInfo = new BinaryInfo(binary.getBucketName());
             objInfo.setFileName(binarySummary.getKey());
             objInfo.setSize(binarySummary.getSize());
-            S3Object s3Object = s3client
-                .getObject(new GetObjectRequest(binary.getBucketName(), binarySummary.getKey()));
-            objInfo.setContentType(s3Object.getObjectMetadata().getContentType());
             objInfo
                 .setUrl(s3client.getUrl(binary.getBucketName(), binarySummary.getKey()).toString());
 
@@ -402,9 +319,23 @@ public class BinaryStoreManagerImpl implements IStoreManager {
             objInfo.setPresignedUrl(PresignedUrl.toString());
             logger.debug("Pre-Signed URL = " + PresignedUrl.toString());
 
-            objInfoList.add(objInfo);
+            page.add(objInfo);
           }
         }
+
+        // 一覧にはコンテンツタイプが含まれないため、メタデータ（HEAD）を並列に取得する
+        MetadataFetcher.fetchAll(page, objInfo -> {
+          try {
+            ObjectMetadata metadata =
+                s3client.getObjectMetadata(objInfo.getBucketName(), objInfo.getFileName());
+            objInfo.setContentType(metadata.getContentType());
+          } catch (AmazonClientException ace) {
+            throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.LIST_FAIL,
+                ace, objInfo.getFileName());
+          }
+        });
+        objInfoList.addAll(page);
+
         logger.debug("Next Continuation Token : " + result.getNextContinuationToken());
         req.setContinuationToken(result.getNextContinuationToken());
       } while (result.isTruncated() == true);
@@ -421,6 +352,71 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     return objInfoList;
   }
 
+  @Override
+  public BinaryInfo getMetadata(StorageInfo storage, BinaryInfo binary) throws StoreException {
+    logger.debug("ストレージ情報={}", storage);
+    logger.debug("バイナリ情報={}", binary);
+
+    AmazonS3 s3client = getS3Client(binary.getBucketName());
+
+    try {
+      ObjectMetadata metadata =
+          getObjectMetadata(s3client, binary.getBucketName(), binary.getFileName());
+      if (metadata == null) {
+        return null;
+      }
+      BinaryInfo rtnBinary = new BinaryInfo(binary.getBucketName());
+      rtnBinary.setFileName(binary.getFileName());
+      rtnBinary.setContentType(metadata.getContentType());
+      rtnBinary.setSize(metadata.getContentLength());
+      rtnBinary.setEtag(metadata.getETag());
+      return rtnBinary;
+    } catch (AmazonClientException ace) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, ace,
+          binary.getFileName());
+    }
+  }
+
+  @Override
+  public InputStream openStream(StorageInfo storage, BinaryInfo binary, long offset, long length)
+      throws StoreException {
+    logger.debug("バイナリ情報={}, offset={}, length={}", binary, offset, length);
+
+    AmazonS3 s3client = getS3Client(binary.getBucketName());
+
+    try {
+      GetObjectRequest request = new GetObjectRequest(binary.getBucketName(), binary.getFileName())
+          .withRange(offset, offset + length - 1);
+      if (binary.getEtag() != null) {
+        request.withMatchingETagConstraint(binary.getEtag());
+      }
+      S3Object object = s3client.getObject(request);
+      if (object == null) {
+        // メタデータ取得後に更新された（ETagの制約を満たさない）
+        throw new StoreException(HttpStatus.SC_PRECONDITION_FAILED, ErrorClassification.GET_FAIL,
+            binary.getFileName());
+      }
+      return object.getObjectContent();
+    } catch (AmazonClientException ace) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, ace,
+          binary.getFileName());
+    }
+  }
+
+  /*
+   * メタデータ取得。オブジェクトが存在しない場合はnullを返す。
+   */
+  private ObjectMetadata getObjectMetadata(AmazonS3 s3client, String bucketName, String key) {
+    try {
+      return s3client.getObjectMetadata(bucketName, key);
+    } catch (AmazonServiceException ase) {
+      if (ase.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+        return null;
+      }
+      throw ase;
+    }
+  }
+
   /*
    * 署名づきURL取得
    */
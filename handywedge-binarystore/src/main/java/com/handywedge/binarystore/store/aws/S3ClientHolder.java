@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.aws;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.EnvironmentVariableCredentialsProvider;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.CreateBucketRequest;
+import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.StoreException;
+import com.handywedge.binarystore.util.CommonUtils;
+import com.handywedge.binarystore.util.PropertiesUtil;
+
+/**
+ * S3クライアントの保持クラスです。<br>
+ * クライアント（コネクションプール）はプロセスで1つだけ生成し、全てのリクエストで共有します。<br>
+ * バケットの存在確認・作成はバケット毎に1度だけ行います。
+ */
+public final class S3ClientHolder {
+
+  private static Logger logger = LoggerFactory.getLogger(S3ClientHolder.class);
+
+  // Defalut Region
+  static final Regions DEFAULT_REGION = Regions.AP_NORTHEAST_1;
+
+  private static volatile AmazonS3 client;
+
+  // 存在確認済みのバケット
+  private static final Set<String> buckets = ConcurrentHashMap.newKeySet();
+
+  private S3ClientHolder() {}
+
+  /**
+   * S3クライアントを取得します。初回のみ生成します。
+   */
+  public static AmazonS3 getClient() {
+    AmazonS3 c = client;
+    if (c == null) {
+      synchronized (S3ClientHolder.class) {
+        c = client;
+        if (c == null) {
+          c = createClient();
+          client = c;
+        }
+      }
+    }
+    return c;
+  }
+
+  private static AmazonS3 createClient() {
+    logger.info("create S3 Client start.");
+    // 認証情報
+    AWSCredentialsProvider provider = new EnvironmentVariableCredentialsProvider();
+
+    // クライアント設定
+    ClientConfiguration clientConfig = new ClientConfiguration()
+
+        // .withProtocol(Protocol.HTTPS) // Proxy設定
+        // .withProxyHost("proxyHost")
+        // .withProxyPort(80)
+        // .withProxyUsername("proxyUsername")
+        // .withProxyPassword("proxyPassword")
+
+        .withConnectionTimeout(PropertiesUtil.getInt("aws.client.connection.timeout", 10000))
+        .withSocketTimeout(PropertiesUtil.getInt("aws.client.socket.timeout", 50000))
+        .withMaxConnections(PropertiesUtil.getInt("aws.client.max.connections", 50))
+        .withConnectionTTL(PropertiesUtil.getInt("aws.client.connection.ttl", 60000))
+        .withTcpKeepAlive(true);
+
+    // クライアント生成
+    AmazonS3 s3client = AmazonS3ClientBuilder.standard().withCredentials(provider)
+        .withClientConfiguration(clientConfig).withRegion(DEFAULT_REGION)
+        .withForceGlobalBucketAccessEnabled(true).build();
+
+    logger.info("create S3 Client end. Region={}, maxConnections={}", s3client.getRegion(),
+        clientConfig.getMaxConnections());
+    return s3client;
+  }
+
+  /**
+   * バケットが存在しない場合は作成します。確認済みのバケットは何もしません。
+   *
+   * @param s3client S3クライアント
+   * @param bucketName バケット名
+   * @throws StoreException
+   */
+  public static void ensureBucket(AmazonS3 s3client, String bucketName) throws StoreException {
+    if (CommonUtils.isNullOrEmpty(bucketName) || buckets.contains(bucketName)) {
+      return;
+    }
+    try {
+      // バケット作成
+      if (!s3client.doesBucketExistV2(bucketName)) {
+        s3client.createBucket(new CreateBucketRequest(bucketName, DEFAULT_REGION.getName()));
+        logger.info("bucket created. bucket={}", bucketName);
+      }
+    } catch (AmazonClientException ace) {
+      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, ace, "バケット");
+    }
+    buckets.add(bucketName);
+  }
+
+  /**
+   * クライアントを破棄します。アプリケーションの停止時に呼び出されます。
+   */
+  public static synchronized void shutdown() {
+    if (client != null) {
+      client.shutdown();
+      client = null;
+    }
+    buckets.clear();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.azure;
+
+import java.net.URISyntaxException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.StoreException;
+import com.handywedge.binarystore.util.CommonUtils;
+import com.handywedge.binarystore.util.PropertiesUtil;
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.StorageCredentials;
+import com.microsoft.azure.storage.StorageCredentialsAccountAndKey;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobContainerPermissions;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+
+/**
+ * ABSクライアントの保持クラスです。<br>
+ * クライアントはプロセスで1つだけ生成し、全てのリクエストで共有します。<br>
+ * コンテナーの存在確認・作成と権限設定はコンテナー毎に1度だけ行います。
+ */
+public final class ABSClientHolder {
+
+  private static Logger logger = LoggerFactory.getLogger(ABSClientHolder.class);
+
+  private static volatile CloudBlobClient client;
+
+  // 存在確認済みのコンテナー
+  private static final Set<String> containers = ConcurrentHashMap.newKeySet();
+
+  private ABSClientHolder() {}
+
+  /**
+   * ABSクライアントを取得します。初回のみ生成します。
+   *
+   * @throws StoreException
+   */
+  public static CloudBlobClient getClient() throws StoreException {
+    CloudBlobClient c = client;
+    if (c == null) {
+      synchronized (ABSClientHolder.class) {
+        c = client;
+        if (c == null) {
+          c = createClient();
+          client = c;
+        }
+      }
+    }
+    return c;
+  }
+
+  private static CloudBlobClient createClient() throws StoreException {
+    logger.info("create ABS Client start.");
+
+    CloudStorageAccount account = null;
+    try {
+      String accountName = PropertiesUtil.get("abs.credentials.accountname");
+      String accountKey = PropertiesUtil.get("abs.credentials.accountkey");
+      StorageCredentials creds = new StorageCredentialsAccountAndKey(accountName, accountKey);
+      account = new CloudStorageAccount(creds, true);
+    } catch (URISyntaxException ue) {
+      // TODO BS0003の置換文字列がない
+      throw new StoreException(HttpStatus.SC_UNAUTHORIZED, ErrorClassification.BS0003, ue);
+    }
+
+    CloudBlobClient bClient = account.createCloudBlobClient();
+    BlobRequestOptions options = bClient.getDefaultRequestOptions();
+    options.setTimeoutIntervalInMs(PropertiesUtil.getInt("abs.client.timeout", 60000));
+
+    // SDKはHttpURLConnectionを使用するため、接続の再利用数はJVM全体のKeep-Alive設定に従う
+    // JVMのシステムプロパティは他のアプリケーションにも影響するため、ここでは変更しない
+    // 変更する場合は起動オプション（例: -Dhttp.maxConnections=50）で指定する
+    logger.info("create ABS Client end. http.maxConnections={}",
+        System.getProperty("http.maxConnections", "5(default)"));
+    return bClient;
+  }
+
+  /**
+   * コンテナーの存在を確認し、存在しない場合は作成します。確認済みのコンテナーは何もしません。
+   *
+   * @param bClient ABSクライアント
+   * @param bucketName コンテナー名
+   * @param isCreated 存在しない場合に作成する場合はtrue
+   * @throws StoreException
+   */
+  public static void ensureContainer(CloudBlobClient bClient, String bucketName,
+      boolean isCreated) throws StoreException {
+    if (CommonUtils.isNullOrEmpty(bucketName) || containers.contains(bucketName)) {
+      return;
+    }
+    try {
+      CloudBlobContainer container = bClient.getContainerReference(bucketName);
+      if (!container.exists()) {
+        if (isCreated == false) {
+          throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND,
+              bucketName);
+        }
+        container.createIfNotExists();
+      }
+
+      // アップロード権限付与
+      BlobContainerPermissions containerPermissions = new BlobContainerPermissions();
+      container.uploadPermissions(containerPermissions);
+
+    } catch (URISyntaxException ue) {
+      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, ue, "コンテナー");
+    } catch (StorageException se) {
+      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, se, "コンテナー");
+    }
+    containers.add(bucketName);
+  }
+
+  /**
+   * クライアントを破棄します。アプリケーションの停止時に呼び出されます。
+   */
+  public static synchronized void shutdown() {
+    client = null;
+    containers.clear();
+  }
+}
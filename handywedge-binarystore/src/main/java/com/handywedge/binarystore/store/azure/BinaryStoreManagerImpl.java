@@ -7,17 +7,9 @@
  */
 package com.handywedge.binarystore.store.azure;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PushbackInputStream;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
@@ -28,33 +20,31 @@ import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import jakarta.enterprise.context.RequestScoped;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.handywedge.binarystore.store.IStoreManager;
 import com.handywedge.binarystore.store.common.BinaryInfo;
+import com.handywedge.binarystore.store.common.BoundedInputStream;
 import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.PartUploader;
 import com.handywedge.binarystore.store.common.StorageInfo;
 import com.handywedge.binarystore.store.common.StoreException;
 import com.handywedge.binarystore.util.PropertiesUtil;
-import com.microsoft.azure.storage.CloudStorageAccount;
-import com.microsoft.azure.storage.StorageCredentials;
-import com.microsoft.azure.storage.StorageCredentialsAccountAndKey;
+import com.microsoft.azure.storage.AccessCondition;
 import com.microsoft.azure.storage.StorageException;
-import com.microsoft.azure.storage.blob.BlobContainerPermissions;
-import com.microsoft.azure.storage.blob.BlobOutputStream;
+import com.microsoft.azure.storage.blob.BlobInputStream;
 import com.microsoft.azure.storage.blob.BlobProperties;
 import com.microsoft.azure.storage.blob.BlockEntry;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
-import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.ListBlobItem;
 import com.microsoft.azure.storage.blob.SharedAccessBlobPermissions;
@@ -65,11 +55,11 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
   private static Logger logger = LoggerFactory.getLogger(BinaryStoreManagerImpl.class);
 
-  // 転送のデフォルトパートサイズ
-  private static final long BINARY_PART_SIZE_5MB = 5 * 1024 * 1024;
+  // アップロードの最大サイズ
+  private static final long BINARY_MAX_SIZE = 5L * 1024 * 1024 * 1024;
 
   /**
-   * ABSクライアント生成
+   * ABSクライアント取得
    *
    * @param bucketName バケット名
    * @param isCreated バケット作成フラグ
@@ -77,45 +67,11 @@ public class BinaryStoreManagerImpl implements IStoreManager {
    * @throws StoreException
    */
   private CloudBlobClient getABSClient(String bucketName, boolean isCreated) throws StoreException {
-    logger.debug("get ABS Client start.");
-
-    CloudStorageAccount account = null;
-    try {
-      String accountName = PropertiesUtil.get("abs.credentials.accountname");
-      String accountKey = PropertiesUtil.get("abs.credentials.accountkey");
-      StorageCredentials creds = new StorageCredentialsAccountAndKey(accountName, accountKey);
-      account = new CloudStorageAccount(creds, true);
-    } catch (URISyntaxException ue) {
-      // TODO BS0003の置換文字列がない
-      throw new StoreException(HttpStatus.SC_UNAUTHORIZED, ErrorClassification.BS0003, ue);
-    }
-
-    CloudBlobClient bClient = account.createCloudBlobClient();
-
-    try {
-      CloudBlobContainer container = bClient.getContainerReference(bucketName);
-      if (!container.exists()) {
-        if (isCreated == false) {
-          throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND, bucketName);
-        }
-        container.createIfNotExists();
-      }
-
-      // アップロード権限付与
-      BlobContainerPermissions containerPermissions = new BlobContainerPermissions();
-      container.uploadPermissions(containerPermissions);
-
-    } catch (URISyntaxException ue) {
-      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, ue, "コンテナー");
-    } catch (com.microsoft.azure.storage.StorageException se) {
-      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, se, "コンテナー");
-    }
-
-    logger.info("get ABS Client end.");
+    CloudBlobClient bClient = ABSClientHolder.getClient();
+    ABSClientHolder.ensureContainer(bClient, bucketName, isCreated);
     return bClient;
   }
 
-
   @SuppressWarnings("unused")
   @Override
   public BinaryInfo upload(StorageInfo storage, BinaryInfo binary, InputStream inStream)
@@ -131,97 +87,22 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     BinaryInfo rtnBinary = new BinaryInfo();
     try {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      long written = IOUtils.copyLarge(inStream, baos, 0, BINARY_PART_SIZE_5MB);
-
-      byte[] data = baos.toByteArray();
-      InputStream awsInputStream = new ByteArrayInputStream(data);
       CloudBlockBlob blob = bClient.getContainerReference(binary.getBucketName())
           .getBlockBlobReference(binary.getFileName());
 
-      if (written < BINARY_PART_SIZE_5MB) {
-        BlobOutputStream blobOutputStream = blob.openOutputStream();
-
-        int next = awsInputStream.read();
-        while (next != -1) {
-          blobOutputStream.write(next);
-          next = awsInputStream.read();
-        }
-        blobOutputStream.close();
-
-        blob.downloadAttributes();
-        BlobProperties properties = blob.getProperties();
-        properties.setContentType(binary.getContentType());
-        blob.uploadProperties();
-
-      } else {
-        int firstByte = 0;
-        int partNumber = 1;
-        Boolean isFirstChunck = true;
-        Boolean overSizeLimit = false;
-        List<BlockEntry> blockList = new ArrayList<BlockEntry>();
-        InputStream firstChunck = new ByteArrayInputStream(data);
-        PushbackInputStream chunckableInputStream = new PushbackInputStream(inStream, 1);
-
-        while (-1 != (firstByte = chunckableInputStream.read())) {
-          long partSize = 0;
-          chunckableInputStream.unread(firstByte);
-          File tempFile = File.createTempFile(
-              UUID.randomUUID().toString().concat("-part").concat(String.valueOf(partNumber)),
-              "tmp");
-          tempFile.deleteOnExit();
-          OutputStream os = null;
-          try {
-            os = new BufferedOutputStream(new FileOutputStream(tempFile.getAbsolutePath()));
-
-            if (isFirstChunck == true) {
-              partSize = IOUtils.copyLarge(firstChunck, os, 0, (BINARY_PART_SIZE_5MB));
-              isFirstChunck = false;
-            } else {
-              partSize = IOUtils.copyLarge(chunckableInputStream, os, 0, (BINARY_PART_SIZE_5MB));
-            }
-            written += partSize;
-
-            if (written > BINARY_PART_SIZE_5MB * 1024) { // 5GB以上
-              overSizeLimit = true;
-              logger.error("OVERSIZED FILE ({}). STARTING ABORT", written);
-              break;
-            }
-          } finally {
-            IOUtils.closeQuietly(os);
-          }
-
-          FileInputStream chunk = new FileInputStream(tempFile);
-          Boolean isLastPart = -1 == (firstByte = chunckableInputStream.read());
-          if (!isLastPart) {
-            chunckableInputStream.unread(firstByte);
-          }
-
-          String blockId = Base64.encodeBase64String(
-              String.format("BlockId%07d", partNumber).getBytes(StandardCharsets.UTF_8));
-          BlockEntry block = new BlockEntry(blockId);
-          blockList.add(block);
-          blob.uploadBlock(blockId, chunk, partSize);
-
-          partNumber++;
-          chunk.close();
-        }
-
-        blob.commitBlockList(blockList);
-
-        blob.downloadAttributes();
-        BlobProperties properties = blob.getProperties();
-        properties.setContentType(binary.getContentType());
-        blob.uploadProperties();
+      // コンテンツタイプはアップロード（コミット）時に一緒に設定する
+      blob.getProperties().setContentType(binary.getContentType());
 
+      BlockHandler handler = new BlockHandler(blob, binary);
+      long size = PartUploader.upload(inStream, BINARY_MAX_SIZE, handler);
+      if (handler.isMultipart()) {
+        blob.commitBlockList(handler.getBlockList());
         logger.debug("commitBlockList.");
       }
 
-      if (blob.exists()) {
-        rtnBinary = createReturnBinaryInfo(blob);
-      } else {
-        rtnBinary = binary;
-      }
+      // アップロード結果のプロパティを使用し、再取得はしない
+      rtnBinary = toBinaryInfo(blob);
+      rtnBinary.setSize(size);
 
     } catch (StorageException se) {
       throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, se,
@@ -229,12 +110,6 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     } catch (URISyntaxException ue) {
       throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, ue,
           binary.getFileName());
-    } catch (FileNotFoundException fe) {
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.UPLOAD_FAIL, fe,
-          binary.getFileName());
-    } catch (IOException ioe) {
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.UPLOAD_FAIL, ioe,
-          binary.getFileName());
     } finally {
       if (inStream != null) {
         try {
@@ -252,43 +127,104 @@ public class BinaryStoreManagerImpl implements IStoreManager {
   }
 
 
-  private BinaryInfo createReturnBinaryInfo(CloudBlockBlob blob) throws StoreException {
+  /**
+   * ブロック単位のアップロード処理
+   */
+  static class BlockHandler implements PartUploader.PartHandler {
+
+    private final CloudBlockBlob blob;
+
+    private final BinaryInfo binary;
+
+    private final Map<Integer, BlockEntry> blocks = new ConcurrentSkipListMap<>();
+
+    private boolean multipart = false;
+
+    BlockHandler(CloudBlockBlob blob, BinaryInfo binary) {
+      this.blob = blob;
+      this.binary = binary;
+    }
+
+    @Override
+    public void single(byte[] data, int length) throws StoreException {
+      try {
+        blob.uploadFromByteArray(data, 0, length);
+      } catch (StorageException se) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, se,
+            binary.getFileName());
+      } catch (IOException ioe) {
+        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.UPLOAD_FAIL, ioe, binary.getFileName());
+      }
+    }
+
+    @Override
+    public void initiate() {
+      multipart = true;
+    }
+
+    @Override
+    public void part(int partNumber, byte[] data, int length) throws StoreException {
+      String blockId = Base64.encodeBase64String(
+          String.format("BlockId%07d", partNumber).getBytes(StandardCharsets.UTF_8));
+      try {
+        blob.uploadBlock(blockId, new ByteArrayInputStream(data, 0, length), length);
+        blocks.put(partNumber, new BlockEntry(blockId));
+      } catch (StorageException se) {
+        throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.UPLOAD_FAIL, se,
+            binary.getFileName());
+      } catch (IOException ioe) {
+        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.UPLOAD_FAIL, ioe, binary.getFileName());
+      }
+    }
+
+    boolean isMultipart() {
+      return multipart;
+    }
+
+    List<BlockEntry> getBlockList() {
+      return new ArrayList<>(blocks.values());
+    }
+  }
+
+  /**
+   * 取得済みのプロパティから返却するバイナリ情報を生成します。
+   */
+  private BinaryInfo toBinaryInfo(CloudBlockBlob blob) throws StoreException {
     BinaryInfo binary = new BinaryInfo();
     try {
-      if (blob.exists()) {
-        long milliSeconds = Long.parseLong(PropertiesUtil.get("abs.presignedurl.expiration"));
+      long milliSeconds = Long.parseLong(PropertiesUtil.get("abs.presignedurl.expiration"));
 
-        binary.setBucketName(blob.getContainer().getName());
-        binary.setFileName(blob.getName());
-        binary.setContentType(blob.getProperties().getContentType());
-        binary.setSize(blob.getProperties().getLength());
-        binary.setUrl(blob.getUri().toString());
+      binary.setBucketName(blob.getContainer().getName());
+      binary.setFileName(blob.getName());
+      binary.setContentType(blob.getProperties().getContentType());
+      binary.setSize(blob.getProperties().getLength());
+      binary.setUrl(blob.getUri().toString());
 
-        // Policy
-        SharedAccessBlobPolicy itemPolicy = new SharedAccessBlobPolicy();
+      // Policy
+      SharedAccessBlobPolicy itemPolicy = new SharedAccessBlobPolicy();
 
-        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-        calendar.setTime(new Date());
-        itemPolicy.setSharedAccessStartTime(calendar.getTime());
+      // サーバーとの時刻のずれで署名が無効にならないよう、開始時刻を5分前にする
+      GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+      calendar.setTime(new Date());
+      calendar.add(Calendar.MINUTE, -5);
+      itemPolicy.setSharedAccessStartTime(calendar.getTime());
 
-        calendar.add(Calendar.SECOND, (int) (milliSeconds / 1000));
-        itemPolicy.setSharedAccessExpiryTime(calendar.getTime());
+      calendar.setTime(new Date());
+      calendar.add(Calendar.SECOND, (int) (milliSeconds / 1000));
+      itemPolicy.setSharedAccessExpiryTime(calendar.getTime());
 
-        itemPolicy.setPermissions(
-            EnumSet.of(SharedAccessBlobPermissions.LIST, SharedAccessBlobPermissions.READ));
+      itemPolicy.setPermissions(
+          EnumSet.of(SharedAccessBlobPermissions.LIST, SharedAccessBlobPermissions.READ));
 
-        String sasToken = blob.generateSharedAccessSignature(itemPolicy, null);
-        Thread.sleep(1500);
+      String sasToken = blob.generateSharedAccessSignature(itemPolicy, null);
 
-        String sasUri = String.format("%s?%s", blob.getUri().toString(), sasToken);
-        binary.setPresignedUrl(sasUri);
+      String sasUri = String.format("%s?%s", blob.getUri().toString(), sasToken);
+      binary.setPresignedUrl(sasUri);
 
-        logger.debug(" 署名なしURL: {}", binary.getUrl());
-        logger.debug(" 署名付きURL: {}", binary.getPresignedUrl());
-
-      } else {
-        binary = null;
-      }
+      logger.debug(" 署名なしURL: {}", binary.getUrl());
+      logger.debug(" 署名付きURL: {}", binary.getPresignedUrl());
     } catch (URISyntaxException ue) {
       throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.CREATE_BINARY_FAIL, ue,
           blob.getName());
@@ -298,9 +234,6 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     } catch (InvalidKeyException ie) {
       throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.CREATE_BINARY_FAIL, ie,
           blob.getName());
-    } catch (InterruptedException ite) {
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.CREATE_BINARY_FAIL, ite,
-          blob.getName());
     } catch (StorageException se) {
       throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.CREATE_BINARY_FAIL, se,
           blob.getName());
@@ -370,10 +303,17 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
       CloudBlockBlob blob = bClient.getContainerReference(binary.getBucketName())
           .getBlockBlobReference(binary.getFileName());
-      if (!blob.exists()) {
-        throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND, binary.getFileName());
+      // 存在確認を兼ねてプロパティのみ取得する
+      try {
+        blob.downloadAttributes();
+      } catch (StorageException se) {
+        if (se.getHttpStatusCode() == HttpStatus.SC_NOT_FOUND) {
+          throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND,
+              binary.getFileName());
+        }
+        throw se;
       }
-      rtnBinary = createReturnBinaryInfo(blob);
+      rtnBinary = toBinaryInfo(blob);
 
     } catch (com.microsoft.azure.storage.StorageException se) {
       throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, se,
@@ -413,8 +353,9 @@ public class BinaryStoreManagerImpl implements IStoreManager {
       while (blobIterator.hasNext()) {
         ListBlobItem blobItem = blobIterator.next();
         if (blobItem instanceof CloudBlockBlob) {
+          // 一覧の結果はプロパティを保持しているため、再取得しない
           CloudBlockBlob blob = (CloudBlockBlob) blobItem;
-          objInfoList.add(createReturnBinaryInfo(blob));
+          objInfoList.add(toBinaryInfo(blob));
         }
       }
 
@@ -434,4 +375,75 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     logger.info("ABS list method: end.");
     return objInfoList;
   }
+
+  @Override
+  public BinaryInfo getMetadata(StorageInfo storage, BinaryInfo binary) throws StoreException {
+    logger.debug("ストレージ情報：" + storage.toString());
+    logger.debug("バイナリ情報：" + binary.toString());
+
+    CloudBlobClient bClient = getABSClient(binary.getBucketName(), false);
+
+    try {
+      CloudBlockBlob blob = bClient.getContainerReference(binary.getBucketName())
+          .getBlockBlobReference(binary.getFileName());
+      try {
+        blob.downloadAttributes();
+      } catch (StorageException se) {
+        if (se.getHttpStatusCode() == HttpStatus.SC_NOT_FOUND) {
+          return null;
+        }
+        throw se;
+      }
+      BlobProperties properties = blob.getProperties();
+      BinaryInfo rtnBinary = new BinaryInfo(binary.getBucketName());
+      rtnBinary.setFileName(blob.getName());
+      rtnBinary.setContentType(properties.getContentType());
+      rtnBinary.setSize(properties.getLength());
+      // ABSのETagは引用符を含む
+      rtnBinary.setEtag(properties.getEtag() == null ? null
+          : properties.getEtag().replace("\"", ""));
+      return rtnBinary;
+    } catch (StorageException se) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, se,
+          binary.getFileName());
+    } catch (URISyntaxException ue) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, ue,
+          binary.getFileName());
+    }
+  }
+
+  @Override
+  public InputStream openStream(StorageInfo storage, BinaryInfo binary, long offset, long length)
+      throws StoreException {
+    logger.debug("バイナリ情報：{}, offset={}, length={}", binary, offset, length);
+
+    CloudBlobClient bClient = getABSClient(binary.getBucketName(), false);
+
+    try {
+      CloudBlockBlob blob = bClient.getContainerReference(binary.getBucketName())
+          .getBlockBlobReference(binary.getFileName());
+      // BlobInputStreamはオープン時に取得したETagで以降の読み込みを固定する
+      // そのETagがメタデータ取得時と一致することをIf-Matchで確認し、再度の属性取得は行わない
+      AccessCondition accessCondition = binary.getEtag() == null ? null
+          : AccessCondition.generateIfMatchCondition("\"" + binary.getEtag() + "\"");
+      // BlobInputStreamは読み込み位置の移動のみで、スキップした範囲はダウンロードしない
+      BlobInputStream in = blob.openInputStream(accessCondition, null, null);
+      in.skip(offset);
+      return new BoundedInputStream(in, length);
+    } catch (StorageException se) {
+      if (se.getHttpStatusCode() == HttpStatus.SC_PRECONDITION_FAILED) {
+        // メタデータ取得後に更新された
+        throw new StoreException(HttpStatus.SC_PRECONDITION_FAILED, ErrorClassification.GET_FAIL,
+            se, binary.getFileName());
+      }
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, se,
+          binary.getFileName());
+    } catch (URISyntaxException ue) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, ue,
+          binary.getFileName());
+    } catch (IOException ioe) {
+      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.GET_FAIL,
+          ioe, binary.getFileName());
+    }
+  }
 }
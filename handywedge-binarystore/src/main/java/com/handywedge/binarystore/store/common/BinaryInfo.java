@@ -9,6 +9,7 @@ package com.handywedge.binarystore.store.common;
 
 import java.io.Serializable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
@@ -74,4 +75,15 @@ public class BinaryInfo implements Serializable {
    * バイナリデータ（PreSigned URL）
    */
   private String presignedUrl;
+
+  /**
+   * バイナリデータ（ETag）。引用符は含みません。
+   */
+  private String etag;
+
+  /**
+   * 世代番号（GCSのみ）。ダウンロード時にメタデータ取得時と同じ世代を読み込むために使用します。
+   */
+  @JsonIgnore
+  private Long generation;
 }
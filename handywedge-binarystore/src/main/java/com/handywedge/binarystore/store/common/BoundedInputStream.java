@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 指定した長さまでのみ読み込む入力ストリームです。<br>
+ * 範囲指定のダウンロードで、元のストリームの終端より前で読み込みを終了するために使用します。
+ * クローズは元のストリームに伝播します。
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+  private long remaining;
+
+  /**
+   * コンストラクタ
+   *
+   * @param in 元の入力ストリーム
+   * @param length 読み込む長さ
+   */
+  public BoundedInputStream(InputStream in, long length) {
+    super(in);
+    this.remaining = length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+    int b = in.read();
+    if (b != -1) {
+      remaining--;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+    int n = in.read(b, off, (int) Math.min(len, remaining));
+    if (n > 0) {
+      remaining -= n;
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = in.skip(Math.min(n, remaining));
+    remaining -= skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(in.available(), remaining);
+  }
+
+  // 読み込んだ長さが変わるため、markは未対応とする
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
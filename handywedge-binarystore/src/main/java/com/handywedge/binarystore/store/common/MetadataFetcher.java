@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.handywedge.binarystore.util.PropertiesUtil;
+
+/**
+ * 一覧の各オブジェクトのメタデータを並列に取得します。<br>
+ * スレッドはプロセスで共有します。
+ */
+public final class MetadataFetcher {
+
+  private static Logger logger = LoggerFactory.getLogger(MetadataFetcher.class);
+
+  private static final int THREADS =
+      Math.max(PropertiesUtil.getInt("list.metadata.threads", 16), 1);
+
+  private static volatile ExecutorService executor;
+
+  private MetadataFetcher() {}
+
+  /**
+   * オブジェクト単位の取得処理です。
+   */
+  public interface Fetch<T> {
+    void fetch(T item) throws StoreException;
+  }
+
+  /**
+   * 全ての要素の取得処理を並列に実行し、全て終了するまで待機します。
+   *
+   * @param items 対象の要素
+   * @param fetch 取得処理
+   * @throws StoreException 取得処理で例外が発生した場合（最初の例外）
+   */
+  public static <T> void fetchAll(List<T> items, Fetch<T> fetch) throws StoreException {
+    if (items.size() == 1) {
+      fetch.fetch(items.get(0));
+      return;
+    }
+
+    Map<String, String> context = MDC.getCopyOfContextMap();
+    List<Future<?>> futures = new ArrayList<>(items.size());
+    for (T item : items) {
+      futures.add(executor().submit(() -> {
+        if (context != null) {
+          MDC.setContextMap(context);
+        }
+        try {
+          fetch.fetch(item);
+        } finally {
+          MDC.clear();
+        }
+        return null;
+      }));
+    }
+
+    StoreException failure = null;
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      try {
+        if (failure != null || interrupted) {
+          future.cancel(false);
+        } else {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+        failure = new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.LIST_FAIL, e, "");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        failure = cause instanceof StoreException ? (StoreException) cause
+            : new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                ErrorClassification.LIST_FAIL, cause, "");
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static ExecutorService executor() {
+    ExecutorService e = executor;
+    if (e == null) {
+      synchronized (MetadataFetcher.class) {
+        e = executor;
+        if (e == null) {
+          AtomicInteger count = new AtomicInteger();
+          e = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "binarystore-metadata-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+          executor = e;
+          logger.info("metadata executor started. threads={}", THREADS);
+        }
+      }
+    }
+    return e;
+  }
+
+  /**
+   * スレッドを停止します。アプリケーションの停止時に呼び出されます。
+   */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.handywedge.binarystore.util.PropertiesUtil;
+
+/**
+ * 入力ストリームをパート単位に分割してアップロードします。<br>
+ * パートは再利用するバッファに読み込み、一時ファイルは使用しません。<br>
+ * バッファとアップロードスレッドはプロセスで共有し、バッファに空きがない場合や
+ * 同時アップロード数に達している場合は、入力ストリームの読み込みを待機します。
+ */
+public final class PartUploader {
+
+  private static Logger logger = LoggerFactory.getLogger(PartUploader.class);
+
+  // S3のマルチパートの最小サイズ
+  private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+  private static final int PART_SIZE =
+      Math.max(PropertiesUtil.getInt("upload.part.size", MIN_PART_SIZE), MIN_PART_SIZE);
+
+  private static final int CONCURRENCY =
+      Math.max(PropertiesUtil.getInt("upload.concurrency", 4), 1);
+
+  private static final int THREADS = Math.max(PropertiesUtil.getInt("upload.threads", 16), 1);
+
+  private static final int BUFFERS =
+      Math.max(PropertiesUtil.getInt("upload.buffer.count", 16), 2);
+
+  private static final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(BUFFERS);
+
+  private static final AtomicInteger allocated = new AtomicInteger();
+
+  private static volatile ExecutorService executor;
+
+  private PartUploader() {}
+
+  /**
+   * パート単位のアップロード処理です。
+   */
+  public interface PartHandler {
+
+    /**
+     * 入力がパートサイズ未満の場合に、1回のリクエストでアップロードします。
+     */
+    void single(byte[] data, int length) throws StoreException;
+
+    /**
+     * マルチパートアップロードを開始します。最初のパートの前に1度だけ呼び出されます。
+     */
+    void initiate() throws StoreException;
+
+    /**
+     * パートをアップロードします。パート番号は1から始まります。<br>
+     * 同時アップロード数が2以上の場合は、複数のスレッドから並列に呼び出されます。
+     */
+    void part(int partNumber, byte[] data, int length) throws StoreException;
+  }
+
+  /**
+   * パートサイズを返します。
+   */
+  public static int getPartSize() {
+    return PART_SIZE;
+  }
+
+  /**
+   * 同時アップロード数の設定値で入力ストリームをアップロードします。
+   *
+   * @see #upload(InputStream, long, int, PartHandler)
+   */
+  public static long upload(InputStream in, long maxSize, PartHandler handler)
+      throws StoreException {
+    return upload(in, maxSize, CONCURRENCY, handler);
+  }
+
+  /**
+   * 入力ストリームをアップロードします。<br>
+   * 例外が発生した場合も、実行中のパートが全て終了してから呼び出し元に戻ります。
+   *
+   * @param in 入力ストリーム
+   * @param maxSize 最大サイズ
+   * @param concurrency 同時アップロード数。1の場合はパート番号の順に1つずつアップロードします。
+   * @param handler パート単位のアップロード処理
+   * @return アップロードしたサイズ
+   * @throws StoreException
+   */
+  public static long upload(InputStream in, long maxSize, int concurrency, PartHandler handler)
+      throws StoreException {
+    Semaphore inFlight = new Semaphore(concurrency);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Future<?>> futures = new ArrayList<>();
+    Map<String, String> context = MDC.getCopyOfContextMap();
+    long total = 0;
+    int partNumber = 0;
+    try {
+      while (failure.get() == null) {
+        byte[] buffer = acquire();
+        boolean submitted = false;
+        int length;
+        try {
+          length = IOUtils.read(in, buffer, 0, PART_SIZE);
+          total += length;
+          if (partNumber == 0 && length < PART_SIZE) {
+            handler.single(buffer, length);
+            return total;
+          }
+          if (length == 0) {
+            break;
+          }
+          if (total > maxSize) {
+            logger.warn("OVERSIZED FILE ({}). STARTING ABORT", total);
+            throw new StoreException(HttpStatus.SC_REQUEST_TOO_LONG,
+                ErrorClassification.UPLOAD_TOO_LARGE, (maxSize >> 30) + "GB");
+          }
+          if (partNumber == 0) {
+            handler.initiate();
+          }
+
+          // 読み込み済みのパートを保持したまま、実行中のパートの終了を待つ
+          inFlight.acquire();
+          int number = ++partNumber;
+          futures.add(executor().submit(() -> {
+            if (context != null) {
+              MDC.setContextMap(context);
+            }
+            try {
+              handler.part(number, buffer, length);
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            } finally {
+              release(buffer);
+              inFlight.release();
+              MDC.clear();
+            }
+          }));
+          submitted = true;
+        } catch (IOException e) {
+          throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+              ErrorClassification.UPLOAD_FAIL, e, "part " + (partNumber + 1));
+        } finally {
+          if (!submitted) {
+            release(buffer);
+          }
+        }
+        if (length < PART_SIZE) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+          ErrorClassification.UPLOAD_FAIL, e, "part " + (partNumber + 1));
+    } catch (RuntimeException e) {
+      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+          ErrorClassification.UPLOAD_FAIL, e, "part " + (partNumber + 1));
+    } finally {
+      await(futures);
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof StoreException) {
+      throw (StoreException) t;
+    } else if (t != null) {
+      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+          ErrorClassification.UPLOAD_FAIL, t, "part");
+    }
+    logger.debug("uploaded {} bytes in {} parts.", total, partNumber);
+    return total;
+  }
+
+  private static void await(List<Future<?>> futures) {
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          // パートの例外はfailureに保持済み
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static byte[] acquire() throws InterruptedException {
+    byte[] buffer = pool.poll();
+    if (buffer != null) {
+      return buffer;
+    }
+    if (allocated.incrementAndGet() <= BUFFERS) {
+      return new byte[PART_SIZE];
+    }
+    allocated.decrementAndGet();
+    return pool.take();
+  }
+
+  private static void release(byte[] buffer) {
+    pool.offer(buffer);
+  }
+
+  private static ExecutorService executor() {
+    ExecutorService e = executor;
+    if (e == null) {
+      synchronized (PartUploader.class) {
+        e = executor;
+        if (e == null) {
+          AtomicInteger count = new AtomicInteger();
+          e = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "binarystore-upload-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+          executor = e;
+          logger.info("upload executor started. partSize={}, concurrency={}, threads={}, "
+              + "buffers={}", PART_SIZE, CONCURRENCY, THREADS, BUFFERS);
+        }
+      }
+    }
+    return e;
+  }
+
+  /**
+   * アップロードスレッドを停止し、バッファを解放します。アプリケーションの停止時に呼び出されます。
+   */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    pool.clear();
+    allocated.set(0);
+  }
+}
@@ -7,55 +7,43 @@
  */
 package com.handywedge.binarystore.store.gcs;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import jakarta.enterprise.context.RequestScoped;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.threeten.bp.Duration;
 
 import com.google.api.gax.paging.Page;
-import com.google.api.gax.retrying.RetrySettings;
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.ReadChannel;
 import com.google.cloud.WriteChannel;
-import com.google.cloud.http.HttpTransportOptions;
 import com.google.cloud.storage.Acl;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Bucket;
-import com.google.cloud.storage.BucketInfo;
 import com.google.cloud.storage.HttpMethod;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
 import com.google.cloud.storage.Storage.SignUrlOption;
 import com.google.cloud.storage.StorageClass;
 import com.google.cloud.storage.StorageException;
-import com.google.cloud.storage.StorageOptions;
 import com.handywedge.binarystore.store.IStoreManager;
 import com.handywedge.binarystore.store.common.BinaryInfo;
+import com.handywedge.binarystore.store.common.BoundedInputStream;
 import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.PartUploader;
 import com.handywedge.binarystore.store.common.StorageInfo;
 import com.handywedge.binarystore.store.common.StoreException;
-import com.handywedge.binarystore.util.CommonUtils;
 import com.handywedge.binarystore.util.PropertiesUtil;
 
 @RequestScoped
@@ -63,76 +51,22 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
   private static Logger logger = LoggerFactory.getLogger(BinaryStoreManagerImpl.class);
 
-  // 転送のデフォルトパートサイズ
-  private static final long BINARY_PART_SIZE_5MB = 5 * 1024 * 1024;
-
-  private static final String DEFAULT_LOCATION = "asia-northeast1";
-
-  private static final int DEFAULT_TIMEOUT = 60 * 1000;
+  // アップロードの最大サイズ
+  private static final long BINARY_MAX_SIZE = 5L * 1024 * 1024 * 1024;
 
   /**
-   * GCSクライアント生成
+   * GCSクライアント取得
    *
    * @param bucketName
    * @return
    * @throws StoreException
-   * @throws Exception
    */
   private Storage getGCSClient(String bucketName, boolean isCreated) throws StoreException {
-    logger.debug("get GCS Client start.");
-
-    Storage gStorage = null;
-    if (CommonUtils.isNullOrEmpty(PropertiesUtil.get("gcs.credentials.file.path"))) {
-      gStorage = StorageOptions.getDefaultInstance().getService();
-    } else {
-      ServiceAccountCredentials credentials = null;
-      try {
-        credentials = ServiceAccountCredentials
-            .fromStream(new FileInputStream(PropertiesUtil.get("gcs.credentials.file.path")));
-      } catch (IOException e) {
-        logger.error("認証キーファイル読み込みエラー。");
-        throw new StoreException(HttpStatus.SC_UNAUTHORIZED, ErrorClassification.GCS_CREDENTIALS_READ_FAIL, e);
-      }
-
-      HttpTransportOptions transportOptions = StorageOptions.getDefaultHttpTransportOptions();
-      transportOptions = transportOptions.toBuilder().setConnectTimeout(DEFAULT_TIMEOUT)
-          .setReadTimeout(DEFAULT_TIMEOUT).build();
-
-      gStorage = StorageOptions.newBuilder().setCredentials(credentials)
-          .setTransportOptions(transportOptions).setRetrySettings(retrySettings()).build()
-          .getService();
-    }
-
-    try {
-      Bucket bucket = gStorage.get(bucketName);
-
-      // バケット作成
-      if (!CommonUtils.isNullOrEmpty(bucketName) && null == bucket) {
-        if (isCreated == false) {
-          throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND, bucketName);
-        }
-
-        BucketInfo bucketInfo = BucketInfo.newBuilder(bucketName)
-            .setStorageClass(StorageClass.COLDLINE).setLocation(DEFAULT_LOCATION).build();
-        bucket = gStorage.create(bucketInfo);
-      }
-      logger.info("bucket location = " + bucket.getLocation());
-    } catch (StorageException gse) {
-      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, gse, "バケット");
-    }
-
-    logger.info("get GCS Client end.");
+    Storage gStorage = GCSClientHolder.getClient();
+    GCSClientHolder.ensureBucket(gStorage, bucketName, isCreated);
     return gStorage;
   }
 
-
-  private static RetrySettings retrySettings() {
-    return RetrySettings.newBuilder().setMaxAttempts(10).setMaxRetryDelay(Duration.ofMillis(30000L))
-        .setTotalTimeout(Duration.ofMillis(120000L)).setInitialRetryDelay(Duration.ofMillis(250L))
-        .setRetryDelayMultiplier(1.0).setInitialRpcTimeout(Duration.ofMillis(120000L))
-        .setRpcTimeoutMultiplier(1.0).setMaxRpcTimeout(Duration.ofMillis(120000L)).build();
-  }
-
   @SuppressWarnings("unused")
   @Override
   public BinaryInfo upload(StorageInfo storage, BinaryInfo binary, InputStream inStream)
@@ -146,8 +80,7 @@ public class BinaryStoreManagerImpl implements IStoreManager {
 
     Storage gStorage = getGCSClient(binary.getBucketName(), true);
 
-    File tempFile = null;
-    logger.info("Uploading a new binary to GCS from a file\n");
+    logger.info("Uploading a new binary to GCS\n");
 
     BinaryInfo rtnBinary = new BinaryInfo();
     BlobId blobId = BlobId.of(binary.getBucketName(), binary.getFileName());
@@ -156,115 +89,98 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType(binary.getContentType())
         .setStorageClass(StorageClass.COLDLINE).setAcl(acls).build();
 
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-    long written = -1L;
+    // 再開可能アップロードは先頭から順に書き込む必要があるため、同時アップロード数は1とする
+    WriterHandler handler = new WriterHandler(gStorage, blobInfo);
     try {
-      written = IOUtils.copyLarge(inStream, baos, 0, BINARY_PART_SIZE_5MB);
-    } catch (IOException e) {
-      logger.error("IOUtils.copyLarge 処理エラー");
-      throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.OUT_OF_RESOURCE, e);
+      PartUploader.upload(inStream, BINARY_MAX_SIZE, 1, handler);
+      handler.close();
+    } finally {
+      if (inStream != null) {
+        try {
+          inStream.close();
+        } catch (Exception e) {
+        }
+      }
     }
 
-    byte[] data = baos.toByteArray();
-    InputStream gcsInputStream = new ByteArrayInputStream(data);
+    Blob blob = gStorage.get(blobInfo.getBlobId());
+    rtnBinary = createReturnBinaryInfo(blob);
 
-    if (written < BINARY_PART_SIZE_5MB) {
-      Blob blob = gStorage.create(blobInfo, data);
-      rtnBinary = createReturnBinaryInfo(blob);
-    } else {
-      int firstByte = 0;
-      int partNumber = 1;
-      Boolean isFirstChunck = true;
-      Boolean overSizeLimit = false;
-      InputStream firstChunck = new ByteArrayInputStream(data);
-      PushbackInputStream chunckableInputStream = new PushbackInputStream(inStream, 1);
+    long endSingle = System.currentTimeMillis();
+    logger.info("{} Geted : {} ms\n", binary.getFileName(), (endSingle - startSingle));
+
+    logger.info("GCS update method: end.");
+    return binary;
+  }
+
+  /**
+   * パート単位のアップロード処理
+   */
+  private static class WriterHandler implements PartUploader.PartHandler {
+
+    private final Storage gStorage;
+
+    private final BlobInfo blobInfo;
 
+    private WriteChannel writer;
+
+    WriterHandler(Storage gStorage, BlobInfo blobInfo) {
+      this.gStorage = gStorage;
+      this.blobInfo = blobInfo;
+    }
+
+    @Override
+    public void single(byte[] data, int length) throws StoreException {
       try {
-        tempFile =
-            File.createTempFile(UUID.randomUUID().toString().concat(binary.getFileName()), "tmp");
-      } catch (IOException e) {
-        logger.error("File.createTempFile 処理エラー。ファイル名={}",
-            UUID.randomUUID().toString().concat(binary.getFileName()));
-        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.DISK_IO_ERROR, e,
-            UUID.randomUUID().toString().concat(binary.getFileName()));
+        gStorage.create(blobInfo, data, 0, length);
+      } catch (StorageException gse) {
+        logger.error("ファイルUpload処理エラー。ファイル名={}", blobInfo.toString());
+        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.UPLOAD_FAIL, gse, blobInfo.toString());
       }
+    }
 
+    @Override
+    public void initiate() {
+      writer = gStorage.writer(blobInfo);
+      writer.setChunkSize(PartUploader.getPartSize());
+    }
+
+    @Override
+    public void part(int partNumber, byte[] data, int length) throws StoreException {
       try {
-        while (-1 != (firstByte = chunckableInputStream.read())) {
-          long partSize = 0;
-          chunckableInputStream.unread(firstByte);
-
-          OutputStream os = null;
-          try {
-            os = new BufferedOutputStream(new FileOutputStream(tempFile.getAbsolutePath(), true));
-
-            if (isFirstChunck == true) {
-              partSize = IOUtils.copyLarge(firstChunck, os, 0, (BINARY_PART_SIZE_5MB));
-              isFirstChunck = false;
-            } else {
-              partSize = IOUtils.copyLarge(chunckableInputStream, os, 0, (BINARY_PART_SIZE_5MB));
-            }
-            written += partSize;
-
-            if (written > BINARY_PART_SIZE_5MB * 1024) { // 5GB以上
-              overSizeLimit = true;
-              logger.error("OVERSIZED FILE ({}). STARTING ABORT", written);
-              break;
-            }
-          } finally {
-            IOUtils.closeQuietly(os);
-          }
-
-          Boolean isLastPart = -1 == (firstByte = chunckableInputStream.read());
-          if (!isLastPart) {
-            chunckableInputStream.unread(firstByte);
-          }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        while (buffer.hasRemaining()) {
+          writer.write(buffer);
         }
-      } catch (IOException e) {
-        logger.error("ファイル書き込み処理エラー。ファイル名={}",
-            UUID.randomUUID().toString().concat(binary.getFileName()));
-        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.DISK_IO_ERROR, e,
-            UUID.randomUUID().toString().concat(binary.getFileName()));
+      } catch (IOException | StorageException e) {
+        logger.error("バッファ書き込み処理エラー。ファイル名={}", blobInfo.toString());
+        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.UPLOAD_FAIL, e, blobInfo.toString());
       }
+    }
 
+    /**
+     * 書き込みを確定します。途中で失敗した場合は呼び出さないため、不完全なオブジェクトは作成されません。
+     */
+    void close() throws StoreException {
+      if (writer == null) {
+        return;
+      }
       try {
-        WriteChannel writer = gStorage.writer(blobInfo);
-        byte[] buffer = new byte[1024];
-        InputStream input = new FileInputStream(tempFile);
-        int limit;
-        while ((limit = input.read(buffer)) >= 0) {
-          try {
-            writer.write(ByteBuffer.wrap(buffer, 0, limit));
-          } catch (Exception ex) {
-            logger.error("バッファ書き込み処理エラー。");
-            throw ex;
-          }
-        }
-      } catch (IOException e) {
+        writer.close();
+      } catch (IOException | StorageException e) {
         logger.error("ファイルUpload処理エラー。ファイル名={}", blobInfo.toString());
-        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.UPLOAD_FAIL, e,
-            blobInfo.toString());
-      }
-
-      if (null != tempFile && tempFile.exists()) {
-        tempFile.delete();
+        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            ErrorClassification.UPLOAD_FAIL, e, blobInfo.toString());
       }
     }
-
-    Blob blob = gStorage.get(blobInfo.getBlobId());
-    rtnBinary = createReturnBinaryInfo(blob);
-
-    long endSingle = System.currentTimeMillis();
-    logger.info("{} Geted : {} ms\n", binary.getFileName(), (endSingle - startSingle));
-
-    logger.info("GCS update method: end.");
-    return binary;
   }
 
   private BinaryInfo createReturnBinaryInfo(Blob blob) throws StoreException {
     BinaryInfo binary = new BinaryInfo();
-    if (blob.exists()) {
+    // 取得・一覧の結果は既にメタデータを保持しているため、存在確認で再取得しない
+    if (blob != null) {
       long milliSeconds = Long.parseLong(PropertiesUtil.get("gcs.presignedurl.expiration"));
 
       binary.setBucketName(blob.getBucket().toString());
@@ -273,19 +189,13 @@ public class BinaryStoreManagerImpl implements IStoreManager {
       binary.setSize(blob.getSize());
       binary.setUrl(blob.getMediaLink());
 
-      ServiceAccountCredentials credentials = null;
-      try {
-        credentials = ServiceAccountCredentials
-            .fromStream(new FileInputStream(PropertiesUtil.get("gcs.credentials.file.path")));
-      } catch (IOException e) {
-        logger.error("認証キーファイル読み込みエラー。");
-        throw new StoreException(HttpStatus.SC_INTERNAL_SERVER_ERROR, ErrorClassification.GCS_CREDENTIALS_READ_FAIL, e);
-      }
-      binary
-          .setPresignedUrl(blob
-              .signUrl(milliSeconds, TimeUnit.MILLISECONDS,
-                  SignUrlOption.httpMethod(HttpMethod.GET), SignUrlOption.signWith(credentials))
-              .toString());
+      ServiceAccountCredentials credentials = GCSClientHolder.getCredentials();
+      SignUrlOption[] options = credentials == null
+          ? new SignUrlOption[] {SignUrlOption.httpMethod(HttpMethod.GET)}
+          : new SignUrlOption[] {SignUrlOption.httpMethod(HttpMethod.GET),
+              SignUrlOption.signWith(credentials)};
+      binary.setPresignedUrl(
+          blob.signUrl(milliSeconds, TimeUnit.MILLISECONDS, options).toString());
 
       logger.debug(" 署名なしURL: {}", binary.getUrl());
       logger.debug(" 署名付きURL: {}", binary.getPresignedUrl());
@@ -404,4 +314,49 @@ public class BinaryStoreManagerImpl implements IStoreManager {
     return objInfoList;
   }
 
+  @Override
+  public BinaryInfo getMetadata(StorageInfo storage, BinaryInfo binary) throws StoreException {
+    logger.debug("ストレージ情報：" + storage.toString());
+    logger.debug("バイナリ情報：" + binary.toString());
+
+    Storage gStorage = getGCSClient(binary.getBucketName(), false);
+
+    try {
+      Blob blob = gStorage.get(binary.getBucketName(), binary.getFileName());
+      if (null == blob) {
+        return null;
+      }
+      BinaryInfo rtnBinary = new BinaryInfo(binary.getBucketName());
+      rtnBinary.setFileName(blob.getName());
+      rtnBinary.setContentType(blob.getContentType());
+      rtnBinary.setSize(blob.getSize());
+      rtnBinary.setEtag(blob.getEtag());
+      rtnBinary.setGeneration(blob.getGeneration());
+      return rtnBinary;
+    } catch (StorageException gse) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, gse,
+          binary.getFileName());
+    }
+  }
+
+  @Override
+  public InputStream openStream(StorageInfo storage, BinaryInfo binary, long offset, long length)
+      throws StoreException {
+    logger.debug("バイナリ情報：{}, offset={}, length={}", binary, offset, length);
+
+    Storage gStorage = getGCSClient(binary.getBucketName(), false);
+
+    try {
+      // 読み込みは遅延して行われるため、世代が一致しない場合は読み込み中の例外となる
+      ReadChannel reader = binary.getGeneration() == null
+          ? gStorage.reader(binary.getBucketName(), binary.getFileName())
+          : gStorage.reader(binary.getBucketName(), binary.getFileName(),
+              BlobSourceOption.generationMatch(binary.getGeneration()));
+      reader.seek(offset);
+      return new BoundedInputStream(Channels.newInputStream(reader), length);
+    } catch (StorageException | IOException e) {
+      throw new StoreException(HttpStatus.SC_BAD_REQUEST, ErrorClassification.GET_FAIL, e,
+          binary.getFileName());
+    }
+  }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.gcs;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Duration;
+
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.http.HttpTransportOptions;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.BucketInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageClass;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.StorageOptions;
+import com.handywedge.binarystore.store.common.ErrorClassification;
+import com.handywedge.binarystore.store.common.StoreException;
+import com.handywedge.binarystore.util.CommonUtils;
+import com.handywedge.binarystore.util.PropertiesUtil;
+
+/**
+ * GCSクライアントの保持クラスです。<br>
+ * クライアントと認証情報はプロセスで1つだけ生成し、全てのリクエストで共有します。<br>
+ * バケットの存在確認・作成はバケット毎に1度だけ行います。
+ */
+public final class GCSClientHolder {
+
+  private static Logger logger = LoggerFactory.getLogger(GCSClientHolder.class);
+
+  private static final String DEFAULT_LOCATION = "asia-northeast1";
+
+  private static final int DEFAULT_TIMEOUT = 60 * 1000;
+
+  private static volatile Storage client;
+
+  // 認証キーファイルが設定されていない場合はnull
+  private static ServiceAccountCredentials credentials;
+
+  // 存在確認済みのバケット
+  private static final Set<String> buckets = ConcurrentHashMap.newKeySet();
+
+  private GCSClientHolder() {}
+
+  /**
+   * GCSクライアントを取得します。初回のみ生成します。
+   *
+   * @throws StoreException 認証キーファイルが読み込めない場合
+   */
+  public static Storage getClient() throws StoreException {
+    Storage c = client;
+    if (c == null) {
+      synchronized (GCSClientHolder.class) {
+        c = client;
+        if (c == null) {
+          c = createClient();
+          client = c;
+        }
+      }
+    }
+    return c;
+  }
+
+  /**
+   * 署名付きURLの生成に使用する認証情報を返します。認証キーファイルが設定されていない場合はnullを返します。
+   */
+  public static ServiceAccountCredentials getCredentials() throws StoreException {
+    getClient();
+    return credentials;
+  }
+
+  private static Storage createClient() throws StoreException {
+    logger.info("create GCS Client start.");
+
+    String path = PropertiesUtil.get("gcs.credentials.file.path");
+    if (CommonUtils.isNullOrEmpty(path)) {
+      Storage gStorage = StorageOptions.getDefaultInstance().getService();
+      logger.info("create GCS Client end. (default credentials)");
+      return gStorage;
+    }
+
+    try (InputStream in = new FileInputStream(path)) {
+      credentials = ServiceAccountCredentials.fromStream(in);
+    } catch (IOException e) {
+      logger.error("認証キーファイル読み込みエラー。");
+      throw new StoreException(HttpStatus.SC_UNAUTHORIZED,
+          ErrorClassification.GCS_CREDENTIALS_READ_FAIL, e, path);
+    }
+
+    int connectTimeout = PropertiesUtil.getInt("gcs.client.connect.timeout", DEFAULT_TIMEOUT);
+    int readTimeout = PropertiesUtil.getInt("gcs.client.read.timeout", DEFAULT_TIMEOUT);
+    HttpTransportOptions transportOptions = StorageOptions.getDefaultHttpTransportOptions();
+    transportOptions = transportOptions.toBuilder().setConnectTimeout(connectTimeout)
+        .setReadTimeout(readTimeout).build();
+
+    Storage gStorage = StorageOptions.newBuilder().setCredentials(credentials)
+        .setTransportOptions(transportOptions).setRetrySettings(retrySettings()).build()
+        .getService();
+
+    logger.info("create GCS Client end. connectTimeout={}, readTimeout={}", connectTimeout,
+        readTimeout);
+    return gStorage;
+  }
+
+  private static RetrySettings retrySettings() {
+    return RetrySettings.newBuilder().setMaxAttempts(10).setMaxRetryDelay(Duration.ofMillis(30000L))
+        .setTotalTimeout(Duration.ofMillis(120000L)).setInitialRetryDelay(Duration.ofMillis(250L))
+        .setRetryDelayMultiplier(1.0).setInitialRpcTimeout(Duration.ofMillis(120000L))
+        .setRpcTimeoutMultiplier(1.0).setMaxRpcTimeout(Duration.ofMillis(120000L)).build();
+  }
+
+  /**
+   * バケットの存在を確認し、存在しない場合は作成します。確認済みのバケットは何もしません。
+   *
+   * @param gStorage GCSクライアント
+   * @param bucketName バケット名
+   * @param isCreated 存在しない場合に作成する場合はtrue
+   * @throws StoreException
+   */
+  public static void ensureBucket(Storage gStorage, String bucketName, boolean isCreated)
+      throws StoreException {
+    if (CommonUtils.isNullOrEmpty(bucketName) || buckets.contains(bucketName)) {
+      return;
+    }
+    try {
+      Bucket bucket = gStorage.get(bucketName);
+
+      // バケット作成
+      if (null == bucket) {
+        if (isCreated == false) {
+          throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.NOT_FOUND,
+              bucketName);
+        }
+
+        BucketInfo bucketInfo = BucketInfo.newBuilder(bucketName)
+            .setStorageClass(StorageClass.COLDLINE).setLocation(DEFAULT_LOCATION).build();
+        bucket = gStorage.create(bucketInfo);
+      }
+      logger.info("bucket location = " + bucket.getLocation());
+    } catch (StorageException gse) {
+      throw new StoreException(HttpStatus.SC_CONFLICT, ErrorClassification.BS0003, gse, "バケット");
+    }
+    buckets.add(bucketName);
+  }
+
+  /**
+   * クライアントを破棄します。アプリケーションの停止時に呼び出されます。
+   */
+  public static synchronized void shutdown() {
+    client = null;
+    credentials = null;
+    buckets.clear();
+  }
+}
@@ -39,4 +39,20 @@ public class PropertiesUtil {
     }
   }
 
+  /**
+   * 数値の設定値を取得します。未設定、もしくは数値でない場合はデフォルト値を返します。
+   */
+  public static int getInt(String key, int defaultValue) {
+    String value = get(key);
+    if (CommonUtils.isNullOrEmpty(value)) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("設定値が数値ではありません。デフォルト値を使用します。{}={}", key, value);
+      return defaultValue;
+    }
+  }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ベンチマーク用のS3互換サーバーです。<br>
+ * PutObjectとマルチパートアップロード（開始・パート・完了・中止）のみ対応し、受信したデータは保存しません。
+ * ETagは受信したデータのMD5を返します（SDKがパートの整合性を検証するため）。<br>
+ * 実際のネットワークの往復時間を模擬するため、リクエスト毎に指定した時間待機してから応答します。
+ */
+public class LocalS3Server implements AutoCloseable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final long latencyMillis;
+  private final AtomicLong receivedBytes = new AtomicLong();
+
+  /**
+   * ループバックの空きポートで起動します。
+   *
+   * @param latencyMillis リクエスト毎の応答の遅延（ミリ秒）
+   */
+  public LocalS3Server(long latencyMillis) throws IOException {
+
+    this.latencyMillis = latencyMillis;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * このサーバーに接続するS3クライアントを生成します。
+   */
+  public AmazonS3 createClient() {
+
+    // HTTPではペイロード全体に署名する。aws-chunked形式は使用しない
+    return AmazonS3ClientBuilder.standard()
+        .withCredentials(
+            new AWSStaticCredentialsProvider(new BasicAWSCredentials("bench", "bench")))
+        .withEndpointConfiguration(new EndpointConfiguration(
+            "http://127.0.0.1:" + server.getAddress().getPort(), "us-east-1"))
+        .withPathStyleAccessEnabled(true).withChunkedEncodingDisabled(true).build();
+  }
+
+  public long getReceivedBytes() {
+
+    return receivedBytes.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+
+    try {
+      String query = exchange.getRequestURI().getRawQuery();
+      String method = exchange.getRequestMethod();
+      byte[] md5 = consume(exchange.getRequestBody());
+      if (latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+      }
+      if ("POST".equals(method) && query != null && query.startsWith("uploads")) {
+        respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + UUID.randomUUID()
+            + "</UploadId></InitiateMultipartUploadResult>");
+      } else if ("POST".equals(method)) {
+        respond(exchange, 200, "<CompleteMultipartUploadResult><ETag>\"" + hex(md5)
+            + "-1\"</ETag></CompleteMultipartUploadResult>");
+      } else if ("PUT".equals(method)) {
+        exchange.getResponseHeaders().add("ETag", "\"" + hex(md5) + "\"");
+        exchange.sendResponseHeaders(200, -1);
+      } else if ("DELETE".equals(method)) {
+        exchange.sendResponseHeaders(204, -1);
+      } else {
+        exchange.sendResponseHeaders(405, -1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  // 本文を読み捨ててMD5を返す
+  private byte[] consume(InputStream in) throws IOException {
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buffer = new byte[64 * 1024];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      digest.update(buffer, 0, n);
+      receivedBytes.addAndGet(n);
+    }
+    return digest.digest();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String xml) throws IOException {
+
+    byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml)
+        .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/xml");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public void close() {
+
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.aws;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.handywedge.binarystore.store.common.BinaryInfo;
+import com.handywedge.binarystore.store.common.PartUploader;
+import com.handywedge.binarystore.store.common.StoreException;
+
+/**
+ * S3のマルチパートアップロードのスループットを計測します。<br>
+ * ローカルのS3互換サーバー（{@link LocalS3Server}）に対して、同時アップロード数と応答の遅延を変えて
+ * 1オブジェクトをアップロードする時間を計測します。スループットはサイズ÷実行時間です。
+ * HTTPで接続するため、本番（HTTPS）では行わないペイロードの署名（SHA-256）のコストも含みます。<br>
+ * テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartUploaderBenchmark {
+
+  @Param({"32"})
+  private int sizeMB;
+
+  @Param({"1", "4", "8"})
+  private int concurrency;
+
+  // リクエスト毎の応答の遅延（ミリ秒）
+  @Param({"0", "20", "100"})
+  private long latencyMillis;
+
+  private byte[] data;
+  private LocalS3Server server;
+  private AmazonS3 s3client;
+  private BinaryInfo binary;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+
+    data = new byte[sizeMB * 1024 * 1024];
+    new Random(0).nextBytes(data);
+    server = new LocalS3Server(latencyMillis);
+    s3client = server.createClient();
+    binary = new BinaryInfo("bench");
+    binary.setFileName("bench.bin");
+    binary.setContentType("application/octet-stream");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+
+    s3client.shutdown();
+    server.close();
+    PartUploader.shutdown();
+  }
+
+  @Benchmark
+  public long upload() throws StoreException {
+
+    BinaryStoreManagerImpl.MultipartHandler handler =
+        new BinaryStoreManagerImpl.MultipartHandler(s3client, binary);
+    long size = PartUploader.upload(new ByteArrayInputStream(data), Long.MAX_VALUE, concurrency,
+        handler);
+    handler.complete();
+    return size;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(new OptionsBuilder().include(PartUploaderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.azure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.azure.storage.StorageCredentialsAccountAndKey;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ベンチマーク用のAzure Blob Storage互換サーバーです。<br>
+ * ブロックBLOBのアップロード（Put Blob、Put Block、Put Block List）とプロパティの取得・設定のみ対応し、
+ * 受信したデータは保存しません。プロパティは最後にアップロードしたBLOBのサイズとコンテンツタイプを返します。<br>
+ * 実際のネットワークの往復時間を模擬するため、リクエスト毎に指定した時間待機してから応答します。
+ */
+public class LocalBlobServer implements AutoCloseable {
+
+  private static final String ACCOUNT = "bench";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final long latencyMillis;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private volatile long length;
+  // コミット前のブロックの合計サイズ
+  private final AtomicLong uncommitted = new AtomicLong();
+  private volatile String contentType;
+  private volatile String etag = newEtag();
+
+  /**
+   * ループバックの空きポートで起動します。
+   *
+   * @param latencyMillis リクエスト毎の応答の遅延（ミリ秒）
+   */
+  public LocalBlobServer(long latencyMillis) throws IOException {
+
+    this.latencyMillis = latencyMillis;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * このサーバーに接続するBLOBクライアントを生成します。
+   */
+  public CloudBlobClient createClient() throws URISyntaxException {
+
+    // IPアドレスのエンドポイントはパス形式（/アカウント/コンテナ/BLOB）で接続する
+    String key = Base64.getEncoder().encodeToString(ACCOUNT.getBytes(StandardCharsets.UTF_8));
+    return new CloudBlobClient(
+        new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/" + ACCOUNT),
+        new StorageCredentialsAccountAndKey(ACCOUNT, key));
+  }
+
+  /**
+   * 受信したリクエスト数を返します。
+   */
+  public int getRequests() {
+
+    return requests.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+
+    try {
+      requests.incrementAndGet();
+      String method = exchange.getRequestMethod();
+      Headers request = exchange.getRequestHeaders();
+      long received = consume(exchange.getRequestBody());
+      if (latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+      }
+      String comp = comp(exchange.getRequestURI().getRawQuery());
+      if ("PUT".equals(method) && "block".equals(comp)) {
+        uncommitted.addAndGet(received);
+        exchange.sendResponseHeaders(201, -1);
+      } else if ("PUT".equals(method) && "blocklist".equals(comp)) {
+        length = uncommitted.getAndSet(0);
+        updateContentType(request);
+        etag = newEtag();
+        addProperties(exchange);
+        exchange.sendResponseHeaders(201, -1);
+      } else if ("PUT".equals(method) && "properties".equals(comp)) {
+        updateContentType(request);
+        etag = newEtag();
+        addProperties(exchange);
+        exchange.sendResponseHeaders(200, -1);
+      } else if ("PUT".equals(method) && comp == null) {
+        // Put Blob
+        length = received;
+        updateContentType(request);
+        etag = newEtag();
+        addProperties(exchange);
+        exchange.sendResponseHeaders(201, -1);
+      } else if ("HEAD".equals(method)) {
+        addProperties(exchange);
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.getResponseHeaders().add("x-ms-blob-type", "BlockBlob");
+        exchange.sendResponseHeaders(200, -1);
+      } else {
+        exchange.sendResponseHeaders(405, -1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void updateContentType(Headers request) {
+
+    String value = request.getFirst("x-ms-blob-content-type");
+    contentType = value != null ? value : "application/octet-stream";
+  }
+
+  private void addProperties(HttpExchange exchange) {
+
+    exchange.getResponseHeaders().add("ETag", etag);
+    exchange.getResponseHeaders().add("Last-Modified",
+        DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+  }
+
+  // クエリのcompパラメータを返す
+  private static String comp(String query) {
+
+    if (query == null) {
+      return null;
+    }
+    for (String param : query.split("&")) {
+      if (param.startsWith("comp=")) {
+        return param.substring("comp=".length());
+      }
+    }
+    return null;
+  }
+
+  // 本文を読み捨ててサイズを返す
+  private static long consume(InputStream in) throws IOException {
+
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      total += n;
+    }
+    return total;
+  }
+
+  private static String newEtag() {
+
+    return "\"" + UUID.randomUUID() + "\"";
+  }
+
+  @Override
+  public void close() {
+
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.binarystore.store.azure;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.handywedge.binarystore.store.common.BinaryInfo;
+import com.handywedge.binarystore.store.common.PartUploader;
+import com.handywedge.binarystore.store.common.StoreException;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobOutputStream;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+
+/**
+ * パートサイズ（5MB）未満のBLOBのアップロード時間を計測します。<br>
+ * ローカルのBlob Storage互換サーバー（{@link LocalBlobServer}）に対して、
+ * コンテンツタイプを設定して1回でアップロードする現在の処理と、
+ * 以前の1バイトずつ書き込んでからプロパティを取得・更新する処理（legacy）を比較します。<br>
+ * テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmallBlobUploadBenchmark {
+
+  private static final String CONTAINER = "bench";
+  private static final String CONTENT_TYPE = "application/pdf";
+
+  // 5119KBはパートサイズ（5MB）未満の最大に近いサイズ
+  @Param({"1", "64", "1024", "5119"})
+  private int sizeKB;
+
+  // リクエスト毎の応答の遅延（ミリ秒）
+  @Param({"0", "20"})
+  private long latencyMillis;
+
+  private byte[] data;
+  private LocalBlobServer server;
+  private CloudBlobClient client;
+  private BinaryInfo binary;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+
+    data = new byte[sizeKB * 1024];
+    new Random(0).nextBytes(data);
+    server = new LocalBlobServer(latencyMillis);
+    client = server.createClient();
+    binary = new BinaryInfo(CONTAINER);
+    binary.setFileName("bench.bin");
+    binary.setContentType(CONTENT_TYPE);
+
+    // 現在の処理は1リクエストでアップロードし、コンテンツタイプも設定済みであること
+    int before = server.getRequests();
+    CloudBlockBlob blob = fastPath();
+    if (server.getRequests() - before != 1
+        || !CONTENT_TYPE.equals(blob.getProperties().getContentType())) {
+      throw new IllegalStateException("fast path sent " + (server.getRequests() - before)
+          + " requests. contentType=" + blob.getProperties().getContentType());
+    }
+    legacy();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+
+    server.close();
+    PartUploader.shutdown();
+  }
+
+  @Benchmark
+  public CloudBlockBlob fastPath() throws StoreException, URISyntaxException, StorageException {
+
+    // BinaryStoreManagerImpl#uploadと同じ処理
+    CloudBlockBlob blob =
+        client.getContainerReference(CONTAINER).getBlockBlobReference(binary.getFileName());
+    blob.getProperties().setContentType(binary.getContentType());
+    BinaryStoreManagerImpl.BlockHandler handler =
+        new BinaryStoreManagerImpl.BlockHandler(blob, binary);
+    PartUploader.upload(new ByteArrayInputStream(data), Long.MAX_VALUE, handler);
+    return blob;
+  }
+
+  // 変更前のBinaryStoreManagerImpl#uploadの5MB未満の処理
+  @Benchmark
+  public CloudBlockBlob legacy() throws URISyntaxException, StorageException, IOException {
+
+    CloudBlockBlob blob =
+        client.getContainerReference(CONTAINER).getBlockBlobReference(binary.getFileName());
+    InputStream in = new ByteArrayInputStream(data);
+    BlobOutputStream out = blob.openOutputStream();
+    int next = in.read();
+    while (next != -1) {
+      out.write(next);
+      next = in.read();
+    }
+    out.close();
+
+    blob.downloadAttributes();
+    blob.getProperties().setContentType(binary.getContentType());
+    blob.uploadProperties();
+
+    if (!blob.exists()) {
+      throw new IllegalStateException("blob not found.");
+    }
+    return blob;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(new OptionsBuilder().include(SmallBlobUploadBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -30,7 +30,7 @@ public class FWOfficeFileConverter {
    */
   public File fileToPdf(File sourceFile)
       throws FWUnsupportedFormatException, FWConvertProcessException {
-    final long startTime = logger.perfStart("fileToPdf");
+    final long startTime = logger.perfStartNanos("fileToPdf");
 
     if ((sourceFile == null) || !sourceFile.exists() || !sourceFile.canRead()) {
       throw new FWConvertProcessException(FWConstantCode.OFFICE_TO_PDF_UNREAD,
@@ -48,7 +48,7 @@ public class FWOfficeFileConverter {
     FWOfficeToPDFJob toPDFJob = new FWOfficeToPDFJob();
     File pdfFile = toPDFJob.converter(sourceFile);
 
-    logger.perfEnd("fileToPdf", startTime);
+    logger.perfEndNanos("fileToPdf", startTime);
     return pdfFile;
   }
 
@@ -74,7 +74,7 @@ public class FWOfficeFileConverter {
    */
   public File fileToPdf(File sourceFile, String endpoint, Integer timeout)
       throws FWUnsupportedFormatException, FWConvertProcessException {
-    final long startTime = logger.perfStart("fileToPdf");
+    final long startTime = logger.perfStartNanos("fileToPdf");
 
     if ((sourceFile == null) || !sourceFile.exists() || !sourceFile.canRead()) {
       throw new FWConvertProcessException(FWConstantCode.OFFICE_TO_PDF_UNREAD,
@@ -92,7 +92,7 @@ public class FWOfficeFileConverter {
     FWOfficeToPDFJob toPDFJob = new FWOfficeToPDFJob();
     File pdfFile = toPDFJob.converter(sourceFile, endpoint, timeout);
 
-    logger.perfEnd("fileToPdf", startTime);
+    logger.perfEndNanos("fileToPdf", startTime);
     return pdfFile;
   }
 
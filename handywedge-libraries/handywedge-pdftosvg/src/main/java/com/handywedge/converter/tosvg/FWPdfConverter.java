@@ -64,7 +64,7 @@ public class FWPdfConverter {
    */
   public List<File> pdfToSvg(File sourceFile, Integer timeout)
       throws FWUnsupportedFormatException, FWConvertProcessException {
-    final long startTime = logger.perfStart("pdfToSvg");
+    final long startTime = logger.perfStartNanos("pdfToSvg");
 
     if ((sourceFile == null) || !sourceFile.exists() || !sourceFile.canRead()) {
       throw new FWConvertProcessException(FWConstantCode.PDF_TO_SVG_UNREAD,
@@ -82,7 +82,7 @@ public class FWPdfConverter {
     FWPDFToSVGJob toSVGJob = new FWPDFToSVGJob(this.pageThreshold, this.threadCount);
     List<File> targetFiles = toSVGJob.converter(sourceFile, timeout);
 
-    logger.perfEnd("pdfToSvg", startTime);
+    logger.perfEndNanos("pdfToSvg", startTime);
     return targetFiles;
   }
 
@@ -96,7 +96,7 @@ public class FWPdfConverter {
    */
   public List<File> pdfToSvg(File sourceFile, String endpoint, Integer timeout)
       throws FWUnsupportedFormatException, FWConvertProcessException {
-    final long startTime = logger.perfStart("pdfToSvg");
+    final long startTime = logger.perfStartNanos("pdfToSvg");
 
     if ((sourceFile == null) || !sourceFile.exists() || !sourceFile.canRead()) {
       throw new FWConvertProcessException(FWConstantCode.PDF_TO_SVG_UNREAD,
@@ -114,7 +114,7 @@ public class FWPdfConverter {
     FWPDFToSVGJob toSVGJob = new FWPDFToSVGJob(this.pageThreshold, this.threadCount);
     List<File> targetFiles = toSVGJob.converter(sourceFile, endpoint, timeout);
 
-    logger.perfEnd("pdfToSvg", startTime);
+    logger.perfEndNanos("pdfToSvg", startTime);
     return targetFiles;
   }
 
@@ -59,7 +59,7 @@ public class FWRemoteJobManager {
 	 */
 	public List<String> convert(File pdfFile) throws IOException {
 
-		final long startTime = logger.perfStart("ConverterService");
+		final long startTime = logger.perfStartNanos("ConverterService");
 
 		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
 		connManager.setDefaultMaxPerRoute(2);
@@ -106,7 +106,7 @@ public class FWRemoteJobManager {
 
 		List<String> fileList = extractFileList(jsonResult);
 
-		logger.perfEnd("ConverterService", startTime);
+		logger.perfEndNanos("ConverterService", startTime);
     return fileList;
 	}
 
@@ -128,7 +128,7 @@ public class FWRemoteJobManager {
 	}
 
 	public List<File> download(List<String> downloadUrls, File tempDir, String prefix, String extension) throws IOException {
-		final long startTime = logger.perfStart("DownloadService");
+		final long startTime = logger.perfStartNanos("DownloadService");
 
 		if(ObjectUtils.isEmpty(downloadUrls)){
 			return new LinkedList<File>();
@@ -182,7 +182,7 @@ public class FWRemoteJobManager {
 			}
 		}
 
-		logger.perfEnd("DownloadService", startTime);
+		logger.perfEndNanos("DownloadService", startTime);
 
 		return svgFiles;
 	}
@@ -53,7 +53,7 @@ class FWPDFReportWriterImpl implements FWPDFReportWriter {
   @Override
   public void print(OutputStream result) {
 
-    long startTime = logger.perfStart("print");
+    long startTime = logger.perfStartNanos("print");
     try {
       for (FWPDFReport report : reports) {
         Map<String, Object> parameters = report.getParameters();
@@ -96,7 +96,7 @@ class FWPDFReportWriterImpl implements FWPDFReportWriter {
     } else {
       throw new FWPDFReportException(FWConstantCode.PDF_DATA_MISSING);
     }
-    logger.perfEnd("print", startTime);
+    logger.perfEndNanos("print", startTime);
   }
 
   /*
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest.api.admin;
+
+import com.handywedge.common.FWConstantCode;
+import com.handywedge.common.FWException;
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.context.FWRESTContext;
+import com.handywedge.db.FWDataSourceRegistry;
+import com.handywedge.db.FWSqlMetrics;
+import com.handywedge.log.FWAsyncLogSink;
+import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWPerfMetrics;
+import com.handywedge.rest.FWRESTEmptyResponse;
+import com.handywedge.rest.FWRESTResponse;
+import com.handywedge.role.FWRoleManager;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+// 管理用API。fw.admin.roleに設定したロールのユーザーのみ実行可能（未設定の場合は全て拒否）
+@RequestScoped
+@Path("/")
+@Produces({MediaType.APPLICATION_JSON})
+@Consumes({MediaType.APPLICATION_JSON})
+public class FWAdminController {
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWRESTContext ctx;
+
+  @Inject
+  private FWRoleManager roleMgr;
+
+  @Inject
+  private FWMessageResources fwMsg;
+
+  @Inject
+  private FWDataSourceRegistry dataSourceRegistry;
+
+  @POST
+  @Path("/master/reload")
+  public Response reloadMaster() {
+
+    logger.info("reloadMaster start. user={}", ctx.getUserId());
+    FWAdminReloadResponse res = new FWAdminReloadResponse();
+    try {
+      if (!isAdmin()) {
+        setForbidden(res);
+      } else {
+        res.setVersion(roleMgr.reload());
+        res.setReturn_cd(0);
+      }
+    } catch (Exception e) {
+      setError(res, e);
+    }
+    logger.info("reloadMaster end. res={}", res);
+    return Response.ok(res).build();
+  }
+
+  @GET
+  @Path("/metrics")
+  public Response getMetrics() {
+
+    logger.info("getMetrics start. user={}", ctx.getUserId());
+    FWAdminMetricsResponse res = new FWAdminMetricsResponse();
+    try {
+      if (!isAdmin()) {
+        setForbidden(res);
+      } else {
+        res.setMetrics(FWPerfMetrics.getStats());
+        res.setDroppedLogEvents(FWAsyncLogSink.getDroppedCount());
+        res.setSampledOutLogEvents(FWAsyncLogSink.getSampledOutCount());
+        res.setDataSources(dataSourceRegistry.getStatistics());
+        res.setReturn_cd(0);
+      }
+    } catch (Exception e) {
+      setError(res, e);
+    }
+    logger.info("getMetrics end. res={}", res);
+    return Response.ok(res).build();
+  }
+
+  @DELETE
+  @Path("/metrics")
+  public Response resetMetrics() {
+
+    logger.info("resetMetrics start. user={}", ctx.getUserId());
+    FWRESTResponse res = new FWRESTEmptyResponse();
+    try {
+      if (!isAdmin()) {
+        setForbidden(res);
+      } else {
+        FWPerfMetrics.reset();
+        res.setReturn_cd(0);
+      }
+    } catch (Exception e) {
+      setError(res, e);
+    }
+    logger.info("resetMetrics end. res={}", res);
+    return Response.ok(res).build();
+  }
+
+  @GET
+  @Path("/sql")
+  public Response getSqlMetrics(@QueryParam("top") @DefaultValue("20") int top) {
+
+    logger.info("getSqlMetrics start. user={}, top={}", ctx.getUserId(), top);
+    FWAdminSqlResponse res = new FWAdminSqlResponse();
+    try {
+      if (!isAdmin()) {
+        setForbidden(res);
+      } else {
+        res.setStatements(FWSqlMetrics.getTop(top));
+        res.setStatementCache(FWSqlMetrics.getStatementCacheStat());
+        res.setReturn_cd(0);
+      }
+    } catch (Exception e) {
+      setError(res, e);
+    }
+    logger.info("getSqlMetrics end. res={}", res);
+    return Response.ok(res).build();
+  }
+
+  @DELETE
+  @Path("/sql")
+  public Response resetSqlMetrics() {
+
+    logger.info("resetSqlMetrics start. user={}", ctx.getUserId());
+    FWRESTResponse res = new FWRESTEmptyResponse();
+    try {
+      if (!isAdmin()) {
+        setForbidden(res);
+      } else {
+        FWSqlMetrics.reset();
+        res.setReturn_cd(0);
+      }
+    } catch (Exception e) {
+      setError(res, e);
+    }
+    logger.info("resetSqlMetrics end. res={}", res);
+    return Response.ok(res).build();
+  }
+
+  private void setError(FWRESTResponse res, Exception e) {
+
+    logger.error("予期しないエラーが発生しました。", e);
+    FWException fe = new FWException(String.valueOf(FWConstantCode.FW_REST_ERROR), e.getMessage());
+    res.setReturn_cd(FWConstantCode.FW_REST_ERROR);
+    res.setReturn_msg(fe.getMessage());
+  }
+
+  private void setForbidden(FWRESTResponse res) {
+
+    FWException e = new FWException(String.valueOf(FWConstantCode.FW_REST_ADMIN_FORBIDDEN));
+    logger.warn(e.getMessage());
+    res.setReturn_cd(FWConstantCode.FW_REST_ADMIN_FORBIDDEN);
+    res.setReturn_msg(e.getMessage());
+  }
+
+  private boolean isAdmin() {
+
+    String adminRole = fwMsg.get(FWMessageResources.ADMIN_ROLE);
+    return !FWStringUtil.isEmpty(adminRole) && adminRole.equals(ctx.getUserRole());
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest.api.admin;
+
+import java.util.List;
+import java.util.Map;
+
+import com.handywedge.db.FWDataSourceRegistry;
+import com.handywedge.log.FWPerfMetrics;
+import com.handywedge.rest.FWRESTResponse;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class FWAdminMetricsResponse extends FWRESTResponse {
+
+  private List<FWPerfMetrics.Stat> metrics;
+  private Long droppedLogEvents;
+  private Long sampledOutLogEvents;
+  private Map<String, FWDataSourceRegistry.Statistics> dataSources;
+
+  @Override
+  public String toString() {
+    return "FWAdminMetricsResponse [metrics=" + (metrics == null ? null : metrics.size())
+        + ", droppedLogEvents=" + droppedLogEvents + ", sampledOutLogEvents="
+        + sampledOutLogEvents + ", dataSources="
+        + (dataSources == null ? null : dataSources.keySet()) + ", getReturn_cd()="
+        + getReturn_cd() + ", getReturn_msg()=" + getReturn_msg() + "]";
+  }
+
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest.api.admin;
+
+import com.handywedge.rest.FWRESTResponse;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class FWAdminReloadResponse extends FWRESTResponse {
+
+  private Long version;
+
+  @Override
+  public String toString() {
+    return "FWAdminReloadResponse [version=" + version + ", getReturn_cd()=" + getReturn_cd()
+        + ", getReturn_msg()=" + getReturn_msg() + "]";
+  }
+
+}
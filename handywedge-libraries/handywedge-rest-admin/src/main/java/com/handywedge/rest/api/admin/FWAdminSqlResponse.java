@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest.api.admin;
+
+import java.util.List;
+
+import com.handywedge.db.FWSqlMetrics;
+import com.handywedge.rest.FWRESTResponse;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class FWAdminSqlResponse extends FWRESTResponse {
+
+  private List<FWSqlMetrics.Stat> statements;
+  private FWSqlMetrics.StatementCacheStat statementCache;
+
+  @Override
+  public String toString() {
+    return "FWAdminSqlResponse [statements=" + (statements == null ? null : statements.size())
+        + ", statementCache=" + statementCache + ", getReturn_cd()=" + getReturn_cd()
+        + ", getReturn_msg()=" + getReturn_msg() + "]";
+  }
+
+}
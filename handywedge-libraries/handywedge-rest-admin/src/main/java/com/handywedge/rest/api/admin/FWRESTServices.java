@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest.api.admin;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import jakarta.ws.rs.ApplicationPath;
+import jakarta.ws.rs.core.Application;
+
+@ApplicationPath("/fw/rest/api/admin")
+public class FWRESTServices extends Application {
+
+  @Override
+  public Set<Class<?>> getClasses() {
+    HashSet<Class<?>> classes = new HashSet<Class<?>>();
+    classes.add(FWAdminController.class);
+    return classes;
+  }
+}
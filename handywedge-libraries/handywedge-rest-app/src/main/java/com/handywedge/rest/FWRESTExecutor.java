@@ -7,15 +7,13 @@
  */
 package com.handywedge.rest;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.handywedge.cdi.FWBeanManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.handywedge.common.FWConstantCode;
 import com.handywedge.common.FWException;
-import com.handywedge.common.FWStringUtil;
-import com.handywedge.config.FWMessageResources;
 import com.handywedge.log.FWLogger;
 
 import jakarta.enterprise.context.RequestScoped;
@@ -40,24 +38,22 @@ public class FWRESTExecutor {
   @Inject
   private FWLogger logger;
 
-  private Response doPost(Class<?> logicClazz, InputStream in) throws Exception {
-    FWRESTController logic = (FWRESTController) FWBeanManager.getBean(logicClazz);
-    Method method = logicClazz.getMethod("doPost", FWRESTRequest.class);
-    FWRESTRequestClass annotation = method.getAnnotation(FWRESTRequestClass.class);
-    Class<?> requestClazz = annotation.value();
+  @Inject
+  private FWRESTRouteRegistry registry;
 
-    ObjectMapper om = new ObjectMapper();
+  private Response doPost(FWRESTRouteRegistry.Route route, InputStream in) throws Exception {
+    FWRESTController logic = route.getController();
     FWRESTRequest req = null;
     try {
-      req = (FWRESTRequest) om.readValue(in, requestClazz);
-    } catch (Exception e) {
+      req = readRequest(route.getPostReader(), in);
+    } catch (IOException e) {
       logger.error("リクエスト変換でエラーが発生しました。", e);
-      return Response.ok(createUnmarshalError(e.getMessage())).build();
+      return ok(createUnmarshalError(e.getMessage()));
     }
     logger.debug(req.toString());
     FWRESTResponse res = logic.doPost(req);
     logger.debug(res.toString());
-    return Response.ok(res).build();
+    return ok(res);
   }
 
   @POST
@@ -66,16 +62,16 @@ public class FWRESTExecutor {
 
     logger.info("REST doPost start. class={}", logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null) {
+        return ok(createRoutingError());
       }
-      Response res = doPost(logicClazz, in);
+      Response res = doPost(route, in);
       logger.info("REST doPost end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
@@ -85,28 +81,25 @@ public class FWRESTExecutor {
 
     logger.info("REST doPostNoToken start. class={}", logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null || !route.isNoToken()) {
+        return ok(createRoutingError());
       }
-      if (!(logicClazz.getDeclaredConstructor().newInstance() instanceof FWRESTNoTokenController)) {
-        return Response.ok(createRoutingError()).build();
-      }
-      Response res = doPost(logicClazz, in);
+      Response res = doPost(route, in);
       logger.info("REST doPostNoToken end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
-  private Response doGet(Class<?> logicClazz, String param) {
-    FWRESTController logic = (FWRESTController) FWBeanManager.getBean(logicClazz);
+  private Response doGet(FWRESTRouteRegistry.Route route, String param) {
+    FWRESTController logic = route.getController();
     logger.debug("get parameter={}", param);
     FWRESTResponse res = logic.doGet(param);
     logger.debug(res.toString());
-    return Response.ok(res).build();
+    return ok(res);
   }
 
   @GET
@@ -123,16 +116,16 @@ public class FWRESTExecutor {
 
     logger.info("REST doGet start. class={}", logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null) {
+        return ok(createRoutingError());
       }
-      Response res = doGet(logicClazz, param);
+      Response res = doGet(route, param);
       logger.info("REST doGet end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
@@ -150,40 +143,32 @@ public class FWRESTExecutor {
 
     logger.info("REST doGetNoToken start. class={}", logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null || !route.isNoToken()) {
+        return ok(createRoutingError());
       }
-      if (!(logicClazz.getDeclaredConstructor().newInstance() instanceof FWRESTNoTokenController)) {
-        return Response.ok(createRoutingError()).build();
-      }
-      Response res = doGet(logicClazz, param);
+      Response res = doGet(route, param);
       logger.info("REST doGetNoToken end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
-  private Response doPut(Class<?> logicClazz, InputStream in) throws Exception {
-    FWRESTController logic = (FWRESTController) FWBeanManager.getBean(logicClazz);
-    Method method = logicClazz.getMethod("doPut", FWRESTRequest.class);
-    FWRESTRequestClass annotation = method.getAnnotation(FWRESTRequestClass.class);
-    Class<?> requestClazz = annotation.value();
-
-    ObjectMapper om = new ObjectMapper();
+  private Response doPut(FWRESTRouteRegistry.Route route, InputStream in) throws Exception {
+    FWRESTController logic = route.getController();
     FWRESTRequest req = null;
     try {
-      req = (FWRESTRequest) om.readValue(in, requestClazz);
-    } catch (Exception e) {
+      req = readRequest(route.getPutReader(), in);
+    } catch (IOException e) {
       logger.error("リクエスト変換でエラーが発生しました。", e);
-      return Response.ok(createUnmarshalError(e.getMessage())).build();
+      return ok(createUnmarshalError(e.getMessage()));
     }
     logger.debug(req.toString());
     FWRESTResponse res = logic.doPut(req);
     logger.debug(res.toString());
-    return Response.ok(res).build();
+    return ok(res);
   }
 
   @PUT
@@ -192,16 +177,16 @@ public class FWRESTExecutor {
 
     logger.info("REST doPut start. class=" + logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null) {
+        return ok(createRoutingError());
       }
-      Response res = doPut(logicClazz, in);
+      Response res = doPut(route, in);
       logger.info("REST doPut end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
@@ -211,40 +196,32 @@ public class FWRESTExecutor {
 
     logger.info("REST doPutNoToken start. class=" + logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
-      }
-      if (!(logicClazz.getDeclaredConstructor().newInstance() instanceof FWRESTNoTokenController)) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null || !route.isNoToken()) {
+        return ok(createRoutingError());
       }
-      Response res = doPut(logicClazz, in);
+      Response res = doPut(route, in);
       logger.info("REST doPutNoToken end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
-  private Response doDelete(Class<?> logicClazz, InputStream in) throws Exception {
-    FWRESTController logic = (FWRESTController) FWBeanManager.getBean(logicClazz);
-    Method method = logicClazz.getMethod("doDelete", FWRESTRequest.class);
-    FWRESTRequestClass annotation = method.getAnnotation(FWRESTRequestClass.class);
-    Class<?> requestClazz = annotation.value();
-
-    ObjectMapper om = new ObjectMapper();
+  private Response doDelete(FWRESTRouteRegistry.Route route, InputStream in) throws Exception {
+    FWRESTController logic = route.getController();
     FWRESTRequest req = null;
     try {
-      req = (FWRESTRequest) om.readValue(in, requestClazz);
-    } catch (Exception e) {
+      req = readRequest(route.getDeleteReader(), in);
+    } catch (IOException e) {
       logger.error("リクエスト変換でエラーが発生しました。", e);
-      return Response.ok(createUnmarshalError(e.getMessage())).build();
+      return ok(createUnmarshalError(e.getMessage()));
     }
     logger.debug(req.toString());
     FWRESTResponse res = logic.doDelete(req);
     logger.debug(res.toString());
-    return Response.ok(res).build();
+    return ok(res);
   }
 
   @DELETE
@@ -253,16 +230,16 @@ public class FWRESTExecutor {
 
     logger.info("REST doDelete start. class=" + logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null) {
+        return ok(createRoutingError());
       }
-      Response res = doDelete(logicClazz, in);
+      Response res = doDelete(route, in);
       logger.info("REST doDelete end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
@@ -272,39 +249,35 @@ public class FWRESTExecutor {
 
     logger.info("REST doDeleteNoToken start. class=" + logicClass);
     try {
-      Class<?> logicClazz = getLogicClazz(logicClass);
-      if (logicClazz == null) {
-        return Response.ok(createRoutingError()).build();
-      }
-      if (!(logicClazz.getDeclaredConstructor().newInstance() instanceof FWRESTNoTokenController)) {
-        return Response.ok(createRoutingError()).build();
+      FWRESTRouteRegistry.Route route = registry.getRoute(logicClass);
+      if (route == null || !route.isNoToken()) {
+        return ok(createRoutingError());
       }
-      Response res = doDelete(logicClazz, in);
+      Response res = doDelete(route, in);
       logger.info("REST doDeleteNoToken end.");
       return res;
     } catch (Exception e) {
       logger.error("予期しないエラーが発生しました。", e);
-      return Response.ok(createError(e.getMessage())).build();
+      return ok(createError(e.getMessage()));
     }
   }
 
-  private Class<?> getLogicClazz(String path) throws ClassNotFoundException {
-
-    Class<?> logicClazz = null;
-    try {
-      logicClazz = Class.forName(path);
-    } catch (ClassNotFoundException e) {
+  private FWRESTRequest readRequest(ObjectReader reader, InputStream in) throws IOException {
+    if (reader == null) {
+      throw new IllegalStateException("FWRESTRequestClass is not specified.");
     }
+    return reader.readValue(in);
+  }
 
-    if (logicClazz == null) {
-      FWMessageResources config = FWBeanManager.getBean(FWMessageResources.class);
-      String logicClazzName = config.get("fw.rest." + path);
-      if (!FWStringUtil.isEmpty(logicClazzName)) {
-        logicClazz = Class.forName(logicClazzName);// ここでNotFoundは予期しないエラーにしておく
-        logger.info("actual logicClass={}", logicClazzName);
-      }
+  // 共有のObjectWriterでレスポンスを変換する
+  // メソッド内で変換して、変換エラーもエラーレスポンスとして返す
+  private Response ok(FWRESTResponse res) {
+    try {
+      return Response.ok(registry.getWriter().writeValueAsBytes(res)).build();
+    } catch (JsonProcessingException e) {
+      logger.error("レスポンス変換でエラーが発生しました。", e);
+      return Response.ok(createError(e.getMessage())).build();
     }
-    return logicClazz;
   }
 
   private FWRESTResponse createError(String args) {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.rest;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.handywedge.cdi.FWBeanManager;
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.log.FWLogger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.spi.Bean;
+import jakarta.enterprise.inject.spi.BeanManager;
+import jakarta.inject.Inject;
+
+// ロジッククラス名毎にリフレクション・アノテーション解析結果をキャッシュする
+// 解決できなかったパス・ロジッククラス以外のクラスはキャッシュしない（任意のパスでキャッシュが肥大化するのを防ぐ）
+@ApplicationScoped
+public class FWRESTRouteRegistry {
+
+  // ObjectMapperはスレッドセーフなので共有する
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources config;
+
+  @Inject
+  private BeanManager beanManager;
+
+  private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+  private final ObjectWriter writer = MAPPER.writer();
+
+  /**
+   * レスポンスを出力する共有のObjectWriterを返します。
+   */
+  public ObjectWriter getWriter() {
+    return writer;
+  }
+
+  /**
+   * パスに対応するルート情報を返します。ロジッククラスが存在しない場合、
+   * またはFWRESTControllerの実装クラスでない場合はnullを返します。
+   */
+  public Route getRoute(String path) throws ClassNotFoundException {
+
+    Route route = routes.get(path);
+    if (route != null) {
+      return route;
+    }
+    Class<?> logicClazz = getLogicClazz(path);
+    if (logicClazz == null) {
+      return null;
+    }
+    if (!FWRESTController.class.isAssignableFrom(logicClazz)) {
+      // ロジッククラス以外はルーティングエラーとし、キャッシュもしない
+      logger.warn("logicClass is not FWRESTController. class={}", logicClazz.getName());
+      return null;
+    }
+    route = createRoute(logicClazz);
+    Route current = routes.putIfAbsent(path, route);
+    return current != null ? current : route;
+  }
+
+  private Class<?> getLogicClazz(String path) throws ClassNotFoundException {
+
+    Class<?> logicClazz = null;
+    try {
+      logicClazz = Class.forName(path);
+    } catch (ClassNotFoundException e) {
+    }
+
+    if (logicClazz == null) {
+      String logicClazzName = config.get("fw.rest." + path);
+      if (!FWStringUtil.isEmpty(logicClazzName)) {
+        logicClazz = Class.forName(logicClazzName);// ここでNotFoundは予期しないエラーにしておく
+        logger.info("actual logicClass={}", logicClazzName);
+      }
+    }
+    return logicClazz;
+  }
+
+  private Route createRoute(Class<?> logicClazz) {
+
+    // 通常スコープ（@RequestScoped等）の場合は参照がプロキシなので使い回す。@Dependentは都度取得する
+    FWRESTController controller = null;
+    Bean<?> bean = beanManager.resolve(beanManager.getBeans(logicClazz));
+    if (bean != null && beanManager.isNormalScope(bean.getScope())) {
+      controller = (FWRESTController) FWBeanManager.getBean(logicClazz);
+    }
+    boolean noToken = FWRESTNoTokenController.class.isAssignableFrom(logicClazz);
+    logger.debug("create route. class={}, noToken={}, cacheBean={}", logicClazz.getName(),
+        noToken, controller != null);
+    return new Route(logicClazz, controller, noToken, createReader(logicClazz, "doPost"),
+        createReader(logicClazz, "doPut"), createReader(logicClazz, "doDelete"));
+  }
+
+  // FWRESTRequestClassが無い場合は従来通りリクエスト時にエラーとするためnullを返す
+  private ObjectReader createReader(Class<?> logicClazz, String methodName) {
+
+    try {
+      Method method = logicClazz.getMethod(methodName, FWRESTRequest.class);
+      FWRESTRequestClass annotation = method.getAnnotation(FWRESTRequestClass.class);
+      if (annotation == null) {
+        return null;
+      }
+      return MAPPER.readerFor(annotation.value());
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * ロジッククラス毎のルート情報です。生成後は変更されません。
+   */
+  public static final class Route {
+
+    private final Class<?> logicClazz;
+    private final FWRESTController controller;
+    private final boolean noToken;
+    private final ObjectReader postReader;
+    private final ObjectReader putReader;
+    private final ObjectReader deleteReader;
+
+    Route(Class<?> logicClazz, FWRESTController controller, boolean noToken,
+        ObjectReader postReader, ObjectReader putReader, ObjectReader deleteReader) {
+      this.logicClazz = logicClazz;
+      this.controller = controller;
+      this.noToken = noToken;
+      this.postReader = postReader;
+      this.putReader = putReader;
+      this.deleteReader = deleteReader;
+    }
+
+    public FWRESTController getController() {
+      if (controller != null) {
+        return controller;
+      }
+      return (FWRESTController) FWBeanManager.getBean(logicClazz);
+    }
+
+    public boolean isNoToken() {
+      return noToken;
+    }
+
+    public ObjectReader getPostReader() {
+      return postReader;
+    }
+
+    public ObjectReader getPutReader() {
+      return putReader;
+    }
+
+    public ObjectReader getDeleteReader() {
+      return deleteReader;
+    }
+  }
+}
@@ -221,4 +221,9 @@ public interface FWConstantCode {
    */
   int FW_REST_OIC_LOGIN_BAD_REQUEST = -9016;
 
+  /**
+   * 管理APIを実行する権限がない。
+   */
+  int FW_REST_ADMIN_FORBIDDEN = -9017;
+
 }
@@ -36,6 +36,31 @@ public interface FWMessageResources {
   String IGNORE_AUTH_URL = "fw.ignore.auth.url";
   String TOKEN_TIMEOUT_SEC = "fw.token.timeout.sec";
   String OIC_SOURCE_IP = "fw.oic.source.ip";
+  String STATEMENT_CACHE_SIZE = "fw.db.statement.cache.size";
+  String CONNECTION_LAZY = "fw.db.connection.lazy";
+  String REPLICA_PREFIX = "fw.db.replica.";
+  String REPLICA_STRATEGY = "fw.db.replica.strategy";
+  String REPLICA_RETRY_SEC = "fw.db.replica.retry.sec";
+  String SQL_METRICS = "fw.db.sql.metrics";
+  String SQL_SLOW_THRESHOLD_MS = "fw.db.sql.slow.threshold.ms";
+  String WF_ROUTE_CACHE = "fw.wf.route.cache";
+  String WF_ROUTE_RELOAD_INTERVAL_SEC = "fw.wf.route.reload.interval.sec";
+  String WF_SERIAL_STRATEGY = "fw.wf.serial.strategy";
+  String WF_SERIAL_SEQUENCE_SQL = "fw.wf.serial.sequence.sql";
+  String WF_SERIAL_BLOCK_SIZE = "fw.wf.serial.block.size";
+  String MASTER_CACHE = "fw.master.cache";
+  String MASTER_CACHE_RELOAD_INTERVAL_SEC = "fw.master.cache.reload.interval.sec";
+  String ADMIN_ROLE = "fw.admin.role";
+  String PERF_MODE = "fw.perf.mode";
+  String PERF_SUMMARY_INTERVAL_SEC = "fw.perf.summary.interval.sec";
+  String LOG_ASYNC = "fw.log.async";
+  String LOG_ASYNC_BUFFER_SIZE = "fw.log.async.buffer.size";
+  String LOG_ASYNC_POLICY = "fw.log.async.policy";
+  String LOG_ASYNC_SAMPLE_RATE = "fw.log.async.sample.rate";
+  String REQUEST_TIMING = "fw.request.timing";
+  String TOKEN_CACHE_TTL_SEC = "fw.token.cache.ttl.sec";
+  String TOKEN_CACHE_SIZE = "fw.token.cache.size";
+  String LOGIN_TIME_FLUSH_INTERVAL_SEC = "fw.login.time.flush.interval.sec";
 
   /**
    * プロパティファイルに設定された値を取得します。<br>
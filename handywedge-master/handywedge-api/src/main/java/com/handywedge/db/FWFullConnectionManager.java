@@ -15,6 +15,23 @@ public interface FWFullConnectionManager extends FWConnectionManager {
 
   FWFullConnection getConnection(String dataSource);
 
+  /**
+   * トランザクションを開始します。<br>
+   * 遅延取得が有効な場合、コネクションは最初にgetConnectionが呼ばれた時点で取得され、引数の設定が適用されます。
+   *
+   * @param dataSource データソース名
+   * @param readOnly 読み取り専用の場合はtrue
+   * @param autoCommit 自動コミットの場合はtrue
+   */
+  void begin(String dataSource, boolean readOnly, boolean autoCommit);
+
+  /**
+   * 物理コネクションを取得済の場合はtrueを返します。
+   *
+   * @return 取得済の場合はtrue
+   */
+  boolean isAcquired();
+
   @Override
   FWFullConnection getConnection();
 
@@ -22,5 +39,19 @@ public interface FWFullConnectionManager extends FWConnectionManager {
 
   void addResltSet(FWResultSet resultSet);
 
+  /**
+   * クローズしたステートメントを追跡対象から外します。
+   *
+   * @param statement ステートメント
+   */
+  void removeStatement(FWStatement statement);
+
+  /**
+   * クローズした結果セットを追跡対象から外します。
+   *
+   * @param resultSet 結果セット
+   */
+  void removeResultSet(FWResultSet resultSet);
+
   void close();
 }
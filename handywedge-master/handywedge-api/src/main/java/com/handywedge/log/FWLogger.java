@@ -24,7 +24,7 @@ public interface FWLogger {
    * 戻り値の開始時間を終了地点でperfEndメソッドの引数に渡します。
    * 
    * @param signature 処理時間を計測するメソッド名
-   * @return 計測開始時間
+   * @return 計測開始時間（System.currentTimeMillis()の値）
    */
   long perfStart(String signature);
 
@@ -37,6 +37,24 @@ public interface FWLogger {
    */
   void perfEnd(String signature, long startTime);
 
+  /**
+   * perfStartと同様に処理時間の計測を開始します。ミリ秒未満の処理を計測する場合に使用します。<br>
+   * 戻り値は経過時間の計測用の値（System.nanoTime()の値）です。時刻としては使用できません。<br>
+   * 戻り値は終了地点でperfEndNanosメソッドの引数に渡します。perfEndには渡さないで下さい。
+   * 
+   * @param signature 処理時間を計測するメソッド名
+   * @return 計測開始時間（ナノ秒）
+   */
+  long perfStartNanos(String signature);
+
+  /**
+   * perfStartNanosで開始した処理時間の計測を終了します。
+   * 
+   * @param signature 処理時間を計測するメソッド名
+   * @param startNanos perfStartNanosの戻り値
+   */
+  void perfEndNanos(String signature, long startNanos);
+
   /**
    * リクエストの処理時間を計測します。<br>
    * アプリケーションでは使用しないで下さい。
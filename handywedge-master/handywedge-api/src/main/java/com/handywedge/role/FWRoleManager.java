@@ -61,4 +61,34 @@ public interface FWRoleManager {
    */
   boolean isAccessAllow();
 
+  /**
+   * ロールマスターに登録されたロール名を返します。
+   *
+   * @param role ロール
+   * @return ロール名（存在しない場合はnull）
+   *
+   * @since 2.0.0
+   */
+  String getRoleName(String role);
+
+  /**
+   * ステータスマスターに登録されたステータス名を返します。
+   *
+   * @param status ステータス
+   * @return ステータス名（存在しない場合はnull）
+   *
+   * @since 2.0.0
+   */
+  String getStatusName(String status);
+
+  /**
+   * ロール別ACL、及び、キャッシュしているマスタデータ（ロール、ステータス、アクション）を再読み込みします。<br>
+   * マスタデータのキャッシュ（fw.master.cache）が無効の場合はロール別ACLのみ再読み込みします。
+   *
+   * @return 再読み込み後のマスタデータのバージョン
+   *
+   * @since 2.0.0
+   */
+  long reload();
+
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.user.auth;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * APIトークンの検証結果を表すクラスです。
+ *
+ * @see FWLoginManager#resolveAPIToken(String)
+ */
+@ToString
+@Getter
+public class FWAPITokenResult {
+
+  /**
+   * APIトークンの検証状態を定義します。
+   */
+  public enum Status {
+    /**
+     * 有効なAPIトークンであることを示します。
+     */
+    VALID,
+    /**
+     * 存在しないAPIトークンであることを示します。
+     */
+    INVALID,
+    /**
+     * 有効期限切れのAPIトークンであることを示します。
+     */
+    EXPIRED;
+  }
+
+  private final Status status;
+  private final String userId;
+
+  /**
+   * 検証結果を生成します。
+   *
+   * @param status 検証状態
+   * @param userId APIトークンを発行したユーザーID。存在しないAPIトークンの場合はnull
+   */
+  public FWAPITokenResult(Status status, String userId) {
+    this.status = status;
+    this.userId = userId;
+  }
+
+  /**
+   * 有効なAPIトークンの場合はtrueを返します。
+   *
+   * @return 有効なAPIトークンの場合はtrue
+   */
+  public boolean isValid() {
+    return status == Status.VALID;
+  }
+}
@@ -95,4 +95,16 @@ public interface FWLoginManager {
    * @since 0.6.0
    */
   boolean expirationAPIToken(String token);
+
+  /**
+   * APIトークンの認証と有効期限のチェックを1回の問い合わせで行います。<br>
+   * 存在するAPIトークンの場合は{@link #authAPIToken(String)}と同様にユーザー情報を設定します。
+   * 有効期限切れの場合も設定されるため、トークンが任意のAPIではユーザー情報を参照できます。
+   *
+   * @param token APIトークン
+   * @return 検証結果
+   *
+   * @since 2.0.0
+   */
+  FWAPITokenResult resolveAPIToken(String token);
 }
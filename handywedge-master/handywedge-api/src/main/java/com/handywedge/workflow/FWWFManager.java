@@ -7,7 +7,9 @@
  */
 package com.handywedge.workflow;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -25,6 +27,17 @@ public interface FWWFManager {
    */
   FWWFStatus getStatus(String wfId);
 
+  /**
+   * 指定された複数のWFIDの現在のステータスのDTOをまとめて返します。<br>
+   * 一覧画面など、多数のWFIDを扱う場合に使用します。ステータスが取得できなかったWFIDは結果に含まれません。
+   *
+   * @param wfIds ワークフローIDのコレクション
+   * @return ワークフローIDをキーとしたステータスDTOのマップ
+   *
+   * @since 2.0.0
+   */
+  Map<String, FWWFStatus> getStatuses(Collection<String> wfIds);
+
   /**
    * ログイン中のユーザーが実行可能な指定のアクションコードの承認アクションを（DTO）を返します。
    *
@@ -78,6 +91,19 @@ public interface FWWFManager {
    */
   List<FWWFAction> getActionInfos(String wfId, String role);
 
+  /**
+   * 指定されたロールのユーザーが、複数のWFIDそれぞれの現在のステータスに対して起こせる承認アクション、
+   * 及び、否認アクションのリスト（DTO）をまとめて返します。<br>
+   * WFID毎の結果は{@link #getActionInfos(String, String)}と同じです。問い合わせ回数はWFIDの件数に依存しません。
+   *
+   * @param wfIds ワークフローIDのコレクション
+   * @param role ロール
+   * @return ワークフローIDをキーとした実行可能な承認、否認アクションDTOリストのマップ（引数の順序を保持）
+   *
+   * @since 2.0.0
+   */
+  Map<String, List<FWWFAction>> getActionsBulk(Collection<String> wfIds, String role);
+
   /**
    * 指定されたロールのユーザーが現在のステータスに対して起こせる承認アクション（DTO）のリストを返します。
    *
@@ -203,4 +229,12 @@ public interface FWWFManager {
    * @return ワークフロー履歴のDTOリスト
    */
   List<FWWFLog> getWFLogs(String wfId);
+
+  /**
+   * キャッシュしているワークフローのルート定義を再読み込みします。<br>
+   * ルート定義のキャッシュ（fw.wf.route.cache）が無効の場合は何もしません。
+   *
+   * @since 2.0.0
+   */
+  void reloadRoutes();
 }
@@ -32,8 +32,9 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
 
   private CallableStatement statement;
 
-  FWCallableStatementWrapper(CallableStatement statement) {
-    super(statement);
+  FWCallableStatementWrapper(CallableStatement statement, String sql,
+      FWFullConnectionManager manager) {
+    super(statement, sql, manager);
     this.statement = statement;
   }
 
@@ -211,6 +212,7 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
   public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
 
     statement.setTimestamp(parameterIndex, x, cal);
+    bind(parameterIndex, "Timestamp");
   }
 
   @Override
@@ -307,7 +309,12 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
   @Override
   public boolean execute(String sql, String[] columnNames) throws SQLException {
 
-    return statement.execute(sql, columnNames);
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, columnNames);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -375,7 +382,12 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
   @Override
   public long executeLargeUpdate(String sql) throws SQLException {
 
-    return statement.executeLargeUpdate(sql);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -387,7 +399,12 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
   @Override
   public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 
-    return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -405,7 +422,12 @@ public class FWCallableStatementWrapper extends FWPreparedStatementWrapper
   @Override
   public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
 
-    return statement.executeLargeUpdate(sql, columnIndexes);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, columnIndexes);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -7,17 +7,15 @@
  */
 package com.handywedge.db;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
-import javax.sql.DataSource;
-
 import com.handywedge.common.FWConstantCode;
 import com.handywedge.common.FWRuntimeException;
 import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWRequestTiming;
 
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
@@ -27,32 +25,104 @@ public class FWConnectionManagerImpl implements FWFullConnectionManager {
 
   // REQUIRED以外のネストしたトランザクションは考慮していない
   private FWFullConnection connection = null;
-  private List<FWStatement> statements = new ArrayList<>();
-  private List<FWResultSet> resultSets = new ArrayList<>();
+
+  // クローズされていないステートメントと結果セット。クローズ時に外すので、
+  // 件数はリクエスト内の実行回数ではなく同時に開いている数に収まる
+  private final List<FWStatement> statements = new ArrayList<>();
+  private final List<FWResultSet> resultSets = new ArrayList<>();
+
+  // beginで指定された取得待ちのコネクション設定
+  private boolean pending;
+  private String dataSourceName;
+  private boolean readOnly;
+  private boolean autoCommit;
+
+  // 参照レプリカから取得した場合のレプリカのデータソース名
+  private String replicaName;
 
   @Inject
   private FWLogger logger;
 
+  @Inject
+  private FWConnectionSettings settings;
+
+  @Inject
+  private FWDataSourceRegistry dataSourceRegistry;
+
+  @Inject
+  private FWReplicaRouter replicaRouter;
+
   @Override
   public FWFullConnection getConnection(String dataSourceName) {
 
-    DataSource dataSource;
-    try {
-      dataSource = (DataSource) InitialContext.doLookup("java:comp/env/" + dataSourceName);
-    } catch (NamingException e) {
-      throw new FWRuntimeException(FWConstantCode.DS_LOOKUP_FAIL, e);
+    return wrap(dataSourceRegistry.getConnection(dataSourceName));
+  }
+
+  private FWFullConnection wrap(Connection con) {
+
+    connection = new FWConnectionWrapper(con, this, settings.getStatementCacheSize());
+    return connection;
+  }
+
+  // 読み取り専用の場合はレプリカを優先し、取得できない場合はプライマリにフェイルオーバーする
+  private FWFullConnection getReadOnlyConnection(String dataSourceName) {
+
+    String replica = replicaRouter.select(dataSourceName);
+    if (replica != null) {
+      try {
+        FWFullConnection con = wrap(dataSourceRegistry.getConnection(replica));
+        replicaName = replica;
+        logger.debug("read replica selected. dataSourceName={}, replica={}", dataSourceName,
+            replica);
+        return con;
+      } catch (FWRuntimeException e) {
+        replicaRouter.markDown(dataSourceName, replica, e);
+      }
+    }
+    return getConnection(dataSourceName);
+  }
+
+  @Override
+  public void begin(String dataSourceName, boolean readOnly, boolean autoCommit) {
+
+    this.dataSourceName = dataSourceName;
+    this.readOnly = readOnly;
+    this.autoCommit = autoCommit;
+    pending = true;
+    if (!settings.isLazyAcquisition()) {
+      acquire();
+    } else {
+      logger.debug("connection acquisition deferred. dataSourceName={}", dataSourceName);
     }
+  }
+
+  private void acquire() {
+
+    pending = false;
+    long start = System.nanoTime();
+    FWFullConnection con =
+        readOnly ? getReadOnlyConnection(dataSourceName) : getConnection(dataSourceName);
+    FWRequestTiming.connection(System.nanoTime() - start);
     try {
-      connection = new FWConnectionWrapper(dataSource.getConnection());
-      return connection;
+      con.setReadOnly(readOnly); // プールから取得する場合は戻しておく必要がある
+      con.setAutoCommit(autoCommit);
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
   }
 
+  @Override
+  public boolean isAcquired() {
+
+    return connection != null;
+  }
+
   @Override
   public FWFullConnection getConnection() {
 
+    if (connection == null && pending) {
+      acquire();
+    }
     return connection;
   }
 
@@ -68,11 +138,39 @@ public class FWConnectionManagerImpl implements FWFullConnectionManager {
     resultSets.add(resultSet);
   }
 
+  @Override
+  public void removeStatement(FWStatement statement) {
+
+    removeLast(statements, statement);
+  }
+
+  @Override
+  public void removeResultSet(FWResultSet resultSet) {
+
+    removeLast(resultSets, resultSet);
+  }
+
+  // 後から開いたものほど先にクローズされるので末尾から探す
+  private static <T> void removeLast(List<T> list, T element) {
+
+    for (int i = list.size() - 1; i >= 0; i--) {
+      if (list.get(i) == element) {
+        list.remove(i);
+        return;
+      }
+    }
+  }
+
   @Override
   public void close() {
 
+    // クローズ時に追跡対象から外されるため、コピーしてから処理する
+    FWResultSet[] openResultSets = resultSets.toArray(new FWResultSet[0]);
+    FWStatement[] openStatements = statements.toArray(new FWStatement[0]);
+    resultSets.clear();
+    statements.clear();
     try {
-      for (FWResultSet rs : resultSets) {
+      for (FWResultSet rs : openResultSets) {
         if (!rs.isClosed()) {
           logger.warn("FWResulstSet not closed.");
           try {
@@ -82,7 +180,7 @@ public class FWConnectionManagerImpl implements FWFullConnectionManager {
           }
         }
       }
-      for (FWStatement s : statements) {
+      for (FWStatement s : openStatements) {
         if (!s.isClosed()) {
           logger.warn("FWStatement not closed.");
           try {
@@ -92,12 +190,19 @@ public class FWConnectionManagerImpl implements FWFullConnectionManager {
           }
         }
       }
+      pending = false;
       if (connection != null) {
         connection.close();
         connection = null;
       }
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    } finally {
+      // クローズに失敗しても実行中数を戻さないとレプリカが振り分け対象から外れたままになる
+      if (replicaName != null) {
+        replicaRouter.release(dataSourceName, replicaName);
+        replicaName = null;
+      }
     }
   }
 
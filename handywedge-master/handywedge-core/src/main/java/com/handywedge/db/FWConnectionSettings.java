@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.log.FWLogger;
+
+// コネクション取得時の設定。トランザクション・コネクション毎に読み込まないよう保持する
+@ApplicationScoped
+public class FWConnectionSettings {
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources msgResources;
+
+  private volatile boolean initConfig;
+  private boolean lazyAcquisition;
+  private int statementCacheSize;
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private void init() {
+
+    if (initConfig) {
+      return;
+    }
+    synchronized (this) {
+      if (initConfig) {
+        return;
+      }
+      // 遅延取得はオプトイン。DB以外の処理が長いメソッドでプールのコネクションを占有しないようにする
+      try {
+        lazyAcquisition =
+            Boolean.parseBoolean(msgResources.get(FWMessageResources.CONNECTION_LAZY));
+      } catch (Exception e) {
+        lazyAcquisition = false;
+      }
+      // ステートメントキャッシュはオプトイン。未設定・不正値の場合は無効
+      statementCacheSize = 0;
+      try {
+        String size = msgResources.get(FWMessageResources.STATEMENT_CACHE_SIZE);
+        if (!FWStringUtil.isEmpty(size)) {
+          statementCacheSize = Integer.parseInt(size.trim());
+        }
+      } catch (Exception e) {
+        logger.warn("ステートメントキャッシュサイズの設定が不正です。キャッシュは無効化されます。");
+      }
+      logger.info("connection settings. lazy={}, statementCacheSize={}", lazyAcquisition,
+          statementCacheSize);
+      initConfig = true;
+    }
+  }
+
+  boolean isLazyAcquisition() {
+
+    init();
+    return lazyAcquisition;
+  }
+
+  int getStatementCacheSize() {
+
+    init();
+    return statementCacheSize;
+  }
+}
@@ -13,6 +13,8 @@ import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
@@ -28,9 +30,45 @@ public class FWConnectionWrapper implements FWFullConnection {
 
   private Connection connection;
 
-  FWConnectionWrapper(Connection connection) {
+  // ステートメント・結果セットの追跡先。生成する全てのラッパーに引き継ぐ
+  private final FWFullConnectionManager manager;
+
+  // fw.db.statement.cache.sizeが1以上の場合のみ有効
+  private FWStatementCache statementCache;
+
+  FWConnectionWrapper(Connection connection, FWFullConnectionManager manager) {
+
+    this(connection, manager, 0);
+  }
+
+  FWConnectionWrapper(Connection connection, FWFullConnectionManager manager,
+      int statementCacheSize) {
 
     this.connection = connection;
+    this.manager = manager;
+    if (statementCacheSize > 0) {
+      this.statementCache = new FWStatementCache(statementCacheSize);
+    }
+  }
+
+  private FWPreparedStatement prepareCachedStatement(String sql, int resultSetType,
+      int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+
+    FWStatementCache.Key key =
+        new FWStatementCache.Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    FWPreparedStatementWrapper ps = statementCache.checkout(key);
+    if (ps != null) {
+      ps.reopen();
+      return ps;
+    }
+    PreparedStatement statement;
+    if (resultSetHoldability == 0) {
+      statement = connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    } else {
+      statement = connection.prepareStatement(sql, resultSetType, resultSetConcurrency,
+          resultSetHoldability);
+    }
+    return new FWPreparedStatementWrapper(statement, sql, manager, statementCache, key);
   }
 
   /* ラッパーメソッド */
@@ -38,19 +76,23 @@ public class FWConnectionWrapper implements FWFullConnection {
   @Override
   public FWStatement createStatement() throws SQLException {
 
-    return new FWStatementWrapper(connection.createStatement());
+    return new FWStatementWrapper(connection.createStatement(), manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql) throws SQLException {
 
-    return new FWPreparedStatementWrapper(connection.prepareStatement(sql));
+    if (statementCache != null) {
+      return prepareCachedStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY,
+          0);
+    }
+    return new FWPreparedStatementWrapper(connection.prepareStatement(sql), sql, manager);
   }
 
   @Override
   public FWCallableStatementWrapper prepareCall(String sql) throws SQLException {
 
-    return new FWCallableStatementWrapper(connection.prepareCall(sql));
+    return new FWCallableStatementWrapper(connection.prepareCall(sql), sql, manager);
   }
 
   @Override
@@ -93,15 +135,19 @@ public class FWConnectionWrapper implements FWFullConnection {
   public FWStatement createStatement(int resultSetType, int resultSetConcurrency)
       throws SQLException {
 
-    return new FWStatementWrapper(connection.createStatement(resultSetType, resultSetConcurrency));
+    return new FWStatementWrapper(connection.createStatement(resultSetType, resultSetConcurrency),
+        manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql, int resultSetType,
       int resultSetConcurrency) throws SQLException {
 
+    if (statementCache != null) {
+      return prepareCachedStatement(sql, resultSetType, resultSetConcurrency, 0);
+    }
     return new FWPreparedStatementWrapper(
-        connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql, manager);
   }
 
   @Override
@@ -109,7 +155,7 @@ public class FWConnectionWrapper implements FWFullConnection {
       int resultSetConcurrency) throws SQLException {
 
     return new FWCallableStatementWrapper(
-        connection.prepareCall(sql, resultSetType, resultSetConcurrency));
+        connection.prepareCall(sql, resultSetType, resultSetConcurrency), sql, manager);
   }
 
   @Override
@@ -129,15 +175,20 @@ public class FWConnectionWrapper implements FWFullConnection {
       int resultSetHoldability) throws SQLException {
 
     return new FWStatementWrapper(
-        connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability),
+        manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql, int resultSetType,
       int resultSetConcurrency, int resultSetHoldability) throws SQLException {
 
+    if (statementCache != null) {
+      return prepareCachedStatement(sql, resultSetType, resultSetConcurrency,
+          resultSetHoldability);
+    }
     return new FWPreparedStatementWrapper(connection.prepareStatement(sql, resultSetType,
-        resultSetConcurrency, resultSetHoldability));
+        resultSetConcurrency, resultSetHoldability), sql, manager);
   }
 
   @Override
@@ -145,27 +196,31 @@ public class FWConnectionWrapper implements FWFullConnection {
       int resultSetConcurrency, int resultSetHoldability) throws SQLException {
 
     return new FWCallableStatementWrapper(
-        connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability),
+        sql, manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
       throws SQLException {
 
-    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, autoGeneratedKeys));
+    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, autoGeneratedKeys), sql,
+        manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
 
-    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, columnIndexes));
+    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, columnIndexes), sql,
+        manager);
   }
 
   @Override
   public FWPreparedStatement prepareStatement(String sql, String[] columnNames)
       throws SQLException {
 
-    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, columnNames));
+    return new FWPreparedStatementWrapper(connection.prepareStatement(sql, columnNames), sql,
+        manager);
   }
 
   @Override
@@ -253,6 +308,9 @@ public class FWConnectionWrapper implements FWFullConnection {
   @Override
   public void close() throws SQLException {
 
+    if (statementCache != null) {
+      statementCache.clear();
+    }
     connection.close();
   }
 
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import com.handywedge.common.FWConstantCode;
+import com.handywedge.common.FWRuntimeException;
+
+// データソース名毎にJNDIルックアップ結果をキャッシュする
+// ルックアップに失敗した場合はキャッシュしないので、次回の取得時に再ルックアップする
+@ApplicationScoped
+public class FWDataSourceRegistry {
+
+  private final Map<String, DataSource> dataSources = new ConcurrentHashMap<>();
+  private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+  public Connection getConnection(String dataSourceName) {
+
+    DataSource dataSource = lookup(dataSourceName);
+    Statistics stats = statistics.computeIfAbsent(dataSourceName, k -> new Statistics());
+    long start = System.nanoTime();
+    try {
+      Connection con = dataSource.getConnection();
+      stats.record(System.nanoTime() - start);
+      return con;
+    } catch (SQLException e) {
+      // プールのタイムアウト等はデータソースの問題ではないため、キャッシュは破棄しない
+      stats.failure();
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
+  private DataSource lookup(String dataSourceName) {
+
+    DataSource dataSource = dataSources.get(dataSourceName);
+    if (dataSource != null) {
+      return dataSource;
+    }
+    try {
+      dataSource = (DataSource) InitialContext.doLookup("java:comp/env/" + dataSourceName);
+    } catch (NamingException e) {
+      throw new FWRuntimeException(FWConstantCode.DS_LOOKUP_FAIL, e);
+    }
+    DataSource current = dataSources.putIfAbsent(dataSourceName, dataSource);
+    return current != null ? current : dataSource;
+  }
+
+  /**
+   * データソース名毎のコネクション取得時間の統計を返します。
+   *
+   * @return データソース名をキーとした統計情報
+   */
+  public Map<String, Statistics> getStatistics() {
+
+    return Collections.unmodifiableMap(statistics);
+  }
+
+  public static class Statistics {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    void record(long elapsedNanos) {
+      count.increment();
+      totalNanos.add(elapsedNanos);
+      maxNanos.accumulate(elapsedNanos);
+    }
+
+    void failure() {
+      failureCount.increment();
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getFailureCount() {
+      return failureCount.sum();
+    }
+
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+    public long getAverageNanos() {
+      long c = count.sum();
+      return c == 0 ? 0L : totalNanos.sum() / c;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d, failure=%d, avg=%dus, max=%dus", getCount(),
+          getFailureCount(), TimeUnit.NANOSECONDS.toMicros(getAverageNanos()),
+          TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+    }
+  }
+}
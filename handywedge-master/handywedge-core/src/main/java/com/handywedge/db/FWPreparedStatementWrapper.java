@@ -19,6 +19,7 @@ import java.sql.NClob;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.Ref;
+import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.RowId;
 import java.sql.SQLException;
@@ -26,148 +27,298 @@ import java.sql.SQLType;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 public class FWPreparedStatementWrapper extends FWStatementWrapper
     implements FWFullPreparedStatement {
 
   private PreparedStatement statement;
 
-  FWPreparedStatementWrapper(PreparedStatement statement) {
-    super(statement);
+  private final String sql;
+  private String fingerprint;
+
+  // バインド変数の型（スロークエリの出力用）。値はログに出力しない
+  private List<String> parameterTypes;
+
+  // ステートメントキャッシュ対象の場合のみ設定される
+  private FWStatementCache cache;
+  private FWStatementCache.Key cacheKey;
+  private boolean logicalClosed;
+
+  FWPreparedStatementWrapper(PreparedStatement statement, String sql,
+      FWFullConnectionManager manager) {
+    super(statement, manager);
     this.statement = statement;
+    this.sql = sql;
+  }
+
+  FWPreparedStatementWrapper(PreparedStatement statement, String sql,
+      FWFullConnectionManager manager, FWStatementCache cache, FWStatementCache.Key cacheKey) {
+    this(statement, sql, manager);
+    this.cache = cache;
+    this.cacheKey = cacheKey;
+  }
+
+  FWStatementCache.Key getCacheKey() {
+
+    return cacheKey;
+  }
+
+  // キャッシュから再利用する際に呼ばれる
+  void reopen() {
+
+    logicalClosed = false;
+    if (manager != null) {
+      manager.addStatement(this);
+    }
+  }
+
+  void closePhysical() throws SQLException {
+
+    super.close();
+  }
+
+  @Override
+  public void close() throws SQLException {
+
+    if (cache == null) {
+      super.close();
+      return;
+    }
+    if (logicalClosed) {
+      return;
+    }
+    logicalClosed = true;
+    // アプリケーションからはクローズ済みなので、キャッシュに戻す前に追跡対象から外す
+    if (manager != null) {
+      manager.removeStatement(this);
+    }
+    if (statement.isClosed()) {
+      return;
+    }
+    statement.clearParameters();
+    statement.clearWarnings();
+    parameterTypes = null;
+    cache.checkin(this);
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+
+    return logicalClosed || super.isClosed();
+  }
+
+  // PreparedStatementのSQLは生成時に確定しているため、フィンガープリントは初回のみ作成する
+  @Override
+  String fingerprint(String sql) {
+
+    if (fingerprint == null) {
+      fingerprint = FWSqlMetrics.fingerprint(this.sql);
+    }
+    return fingerprint;
+  }
+
+  @Override
+  List<String> getParameterTypes() {
+
+    return parameterTypes;
+  }
+
+  @Override
+  String getBatchSql() {
+
+    return sql;
+  }
+
+  void bind(int parameterIndex, String type) {
+
+    if (!FWSqlMetrics.isSlowQueryEnabled() || parameterIndex < 1) {
+      return;
+    }
+    if (parameterTypes == null) {
+      parameterTypes = new ArrayList<>();
+    }
+    while (parameterTypes.size() < parameterIndex) {
+      parameterTypes.add(null);
+    }
+    parameterTypes.set(parameterIndex - 1, type);
+  }
+
+  private void bindObject(int parameterIndex, Object x) {
+
+    if (FWSqlMetrics.isSlowQueryEnabled()) {
+      bind(parameterIndex, x == null ? "Null" : x.getClass().getSimpleName());
+    }
   }
 
   @Override
   public FWResultSet executeQuery() throws SQLException {
 
-    return new FWResultSetWrapper(statement.executeQuery());
+    long start = System.nanoTime();
+    ResultSet rs;
+    try {
+      rs = statement.executeQuery();
+    } finally {
+      executed(start, sql);
+    }
+    return new FWResultSetWrapper(rs, manager, getLastEntry());
   }
 
   @Override
   public int executeUpdate() throws SQLException {
 
-    return statement.executeUpdate();
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate();
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public void setNull(int parameterIndex, int sqlType) throws SQLException {
 
     statement.setNull(parameterIndex, sqlType);
+    bind(parameterIndex, "Null");
   }
 
   @Override
   public void setBoolean(int parameterIndex, boolean x) throws SQLException {
 
     statement.setBoolean(parameterIndex, x);
+    bind(parameterIndex, "Boolean");
   }
 
   @Override
   public void setByte(int parameterIndex, byte x) throws SQLException {
 
     statement.setByte(parameterIndex, x);
+    bind(parameterIndex, "Byte");
   }
 
   @Override
   public void setShort(int parameterIndex, short x) throws SQLException {
 
     statement.setShort(parameterIndex, x);
+    bind(parameterIndex, "Short");
   }
 
   @Override
   public void setInt(int parameterIndex, int x) throws SQLException {
 
     statement.setInt(parameterIndex, x);
+    bind(parameterIndex, "Int");
   }
 
   @Override
   public void setLong(int parameterIndex, long x) throws SQLException {
 
     statement.setLong(parameterIndex, x);
+    bind(parameterIndex, "Long");
   }
 
   @Override
   public void setFloat(int parameterIndex, float x) throws SQLException {
 
     statement.setFloat(parameterIndex, x);
+    bind(parameterIndex, "Float");
   }
 
   @Override
   public void setDouble(int parameterIndex, double x) throws SQLException {
 
     statement.setDouble(parameterIndex, x);
+    bind(parameterIndex, "Double");
   }
 
   @Override
   public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
 
     statement.setBigDecimal(parameterIndex, x);
+    bind(parameterIndex, "BigDecimal");
   }
 
   @Override
   public void setString(int parameterIndex, String x) throws SQLException {
 
     statement.setString(parameterIndex, x);
+    bind(parameterIndex, "String");
   }
 
   @Override
   public void setBytes(int parameterIndex, byte[] x) throws SQLException {
 
     statement.setBytes(parameterIndex, x);
+    bind(parameterIndex, "Bytes");
   }
 
   @Override
   public void setDate(int parameterIndex, Date x) throws SQLException {
 
     statement.setDate(parameterIndex, x);
+    bind(parameterIndex, "Date");
   }
 
   @Override
   public void setTime(int parameterIndex, Time x) throws SQLException {
 
     statement.setTime(parameterIndex, x);
+    bind(parameterIndex, "Time");
   }
 
   @Override
   public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
 
     statement.setTimestamp(parameterIndex, x);
+    bind(parameterIndex, "Timestamp");
   }
 
   @Override
   public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
 
     statement.setAsciiStream(parameterIndex, x, length);
+    bind(parameterIndex, "AsciiStream");
   }
 
   @Override
   public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
 
     statement.setBinaryStream(parameterIndex, x, length);
+    bind(parameterIndex, "BinaryStream");
   }
 
   @Override
   public void clearParameters() throws SQLException {
 
     statement.clearParameters();
+    parameterTypes = null;
   }
 
   @Override
   public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
 
     statement.setObject(parameterIndex, x, targetSqlType);
+    bindObject(parameterIndex, x);
   }
 
   @Override
   public void setObject(int parameterIndex, Object x) throws SQLException {
 
     statement.setObject(parameterIndex, x);
+    bindObject(parameterIndex, x);
   }
 
   @Override
   public boolean execute() throws SQLException {
 
-    return statement.execute();
+    long start = System.nanoTime();
+    try {
+      return statement.execute();
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -181,6 +332,7 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setCharacterStream(parameterIndex, reader, length);
+    bind(parameterIndex, "CharacterStream");
   }
 
   @Override
@@ -193,24 +345,28 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
   public void setRef(int parameterIndex, Ref x) throws SQLException {
 
     statement.setRef(parameterIndex, x);
+    bind(parameterIndex, "Ref");
   }
 
   @Override
   public void setBlob(int parameterIndex, Blob x) throws SQLException {
 
     statement.setBlob(parameterIndex, x);
+    bind(parameterIndex, "Blob");
   }
 
   @Override
   public void setClob(int parameterIndex, Clob x) throws SQLException {
 
     statement.setClob(parameterIndex, x);
+    bind(parameterIndex, "Clob");
   }
 
   @Override
   public void setArray(int parameterIndex, Array x) throws SQLException {
 
     statement.setArray(parameterIndex, x);
+    bind(parameterIndex, "Array");
   }
 
   @Override
@@ -223,30 +379,35 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
   public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
 
     statement.setDate(parameterIndex, x, cal);
+    bind(parameterIndex, "Date");
   }
 
   @Override
   public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
 
     statement.setTime(parameterIndex, x, cal);
+    bind(parameterIndex, "Time");
   }
 
   @Override
   public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
 
     statement.setTimestamp(parameterIndex, x, cal);
+    bind(parameterIndex, "Timestamp");
   }
 
   @Override
   public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
 
     statement.setNull(parameterIndex, sqlType, typeName);
+    bind(parameterIndex, "Null");
   }
 
   @Override
   public void setURL(int parameterIndex, URL x) throws SQLException {
 
     statement.setURL(parameterIndex, x);
+    bind(parameterIndex, "URL");
   }
 
   @Override
@@ -259,12 +420,14 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
   public void setRowId(int parameterIndex, RowId x) throws SQLException {
 
     statement.setRowId(parameterIndex, x);
+    bind(parameterIndex, "RowId");
   }
 
   @Override
   public void setNString(int parameterIndex, String value) throws SQLException {
 
     statement.setNString(parameterIndex, value);
+    bind(parameterIndex, "NString");
   }
 
   @Override
@@ -272,18 +435,21 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setNCharacterStream(parameterIndex, value, length);
+    bind(parameterIndex, "NCharacterStream");
   }
 
   @Override
   public void setNClob(int parameterIndex, NClob value) throws SQLException {
 
     statement.setNClob(parameterIndex, value);
+    bind(parameterIndex, "NClob");
   }
 
   @Override
   public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
 
     statement.setClob(parameterIndex, reader, length);
+    bind(parameterIndex, "Clob");
   }
 
   @Override
@@ -291,18 +457,21 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setBlob(parameterIndex, inputStream, length);
+    bind(parameterIndex, "Blob");
   }
 
   @Override
   public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
 
     statement.setNClob(parameterIndex, reader, length);
+    bind(parameterIndex, "NClob");
   }
 
   @Override
   public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
 
     statement.setSQLXML(parameterIndex, xmlObject);
+    bind(parameterIndex, "SQLXML");
   }
 
   @Override
@@ -310,18 +479,21 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    bindObject(parameterIndex, x);
   }
 
   @Override
   public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
 
     statement.setAsciiStream(parameterIndex, x, length);
+    bind(parameterIndex, "AsciiStream");
   }
 
   @Override
   public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
 
     statement.setBinaryStream(parameterIndex, x, length);
+    bind(parameterIndex, "BinaryStream");
   }
 
   @Override
@@ -329,48 +501,56 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setCharacterStream(parameterIndex, reader, length);
+    bind(parameterIndex, "CharacterStream");
   }
 
   @Override
   public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
 
     statement.setAsciiStream(parameterIndex, x);
+    bind(parameterIndex, "AsciiStream");
   }
 
   @Override
   public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
 
     statement.setBinaryStream(parameterIndex, x);
+    bind(parameterIndex, "BinaryStream");
   }
 
   @Override
   public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
 
     statement.setCharacterStream(parameterIndex, reader);
+    bind(parameterIndex, "CharacterStream");
   }
 
   @Override
   public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
 
     statement.setNCharacterStream(parameterIndex, value);
+    bind(parameterIndex, "NCharacterStream");
   }
 
   @Override
   public void setClob(int parameterIndex, Reader reader) throws SQLException {
 
     statement.setClob(parameterIndex, reader);
+    bind(parameterIndex, "Clob");
   }
 
   @Override
   public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
 
     statement.setBlob(parameterIndex, inputStream);
+    bind(parameterIndex, "Blob");
   }
 
   @Override
   public void setNClob(int parameterIndex, Reader reader) throws SQLException {
 
     statement.setNClob(parameterIndex, reader);
+    bind(parameterIndex, "NClob");
   }
 
   @Override
@@ -378,18 +558,25 @@ public class FWPreparedStatementWrapper extends FWStatementWrapper
       throws SQLException {
 
     statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    bindObject(parameterIndex, x);
   }
 
   @Override
   public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
 
     statement.setObject(parameterIndex, x, targetSqlType);
+    bindObject(parameterIndex, x);
   }
 
   @Override
   public long executeLargeUpdate() throws SQLException {
 
-    return statement.executeLargeUpdate();
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate();
+    } finally {
+      executed(start, sql);
+    }
   }
 
 }
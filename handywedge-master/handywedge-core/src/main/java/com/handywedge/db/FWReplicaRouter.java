@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.log.FWLogger;
+
+// READ_ONLYトランザクションの参照レプリカ振り分け
+// fw.db.replica.<データソース名>にレプリカのデータソース名をカンマ区切りで設定する
+// 取得に失敗したレプリカは一定時間振り分け対象外とし、全て対象外の場合はプライマリを使用する
+@ApplicationScoped
+public class FWReplicaRouter {
+
+  static final String STRATEGY_ROUND_ROBIN = "round_robin";
+  static final String STRATEGY_LEAST_IN_FLIGHT = "least_in_flight";
+
+  private static final String DEFAULT_RETRY_SEC = "30";
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources msgResources;
+
+  private final Map<String, ReplicaGroup> groups = new ConcurrentHashMap<>();
+
+  private volatile boolean initConfig;
+  private boolean leastInFlight;
+  private long retryMillis;
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private void init() {
+
+    if (initConfig) {
+      return;
+    }
+    synchronized (this) {
+      if (initConfig) {
+        return;
+      }
+      String strategy = FWStringUtil.replaceNullString(
+          msgResources.get(FWMessageResources.REPLICA_STRATEGY), STRATEGY_ROUND_ROBIN);
+      leastInFlight = STRATEGY_LEAST_IN_FLIGHT.equalsIgnoreCase(strategy.trim());
+      try {
+        retryMillis = Long.parseLong(FWStringUtil.replaceNullString(
+            msgResources.get(FWMessageResources.REPLICA_RETRY_SEC), DEFAULT_RETRY_SEC)) * 1000;
+      } catch (Exception e) {
+        logger.warn("レプリカの再試行間隔の設定が不正です。デフォルト値を使用します。");
+        retryMillis = Long.parseLong(DEFAULT_RETRY_SEC) * 1000;
+      }
+      initConfig = true;
+    }
+  }
+
+  /**
+   * 振り分け先のレプリカのデータソース名を返します。<br>
+   * レプリカが未設定もしくは全て停止中の場合はnullを返します。<br>
+   * null以外を返した場合は必ずreleaseもしくはmarkDownを呼び出して下さい。
+   */
+  String select(String dataSourceName) {
+
+    init();
+    ReplicaGroup group = groups.computeIfAbsent(dataSourceName, this::createGroup);
+    Replica replica = leastInFlight ? group.leastInFlight() : group.roundRobin();
+    if (replica == null) {
+      return null;
+    }
+    replica.inFlight.incrementAndGet();
+    return replica.name;
+  }
+
+  void release(String dataSourceName, String replicaName) {
+
+    Replica replica = find(dataSourceName, replicaName);
+    if (replica != null) {
+      replica.inFlight.decrementAndGet();
+    }
+  }
+
+  void markDown(String dataSourceName, String replicaName, Exception cause) {
+
+    Replica replica = find(dataSourceName, replicaName);
+    if (replica != null) {
+      replica.inFlight.decrementAndGet();
+      replica.downUntil = System.currentTimeMillis() + retryMillis;
+      logger.warn("レプリカからコネクションが取得できません。一定時間振り分け対象外とします。replica={}, retry={}ms",
+          replicaName, retryMillis, cause);
+    }
+  }
+
+  /**
+   * データソース名毎のレプリカの状態を返します。
+   */
+  public Map<String, List<String>> getStatus() {
+
+    Map<String, List<String>> status = new HashMap<>();
+    long now = System.currentTimeMillis();
+    groups.forEach((name, group) -> {
+      List<String> list = new ArrayList<>();
+      for (Replica r : group.replicas) {
+        list.add(String.format("%s(inFlight=%d, up=%b)", r.name, r.inFlight.get(), r.isUp(now)));
+      }
+      status.put(name, list);
+    });
+    return Collections.unmodifiableMap(status);
+  }
+
+  private Replica find(String dataSourceName, String replicaName) {
+
+    ReplicaGroup group = groups.get(dataSourceName);
+    if (group == null) {
+      return null;
+    }
+    for (Replica r : group.replicas) {
+      if (r.name.equals(replicaName)) {
+        return r;
+      }
+    }
+    return null;
+  }
+
+  private ReplicaGroup createGroup(String dataSourceName) {
+
+    List<Replica> replicas = new ArrayList<>();
+    String names = msgResources.get(FWMessageResources.REPLICA_PREFIX + dataSourceName);
+    if (!FWStringUtil.isEmpty(names)) {
+      for (String name : names.split(",")) {
+        if (!FWStringUtil.isEmpty(name.trim())) {
+          replicas.add(new Replica(name.trim()));
+        }
+      }
+      logger.info("参照レプリカ dataSourceName={}, replicas={}, strategy={}", dataSourceName,
+          names, leastInFlight ? STRATEGY_LEAST_IN_FLIGHT : STRATEGY_ROUND_ROBIN);
+    }
+    return new ReplicaGroup(replicas);
+  }
+
+  private static final class ReplicaGroup {
+
+    private final Replica[] replicas;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private ReplicaGroup(List<Replica> replicas) {
+      this.replicas = replicas.toArray(new Replica[0]);
+    }
+
+    private Replica roundRobin() {
+      if (replicas.length == 0) {
+        return null;
+      }
+      long now = System.currentTimeMillis();
+      int start = Math.floorMod(counter.getAndIncrement(), replicas.length);
+      for (int i = 0; i < replicas.length; i++) {
+        Replica r = replicas[(start + i) % replicas.length];
+        if (r.isUp(now)) {
+          return r;
+        }
+      }
+      return null;
+    }
+
+    private Replica leastInFlight() {
+      long now = System.currentTimeMillis();
+      Replica selected = null;
+      for (Replica r : replicas) {
+        if (r.isUp(now) && (selected == null || r.inFlight.get() < selected.inFlight.get())) {
+          selected = r;
+        }
+      }
+      return selected;
+    }
+  }
+
+  private static final class Replica {
+
+    private final String name;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long downUntil;
+
+    private Replica(String name) {
+      this.name = name;
+    }
+
+    private boolean isUp(long now) {
+      return downUntil <= now;
+    }
+  }
+}
@@ -29,17 +29,41 @@ import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
 
-import com.handywedge.cdi.FWBeanManager;
-
 public class FWResultSetWrapper implements FWFullResultSet {
 
   private ResultSet resultSet;
 
-  FWResultSetWrapper(ResultSet resultSet) {
+  private final FWFullConnectionManager manager;
+
+  // 読み込み件数・時間の加算先。SQLを集計しない場合はnull
+  private final FWSqlMetrics.Entry entry;
+  private long rows;
+  private long fetchNanos;
+
+  FWResultSetWrapper(ResultSet resultSet, FWFullConnectionManager manager) {
+
+    this(resultSet, manager, null);
+  }
+
+  FWResultSetWrapper(ResultSet resultSet, FWFullConnectionManager manager,
+      FWSqlMetrics.Entry entry) {
 
     this.resultSet = resultSet;
-    FWFullConnectionManager manager = FWBeanManager.getBean(FWFullConnectionManager.class);
-    manager.addResltSet(this);
+    this.manager = manager;
+    this.entry = entry;
+    if (manager != null) {
+      manager.addResltSet(this);
+    }
+  }
+
+  // 最終行まで読み込んだ時点、もしくはクローズ時に集計先へ加算する
+  private void fetched() {
+
+    if (entry != null && (rows > 0L || fetchNanos > 0L)) {
+      entry.fetched(rows, fetchNanos);
+      rows = 0L;
+      fetchNanos = 0L;
+    }
   }
 
   public <T> T unwrap(Class<T> iface) throws SQLException {
@@ -55,13 +79,28 @@ public class FWResultSetWrapper implements FWFullResultSet {
   @Override
   public boolean next() throws SQLException {
 
-    return resultSet.next();
+    if (entry == null) {
+      return resultSet.next();
+    }
+    long start = System.nanoTime();
+    boolean next = resultSet.next();
+    fetchNanos += System.nanoTime() - start;
+    if (next) {
+      rows++;
+    } else {
+      fetched();
+    }
+    return next;
   }
 
   @Override
   public void close() throws SQLException {
 
+    fetched();
     resultSet.close();
+    if (manager != null) {
+      manager.removeResultSet(this);
+    }
   }
 
   @Override
@@ -705,7 +744,7 @@ public class FWResultSetWrapper implements FWFullResultSet {
   @Override
   public FWStatement getStatement() throws SQLException {
 
-    return new FWStatementWrapper(resultSet.getStatement());
+    return new FWStatementWrapper(resultSet.getStatement(), manager);
   }
 
   @Override
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.handywedge.log.FWLatencyHistogram;
+import com.handywedge.log.FWLogName;
+import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWLoggerFactory;
+import com.handywedge.log.FWMDC;
+
+import lombok.Getter;
+import lombok.ToString;
+
+// JDBCラッパーで計測したSQLの実行時間をフィンガープリント（リテラルを?に置換したSQL）毎に集計する
+// fw.db.sql.metrics=trueで集計、fw.db.sql.slow.threshold.msを超えたSQLはJDBCログに出力する
+// スロークエリのログにはリテラル（個人情報等）を含めないよう、フィンガープリントを出力する
+// ラッパーはCDI管理外のため、設定は起動時にconfigureで静的に反映する
+public final class FWSqlMetrics {
+
+  // 集計するフィンガープリントの上限。超えた分はOTHERにまとめる
+  private static final int MAX_STATEMENTS = 1000;
+  private static final int MAX_SQL_LENGTH = 2000;
+  private static final String OTHER = "(other)";
+
+  private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+  private static final FWLogger logger = FWLoggerFactory.getLogger(FWSqlMetrics.class);
+
+  private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private static volatile boolean metricsEnabled;
+  private static volatile long slowThresholdNanos;
+
+  private FWSqlMetrics() {}
+
+  /**
+   * 集計の有無とスロークエリの閾値を設定します。アプリケーションの起動時に呼び出されます。
+   *
+   * @param metrics SQL毎に集計する場合はtrue
+   * @param slowThresholdMillis スロークエリとして出力する閾値（ミリ秒）。0以下の場合は出力しない
+   */
+  public static synchronized void configure(boolean metrics, long slowThresholdMillis) {
+
+    metricsEnabled = metrics;
+    slowThresholdNanos =
+        slowThresholdMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis) : 0L;
+    logger.info("SQLの集計 metrics={}, slowThreshold={}ms", metrics, slowThresholdMillis);
+  }
+
+  static boolean isEnabled() {
+    return metricsEnabled || slowThresholdNanos > 0L;
+  }
+
+  // バインド変数の型を記録するのはスロークエリを出力する場合のみ
+  static boolean isSlowQueryEnabled() {
+    return slowThresholdNanos > 0L;
+  }
+
+  /**
+   * 実行結果を記録します。
+   *
+   * @return 集計先。集計しない場合はnull
+   */
+  static Entry record(String fingerprint, long elapsedNanos, List<String> parameterTypes) {
+
+    long threshold = slowThresholdNanos;
+    if (threshold > 0L && elapsedNanos >= threshold) {
+      FWLogName current = FWMDC.setLogName(FWLogName.JDBC);
+      try {
+        logger.warn("slow query.\tElapsedTime[{}]ms\tSQL[{}]\tParameterTypes{}",
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos), fingerprint,
+            parameterTypes == null ? "[]" : parameterTypes);
+      } finally {
+        FWMDC.setLogName(current);
+      }
+    }
+    if (!metricsEnabled) {
+      return null;
+    }
+    Entry entry = entries.get(fingerprint);
+    if (entry == null) {
+      String key = entries.size() < MAX_STATEMENTS ? fingerprint : OTHER;
+      entry = entries.computeIfAbsent(key, k -> new Entry());
+    }
+    entry.histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    return entry;
+  }
+
+  /**
+   * 合計実行時間の長い順にSQLの集計結果を返します。
+   *
+   * @param top 返却する件数
+   */
+  public static List<Stat> getTop(int top) {
+
+    List<Stat> stats = new ArrayList<>();
+    entries.forEach((fingerprint, entry) -> stats.add(entry.toStat(fingerprint)));
+    stats.sort(Comparator.comparingDouble(Stat::getTotal).reversed());
+    return stats.size() > top ? new ArrayList<>(stats.subList(0, Math.max(top, 0))) : stats;
+  }
+
+  /**
+   * PreparedStatementキャッシュの全コネクション累計のヒット・ミス・破棄件数を返します。
+   */
+  public static StatementCacheStat getStatementCacheStat() {
+
+    return new StatementCacheStat(FWStatementCache.getHitCount(), FWStatementCache.getMissCount(),
+        FWStatementCache.getEvictionCount());
+  }
+
+  /**
+   * 集計結果とPreparedStatementキャッシュの統計をクリアします。
+   */
+  public static void reset() {
+
+    entries.clear();
+    FWStatementCache.resetStatistics();
+  }
+
+  /**
+   * 文字列・数値リテラルを?に置換し、空白を詰めたSQLを返します。IN句の?の並びは1つにまとめます。
+   */
+  static String fingerprint(String sql) {
+
+    if (sql == null) {
+      return "";
+    }
+    int length = Math.min(sql.length(), MAX_SQL_LENGTH);
+    StringBuilder sb = new StringBuilder(length);
+    boolean space = false;
+    for (int i = 0; i < length; i++) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+        continue;
+      }
+      if (space) {
+        sb.append(' ');
+        space = false;
+      }
+      if (c == '\'') {
+        i++;
+        while (i < length) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+              i++; // エスケープされた'
+            } else {
+              break;
+            }
+          }
+          i++;
+        }
+        sb.append('?');
+      } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+        while (i + 1 < length
+            && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+          i++;
+        }
+        sb.append('?');
+      } else {
+        sb.append(c);
+      }
+    }
+    if (sb.indexOf("?") < 0) {
+      return sb.toString();
+    }
+    return IN_LIST.matcher(sb).replaceAll("(?)");
+  }
+
+  private static boolean isIdentifierPart(StringBuilder sb) {
+
+    if (sb.length() == 0) {
+      return false;
+    }
+    char c = sb.charAt(sb.length() - 1);
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '"';
+  }
+
+  static final class Entry {
+
+    private final FWLatencyHistogram histogram = new FWLatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+
+    // 結果セットのクローズ（もしくは最終行の読み込み）時に呼ばれる
+    void fetched(long rowCount, long nanos) {
+
+      rows.add(rowCount);
+      fetchNanos.add(nanos);
+    }
+
+    private Stat toStat(String fingerprint) {
+
+      FWLatencyHistogram.Snapshot s = histogram.snapshot();
+      return new Stat(fingerprint, s.getCount(), s.getTotal(), s.getP50(), s.getP95(), s.getP99(),
+          s.getMax(), rows.sum(), TimeUnit.NANOSECONDS.toMicros(fetchNanos.sum()) / 1000d);
+    }
+  }
+
+  /**
+   * SQL毎の集計結果です。時間はミリ秒です。fetchは結果セットの読み込み（next）に掛かった時間です。
+   */
+  @Getter
+  @ToString
+  public static final class Stat {
+
+    private final String sql;
+    private final long count;
+    private final double total;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+    private final long rows;
+    private final double fetch;
+
+    private Stat(String sql, long count, double total, double p50, double p95, double p99,
+        double max, long rows, double fetch) {
+      this.sql = sql;
+      this.count = count;
+      this.total = total;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+      this.max = max;
+      this.rows = rows;
+      this.fetch = fetch;
+    }
+  }
+
+  /**
+   * PreparedStatementキャッシュ（fw.db.statement.cache.size）の統計です。<br>
+   * evictionは上限を超えて物理クローズした件数です。
+   */
+  @Getter
+  @ToString
+  public static final class StatementCacheStat {
+
+    private final long hit;
+    private final long miss;
+    private final long eviction;
+
+    private StatementCacheStat(long hit, long miss, long eviction) {
+      this.hit = hit;
+      this.miss = miss;
+      this.eviction = eviction;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWLoggerFactory;
+
+// コネクション単位のPreparedStatementキャッシュ（LRU）
+// コネクションはスレッド間で共有されないので同期は行わない
+class FWStatementCache {
+
+  private static final FWLogger logger = FWLoggerFactory.getLogger(FWStatementCache.class);
+
+  // 統計情報は全コネクションの累計。FWSqlMetrics経由で管理APIから参照する
+  private static final LongAdder hitCount = new LongAdder();
+  private static final LongAdder missCount = new LongAdder();
+  private static final LongAdder evictionCount = new LongAdder();
+
+  private final int maxSize;
+
+  // キャッシュに保持するのは未使用（論理クローズ済）のステートメントのみ
+  private final LinkedHashMap<Key, FWPreparedStatementWrapper> idle;
+
+  FWStatementCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.idle = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  FWPreparedStatementWrapper checkout(Key key) {
+
+    FWPreparedStatementWrapper ps = idle.remove(key);
+    if (ps == null) {
+      missCount.increment();
+    } else {
+      hitCount.increment();
+    }
+    return ps;
+  }
+
+  // 論理クローズされたステートメントをキャッシュに戻す
+  // 同一キーのステートメントが既にキャッシュされている場合は物理クローズする
+  void checkin(FWPreparedStatementWrapper ps) throws SQLException {
+
+    Key key = ps.getCacheKey();
+    if (idle.containsKey(key)) {
+      ps.closePhysical();
+      return;
+    }
+    idle.put(key, ps);
+    if (idle.size() > maxSize) {
+      Iterator<Map.Entry<Key, FWPreparedStatementWrapper>> it = idle.entrySet().iterator();
+      FWPreparedStatementWrapper eldest = it.next().getValue();
+      it.remove();
+      evictionCount.increment();
+      eldest.closePhysical();
+    }
+  }
+
+  void clear() {
+
+    for (FWPreparedStatementWrapper ps : idle.values()) {
+      try {
+        ps.closePhysical();
+      } catch (SQLException e) {
+        logger.warn("cached FWPreparedStatement close error.", e);
+      }
+    }
+    idle.clear();
+  }
+
+  static long getHitCount() {
+    return hitCount.sum();
+  }
+
+  static long getMissCount() {
+    return missCount.sum();
+  }
+
+  static long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  static void resetStatistics() {
+    hitCount.reset();
+    missCount.reset();
+    evictionCount.reset();
+  }
+
+  // holdabilityが0の場合はコネクションのデフォルト値
+  static final class Key {
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int resultSetHoldability;
+
+    Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      this.resultSetHoldability = resultSetHoldability;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return resultSetType == other.resultSetType
+          && resultSetConcurrency == other.resultSetConcurrency
+          && resultSetHoldability == other.resultSetHoldability && sql.equals(other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+  }
+}
@@ -7,20 +7,64 @@
  */
 package com.handywedge.db;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.List;
 
-import com.handywedge.cdi.FWBeanManager;
+import com.handywedge.log.FWRequestTiming;
 
 public class FWStatementWrapper implements FWFullStatement {
 
   private Statement statement;
 
-  FWStatementWrapper(Statement statement) {
+  // 生成元コネクションのマネージャ。BeanManager経由のルックアップはコストが大きいので引き継ぐ
+  final FWFullConnectionManager manager;
+
+  FWStatementWrapper(Statement statement, FWFullConnectionManager manager) {
     this.statement = statement;
-    FWFullConnectionManager manager = FWBeanManager.getBean(FWFullConnectionManager.class);
-    manager.addStatement(this);
+    this.manager = manager;
+    if (manager != null) {
+      manager.addStatement(this);
+    }
+  }
+
+  // addBatch(String)で最初に追加したSQL。executeBatchの集計に使用する
+  private String batchSql;
+
+  // 直近に実行したSQLの集計先。結果セットの読み込み件数の加算に使用する
+  private FWSqlMetrics.Entry lastEntry;
+
+  // SQLの実行時間をリクエストの処理時間内訳とSQLの集計に加算する
+  void executed(long start, String sql) {
+
+    long elapsed = System.nanoTime() - start;
+    FWRequestTiming.sql(elapsed);
+    lastEntry = FWSqlMetrics.isEnabled()
+        ? FWSqlMetrics.record(fingerprint(sql), elapsed, getParameterTypes())
+        : null;
+  }
+
+  String fingerprint(String sql) {
+
+    return FWSqlMetrics.fingerprint(sql);
+  }
+
+  // スロークエリの出力用。PreparedStatementのみ
+  List<String> getParameterTypes() {
+
+    return null;
+  }
+
+  String getBatchSql() {
+
+    return batchSql;
+  }
+
+  FWSqlMetrics.Entry getLastEntry() {
+
+    return lastEntry;
   }
 
   /* ラッパーメソッド */
@@ -33,7 +77,14 @@ public class FWStatementWrapper implements FWFullStatement {
   @Override
   public FWResultSet executeQuery(String sql) throws SQLException {
 
-    return new FWResultSetWrapper(statement.executeQuery(sql));
+    long start = System.nanoTime();
+    ResultSet rs;
+    try {
+      rs = statement.executeQuery(sql);
+    } finally {
+      executed(start, sql);
+    }
+    return new FWResultSetWrapper(rs, manager, lastEntry);
   }
 
   @Override
@@ -45,13 +96,21 @@ public class FWStatementWrapper implements FWFullStatement {
   @Override
   public int executeUpdate(String sql) throws SQLException {
 
-    return statement.executeUpdate(sql);
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public void close() throws SQLException {
 
     statement.close();
+    if (manager != null) {
+      manager.removeStatement(this);
+    }
   }
 
   @Override
@@ -123,13 +182,18 @@ public class FWStatementWrapper implements FWFullStatement {
   @Override
   public boolean execute(String sql) throws SQLException {
 
-    return statement.execute(sql);
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public FWResultSet getResultSet() throws SQLException {
 
-    return new FWResultSetWrapper(statement.getResultSet());
+    return new FWResultSetWrapper(statement.getResultSet(), manager, lastEntry);
   }
 
   @Override
@@ -184,24 +248,34 @@ public class FWStatementWrapper implements FWFullStatement {
   public void addBatch(String sql) throws SQLException {
 
     statement.addBatch(sql);
+    if (batchSql == null) {
+      batchSql = sql;
+    }
   }
 
   @Override
   public void clearBatch() throws SQLException {
 
     statement.clearBatch();
+    batchSql = null;
   }
 
   @Override
   public int[] executeBatch() throws SQLException {
 
-    return statement.executeBatch();
+    long start = System.nanoTime();
+    try {
+      return statement.executeBatch();
+    } finally {
+      executed(start, getBatchSql());
+      batchSql = null;
+    }
   }
 
   @Override
   public FWConnection getConnection() throws SQLException {
 
-    return new FWConnectionWrapper(statement.getConnection());
+    return new FWConnectionWrapper(statement.getConnection(), manager);
   }
 
   @Override
@@ -213,43 +287,73 @@ public class FWStatementWrapper implements FWFullStatement {
   @Override
   public FWResultSet getGeneratedKeys() throws SQLException {
 
-    return new FWResultSetWrapper(statement.getGeneratedKeys());
+    return new FWResultSetWrapper(statement.getGeneratedKeys(), manager);
   }
 
   @Override
   public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 
-    return statement.executeUpdate(sql, autoGeneratedKeys);
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, autoGeneratedKeys);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
 
-    return statement.executeUpdate(sql, columnIndexes);
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, columnIndexes);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public int executeUpdate(String sql, String[] columnNames) throws SQLException {
 
-    return statement.executeUpdate(sql, columnNames);
+    long start = System.nanoTime();
+    try {
+      return statement.executeUpdate(sql, columnNames);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
 
-    return statement.execute(sql, autoGeneratedKeys);
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, autoGeneratedKeys);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public boolean execute(String sql, int[] columnIndexes) throws SQLException {
 
-    return statement.execute(sql, columnIndexes);
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, columnIndexes);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public boolean execute(String sql, String[] columnNames) throws SQLException {
 
-    return statement.execute(sql, columnNames);
+    long start = System.nanoTime();
+    try {
+      return statement.execute(sql, columnNames);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
@@ -309,31 +413,57 @@ public class FWStatementWrapper implements FWFullStatement {
   @Override
   public long[] executeLargeBatch() throws SQLException {
 
-    return statement.executeLargeBatch();
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeBatch();
+    } finally {
+      executed(start, getBatchSql());
+      batchSql = null;
+    }
   }
 
   @Override
   public long executeLargeUpdate(String sql) throws SQLException {
 
-    return statement.executeLargeUpdate(sql);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 
-    return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
 
-    return statement.executeLargeUpdate(sql, columnIndexes);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, columnIndexes);
+    } finally {
+      executed(start, sql);
+    }
   }
 
   @Override
   public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
 
-    return statement.executeLargeUpdate(sql, columnNames);
+    long start = System.nanoTime();
+    try {
+      return statement.executeLargeUpdate(sql, columnNames);
+    } finally {
+      executed(start, sql);
+    }
   }
 
 }
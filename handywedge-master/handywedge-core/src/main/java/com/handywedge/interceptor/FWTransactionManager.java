@@ -7,13 +7,25 @@
  */
 package com.handywedge.interceptor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.log.FWLogger;
 
 @RequestScoped
 public class FWTransactionManager {
 
   private int layer = 0;
 
+  // 最上位のトランザクション終了後に実行する処理
+  private List<Runnable> afterCompletion = new ArrayList<>();
+
+  @Inject
+  private FWLogger logger;
+
   boolean isTopLayer() {
 
     return layer == 0;
@@ -29,4 +41,36 @@ public class FWTransactionManager {
     layer--;
   }
 
+  /**
+   * 最上位のトランザクションのコミット・ロールバック後に実行する処理を登録します。<br>
+   * トランザクション外で呼び出された場合は即時に実行します。
+   *
+   * @param task 実行する処理
+   */
+  public void afterCompletion(Runnable task) {
+
+    if (isTopLayer()) {
+      task.run();
+    } else {
+      afterCompletion.add(task);
+    }
+  }
+
+  // 処理の例外はログ出力のみ行い、トランザクションの結果には影響させない
+  void runAfterCompletion() {
+
+    if (afterCompletion.isEmpty()) {
+      return;
+    }
+    List<Runnable> tasks = afterCompletion;
+    afterCompletion = new ArrayList<>();
+    for (Runnable task : tasks) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.warn("afterCompletion error.", e);
+      }
+    }
+  }
+
 }
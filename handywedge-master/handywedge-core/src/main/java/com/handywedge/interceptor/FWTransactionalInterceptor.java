@@ -22,6 +22,7 @@ import com.handywedge.db.FWFullConnectionManager;
 import com.handywedge.db.FWTransactional;
 import com.handywedge.db.FWTransactional.FWTxType;
 import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWRequestTiming;
 import com.handywedge.util.FWThreadLocal;
 
 @Dependent
@@ -48,26 +49,21 @@ public class FWTransactionalInterceptor {
     FWTxType txType = tx.value();
     String dataSourceName = tx.dataSourceName();
 
-    FWFullConnection connection = null;
     if (txMgr.isTopLayer()) {
       logger.debug("toplayer. txType={}, dataSourceName={}", txType, dataSourceName);
-      connection = connectionManager.getConnection(dataSourceName);
+      // 遅延取得が有効な場合、コネクションは最初の使用時に取得される
       switch (txType) {
         case REQUIRED:
-          connection.setReadOnly(false); // プールから取得する場合は戻しておく必要がある
-          connection.setAutoCommit(false);
+          connectionManager.begin(dataSourceName, false, false);
           break;
         case NON_TRANSACTION:
-          connection.setReadOnly(false);
-          connection.setAutoCommit(true);
+          connectionManager.begin(dataSourceName, false, true);
           break;
         case READ_ONLY:
-          connection.setReadOnly(true);
-          connection.setAutoCommit(true);
+          connectionManager.begin(dataSourceName, true, true);
           break;
         default:
-          connection.setReadOnly(false);
-          connection.setAutoCommit(false);
+          connectionManager.begin(dataSourceName, false, false);
           break;
       }
     } else {
@@ -84,11 +80,13 @@ public class FWTransactionalInterceptor {
         logger.info("transaction start.");
       }
       txMgr.incrementLayer();
-      startTime = logger.perfStart(signature);
+      startTime = logger.perfStartNanos(signature);
       returnVal = ctx.proceed();
-      logger.perfEnd(signature, startTime);
+      logger.perfEndNanos(signature, startTime);
+      FWRequestTiming.transaction(signature, System.nanoTime() - startTime);
       txMgr.decrementLayer();
-      if (txMgr.isTopLayer() && !connection.getAutoCommit()) {
+      FWFullConnection connection = getAcquiredConnection();
+      if (txMgr.isTopLayer() && connection != null && !connection.getAutoCommit()) {
         try {
           try {
             connection.commit();
@@ -109,7 +107,8 @@ public class FWTransactionalInterceptor {
       }
     } catch (Throwable t) {
       if (!commitError) {// コミットでのエラーはここでは何も処理せずにスローする
-        logger.perfEnd(signature, startTime);
+        logger.perfEndNanos(signature, startTime);
+        FWRequestTiming.transaction(signature, System.nanoTime() - startTime);
         txMgr.decrementLayer();
 
         // 最上位レイヤでロールバック判定処理
@@ -123,7 +122,8 @@ public class FWTransactionalInterceptor {
             logger.warn("BusinessLogic exception!", t);
           }
 
-          if (!connection.getAutoCommit()) {
+          FWFullConnection connection = getAcquiredConnection();
+          if (connection != null && !connection.getAutoCommit()) {
             // ロールバックはJTAライクではなく独自仕様にする。（例外は全てロールバック）
             boolean rollback = true;
             Class<? extends Exception>[] dontRollbackOn = tx.dontRollbackOn();
@@ -153,13 +153,26 @@ public class FWTransactionalInterceptor {
     } finally {
       if (txMgr.isTopLayer()) {
         logger.info("transaction end.");
-        connectionManager.close(); // closeはマネージャに委譲
+        try {
+          connectionManager.close(); // closeはマネージャに委譲
+        } finally {
+          txMgr.runAfterCompletion(); // コミット後でないと他のリクエストが更新前の行を読み込める
+        }
       }
     }
 
     return returnVal;
   }
 
+  // 一度もコネクションが使用されていない場合はnull（コミット・ロールバック不要）
+  private FWFullConnection getAcquiredConnection() {
+
+    if (!connectionManager.isAcquired()) {
+      return null;
+    }
+    return connectionManager.getConnection();
+  }
+
   private boolean isSubClass(Class<?> expected, Object actual) {
 
     boolean retVal = false;
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.log;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+
+// PERF/RESPログの非同期出力
+// リクエストスレッドはイベントをリングバッファに積むのみで、出力は専用スレッドがまとめて行う
+// MDCはlogName、requestId、userIdのみ引き継ぐ。ログの時刻は出力時の時刻となる
+// 停止後（バッファのクローズ後）に積もうとしたイベントは呼び出し元のスレッドで同期出力する
+// FWLoggerImplはCDI管理外のため、設定は起動時にconfigureで静的に反映する
+public final class FWAsyncLogSink {
+
+  public static final String POLICY_DROP = "drop";
+  public static final String POLICY_BLOCK = "block";
+  public static final String POLICY_SAMPLE = "sample";
+
+  private static final int BATCH_SIZE = 256;
+  private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static final FWLogger logger = FWLoggerFactory.getLogger(FWAsyncLogSink.class);
+
+  private static final LongAdder dropped = new LongAdder();
+  private static final LongAdder sampledOut = new LongAdder();
+  private static final AtomicLong sampleCounter = new AtomicLong();
+
+  private static volatile RingBuffer buffer;
+  private static volatile boolean enabled;
+  private static volatile boolean running;
+  private static String policy = POLICY_DROP;
+  private static int sampleRate;
+  private static Thread writer;
+
+  private FWAsyncLogSink() {}
+
+  /**
+   * 非同期出力を開始します。アプリケーションの起動時に呼び出されます。
+   *
+   * @param bufferSize バッファのサイズ（2のべき乗に切り上げ）
+   * @param policy バッファが溢れた場合の動作（drop、block、sample）
+   * @param sampleRate sampleの場合、バッファが半分以上埋まった時点から出力する割合（N件に1件）
+   */
+  public static synchronized void configure(int bufferSize, String policy, int sampleRate) {
+
+    if (enabled) {
+      return;
+    }
+    String p = policy == null ? POLICY_DROP : policy.trim().toLowerCase();
+    if (!POLICY_BLOCK.equals(p) && !POLICY_SAMPLE.equals(p)) {
+      p = POLICY_DROP;
+    }
+    FWAsyncLogSink.policy = p;
+    FWAsyncLogSink.sampleRate = Math.max(sampleRate, 1);
+    buffer = new RingBuffer(Math.max(bufferSize, 2));
+    running = true;
+    writer = new Thread(FWAsyncLogSink::drainLoop, "fw-async-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+    enabled = true;
+    logger.info("PERF/RESPログを非同期で出力します。bufferSize={}, policy={}", buffer.capacity(), p);
+  }
+
+  /**
+   * 非同期出力を停止し、バッファに残っているイベントを出力します。<br>
+   * 出力スレッドが停止しない場合、残りのイベントは出力しません（出力スレッドと同時に出力しないため）。
+   */
+  public static synchronized void shutdown() {
+
+    if (!enabled) {
+      return;
+    }
+    // クローズ後はofferがfalseを返すため、以降のイベントは呼び出し元で同期出力される
+    RingBuffer b = buffer;
+    long end = b.close();
+    enabled = false;
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      logger.warn("PERF/RESPログの出力スレッドが停止しないため、残りのイベントは出力しません。remaining={}",
+          end - b.head());
+    } else {
+      // クローズ前に確保されたスロットは書き込み完了を待って出力する
+      while (b.head() < end) {
+        if (drain(Integer.MAX_VALUE) == 0) {
+          Thread.onSpinWait();
+        }
+      }
+    }
+    logger.info("PERF/RESPログの非同期出力を停止しました。dropped={}, sampledOut={}", getDroppedCount(),
+        getSampledOutCount());
+  }
+
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * バッファが溢れて破棄したイベント数を返します。
+   */
+  public static long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * サンプリングにより間引いたイベント数を返します。
+   */
+  public static long getSampledOutCount() {
+    return sampledOut.sum();
+  }
+
+  /**
+   * イベントをバッファに積みます。
+   *
+   * @return 停止済みのため積めなかった場合はfalse（呼び出し元で同期出力する）
+   */
+  static boolean offer(Logger target, FWLogName logName, String format, Object arg1,
+      Object arg2) {
+
+    RingBuffer b = buffer;
+    if (POLICY_SAMPLE.equals(policy) && b.size() >= b.capacity() / 2
+        && sampleCounter.getAndIncrement() % sampleRate != 0) {
+      sampledOut.increment();
+      return true;
+    }
+    Event event = new Event(target, logName, format, arg1, arg2, MDC.get(FWMDC.REQUEST_ID),
+        MDC.get(FWMDC.USER_ID));
+    Offer result = b.offer(event);
+    if (POLICY_BLOCK.equals(policy)) {
+      while (result == Offer.FULL && running) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        result = b.offer(event);
+      }
+      if (result == Offer.FULL) { // 停止処理中はクローズ済み
+        result = Offer.CLOSED;
+      }
+    }
+    switch (result) {
+      case FULL:
+        dropped.increment();
+        return true;
+      case CLOSED:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  private static void drainLoop() {
+
+    while (running) {
+      try {
+        if (drain(BATCH_SIZE) == 0) {
+          LockSupport.parkNanos(IDLE_WAIT_NANOS);
+        }
+      } catch (RuntimeException e) {
+        logger.warn("PERF/RESPログの出力でエラーが発生しました。", e);
+      }
+    }
+  }
+
+  // 出力スレッド（停止後は停止処理のスレッド）のみが呼び出す
+  // 停止処理のスレッドのMDCを壊さないよう、出力後は元の内容に戻す
+  private static int drain(int max) {
+
+    RingBuffer b = buffer;
+    int count = 0;
+    Map<String, String> saved = null;
+    try {
+      Event event;
+      while (count < max && (event = b.poll()) != null) {
+        if (count == 0) {
+          saved = MDC.getCopyOfContextMap();
+        }
+        MDC.put(FWMDC.LOG_NAME, event.logName.name());
+        putOrRemove(FWMDC.REQUEST_ID, event.requestId);
+        putOrRemove(FWMDC.USER_ID, event.userId);
+        event.logger.info(event.format, event.arg1, event.arg2);
+        count++;
+      }
+    } finally {
+      if (count > 0) {
+        if (saved == null) {
+          MDC.clear();
+        } else {
+          MDC.setContextMap(saved);
+        }
+      }
+    }
+    return count;
+  }
+
+  private static void putOrRemove(String key, String value) {
+
+    if (value == null) {
+      MDC.remove(key);
+    } else {
+      MDC.put(key, value);
+    }
+  }
+
+  private static final class Event {
+
+    private final Logger logger;
+    private final FWLogName logName;
+    private final String format;
+    private final Object arg1;
+    private final Object arg2;
+    private final String requestId;
+    private final String userId;
+
+    private Event(Logger logger, FWLogName logName, String format, Object arg1, Object arg2,
+        String requestId, String userId) {
+      this.logger = logger;
+      this.logName = logName;
+      this.format = format;
+      this.arg1 = arg1;
+      this.arg2 = arg2;
+      this.requestId = requestId;
+      this.userId = userId;
+    }
+  }
+
+  private enum Offer {
+    OK, FULL, CLOSED
+  }
+
+  // 複数生産者・単一消費者の固定長リングバッファ（スロット毎のシーケンス番号でCASのみで制御する）
+  // クローズはtailのフラグで表し、スロット確保のCASと同じ値で判定する（クローズ後は確保できない）
+  private static final class RingBuffer {
+
+    private static final long CLOSED = 1L << 62;
+
+    private final int mask;
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private RingBuffer(int size) {
+      int capacity = Integer.highestOneBit(size - 1) << 1;
+      mask = capacity - 1;
+      slots = new AtomicReferenceArray<>(capacity);
+      sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+    }
+
+    private int capacity() {
+      return mask + 1;
+    }
+
+    private long size() {
+      return (tail.get() & ~CLOSED) - head.get();
+    }
+
+    private long head() {
+      return head.get();
+    }
+
+    private Offer offer(Event event) {
+
+      while (true) {
+        long pos = tail.get();
+        if ((pos & CLOSED) != 0) {
+          return Offer.CLOSED;
+        }
+        int index = (int) (pos & mask);
+        long diff = sequences.get(index) - pos;
+        if (diff == 0) {
+          if (tail.compareAndSet(pos, pos + 1)) {
+            slots.set(index, event);
+            sequences.set(index, pos + 1);
+            return Offer.OK;
+          }
+        } else if (diff < 0) {
+          return Offer.FULL;
+        }
+      }
+    }
+
+    // クローズし、確保済みのスロットの終端（これ以降は確保されない）を返す
+    private long close() {
+
+      while (true) {
+        long pos = tail.get();
+        if ((pos & CLOSED) != 0) {
+          return pos & ~CLOSED;
+        }
+        if (tail.compareAndSet(pos, pos | CLOSED)) {
+          return pos;
+        }
+      }
+    }
+
+    private Event poll() {
+
+      long pos = head.get();
+      int index = (int) (pos & mask);
+      if (sequences.get(index) != pos + 1) {
+        return null; // 空、もしくは書き込み中
+      }
+      Event event = slots.get(index);
+      slots.set(index, null);
+      sequences.set(index, pos + mask + 1);
+      head.set(pos + 1);
+      return event;
+    }
+  }
+}
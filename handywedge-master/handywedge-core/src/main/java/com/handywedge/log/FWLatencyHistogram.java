@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.log;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+import lombok.ToString;
+
+// マイクロ秒単位の対数線形ヒストグラム（2のべき乗毎に8分割。誤差は最大12.5%）
+// 記録はCASのみで行いロックは使用しない
+public final class FWLatencyHistogram {
+
+  private static final int LINEAR = 16;
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = LINEAR + (63 - 4) * SUB_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+  private final LongAdder total = new LongAdder();
+
+  // FWPerfMetricsのサマリー出力スレッドのみ参照
+  long lastCount;
+
+  /**
+   * 処理時間を記録します。
+   *
+   * @param micros 処理時間（マイクロ秒）
+   */
+  public void record(long micros) {
+
+    long v = Math.max(micros, 0L);
+    buckets.incrementAndGet(index(v));
+    max.accumulate(v);
+    total.add(v);
+  }
+
+  /**
+   * 記録した内容を集計して返します。
+   */
+  public Snapshot snapshot() {
+
+    long[] counts = new long[BUCKETS];
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      count += counts[i];
+    }
+    long maxMicros = max.get();
+    return new Snapshot(count, toMillis(total.sum()), percentile(counts, count, 0.50, maxMicros),
+        percentile(counts, count, 0.95, maxMicros), percentile(counts, count, 0.99, maxMicros),
+        toMillis(maxMicros));
+  }
+
+  private static int index(long v) {
+
+    if (v < LINEAR) {
+      return (int) v;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) ((v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+    return Math.min(LINEAR + (exp - 4) * SUB_COUNT + sub, BUCKETS - 1);
+  }
+
+  private static long upperBound(int index) {
+
+    if (index < LINEAR) {
+      return index;
+    }
+    int exp = (index - LINEAR) / SUB_COUNT + 4;
+    int sub = (index - LINEAR) % SUB_COUNT;
+    long lower = (long) (SUB_COUNT + sub) << (exp - SUB_BITS);
+    return lower + (1L << (exp - SUB_BITS)) - 1;
+  }
+
+  private static double percentile(long[] counts, long total, double q, long maxMicros) {
+
+    if (total == 0L) {
+      return 0d;
+    }
+    long rank = (long) Math.ceil(total * q);
+    long cumulative = 0L;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      if (cumulative >= rank) {
+        return toMillis(Math.min(upperBound(i), maxMicros));
+      }
+    }
+    return toMillis(maxMicros);
+  }
+
+  private static double toMillis(long micros) {
+    return micros / 1000d;
+  }
+
+  /**
+   * ヒストグラムの集計結果です。時間はミリ秒です。
+   */
+  @Getter
+  @ToString
+  public static final class Snapshot {
+
+    private final long count;
+    private final double total;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+
+    private Snapshot(long count, double total, double p50, double p95, double p99, double max) {
+      this.count = count;
+      this.total = total;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+      this.max = max;
+    }
+  }
+}
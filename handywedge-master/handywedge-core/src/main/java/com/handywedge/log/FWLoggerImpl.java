@@ -7,31 +7,29 @@
  */
 package com.handywedge.log;
 
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.Marker;
 
 public class FWLoggerImpl implements FWLogger {
 
-  private Logger logger;
+  private final Logger logger;
+
+  // FW/APの区分はロガー名で決まるので生成時に判定しておく
+  private final FWLogName logName;
 
   FWLoggerImpl(Logger logger) {
     this.logger = logger;
+    this.logName = logger.getName().startsWith(FW_PREFIX) ? FWLogName.FW : FWLogName.AP;
   }
 
   private static final String FW_PREFIX = "com.handywedge";
 
+  // 出力しないレベルの場合は呼び出し元でstart()の前に戻ること（MDCの操作を行わないため）
   private boolean start() {
 
-    if (FWMDC.getCurrentLogName() == null) {
-      if (getName().startsWith(FW_PREFIX)) {
-        FWMDC.setLogName(FWLogName.FW);
-      } else {
-        FWMDC.setLogName(FWLogName.AP);
-      }
-      return true;
-    } else {
-      return false;
-    }
+    return FWMDC.setLogNameIfAbsent(logName);
   }
 
   private void end(boolean remove) {
@@ -46,34 +44,73 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public long perfStart(String signature) {
 
-    FWLogName current = FWMDC.setLogName(FWLogName.PERF);
-    try {
-      long startTime = System.currentTimeMillis();
-      logger.info("{}() start.", signature);
-      return startTime;
-    } finally {
-      FWMDC.setLogName(current);
-    }
+    perfStartLog(signature);
+    return System.currentTimeMillis();
   }
 
   @Override
   public void perfEnd(String signature, long startTime) {
 
-    FWLogName current = FWMDC.setLogName(FWLogName.PERF);
-    try {
-      logger.info("{}() end.\tElapsedTime[{}]ms", signature,
-          System.currentTimeMillis() - startTime);
-    } finally {
-      FWMDC.setLogName(current);
+    // 従来通りミリ秒で計測する。ヒストグラムにはナノ秒に換算して記録する
+    perfRecord(signature, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - startTime));
+  }
+
+  @Override
+  public long perfStartNanos(String signature) {
+
+    long startNanos = System.nanoTime();
+    perfStartLog(signature);
+    return startNanos;
+  }
+
+  @Override
+  public void perfEndNanos(String signature, long startNanos) {
+
+    perfRecord(signature, System.nanoTime() - startNanos);
+  }
+
+  private void perfStartLog(String signature) {
+
+    if (FWPerfMetrics.isLogEnabled()) {
+      log(FWLogName.PERF, "{}() start.", signature, null);
+    }
+  }
+
+  private void perfRecord(String signature, long elapsed) {
+
+    if (FWPerfMetrics.isRecordEnabled()) {
+      FWPerfMetrics.record(getName(), signature, elapsed);
+    }
+    if (FWPerfMetrics.isLogEnabled()) {
+      log(FWLogName.PERF, "{}() end.\tElapsedTime[{}]ms", signature,
+          TimeUnit.NANOSECONDS.toMillis(elapsed));
     }
   }
 
   @Override
   public void respLog(String uri, long startTime) {
 
-    FWLogName current = FWMDC.setLogName(FWLogName.RESP);
+    log(FWLogName.RESP, "{}\tElapsedTime[{}]ms", uri, System.currentTimeMillis() - startTime);
+  }
+
+  // リクエストの処理時間内訳（FWRequestTiming）
+  void respRecord(String json) {
+
+    log(FWLogName.RESP, "{}", json, null);
+  }
+
+  // PERF/RESPログ。非同期出力が有効な場合はバッファに積むのみ
+  private void log(FWLogName name, String format, Object arg1, Object arg2) {
+
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
+    if (FWAsyncLogSink.isEnabled() && FWAsyncLogSink.offer(logger, name, format, arg1, arg2)) {
+      return;
+    }
+    FWLogName current = FWMDC.setLogName(name);
     try {
-      logger.info("{}\tElapsedTime[{}]ms", uri, System.currentTimeMillis() - startTime);
+      logger.info(format, arg1, arg2);
     } finally {
       FWMDC.setLogName(current);
     }
@@ -84,6 +121,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(Marker arg0, String arg1, Object arg2, Object arg3) {
 
+    if (!logger.isDebugEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1, arg2, arg3);
     end(remove);
@@ -92,6 +132,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(Marker arg0, String arg1, Object... arg2) {
 
+    if (!logger.isDebugEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1, arg2);
     end(remove);
@@ -100,6 +143,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(Marker arg0, String arg1, Object arg2) {
 
+    if (!logger.isDebugEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1, arg2);
     end(remove);
@@ -108,6 +154,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(Marker arg0, String arg1, Throwable arg2) {
 
+    if (!logger.isDebugEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1, arg2);
     end(remove);
@@ -116,6 +165,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(Marker arg0, String arg1) {
 
+    if (!logger.isDebugEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1);
     end(remove);
@@ -124,6 +176,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(String arg0, Object arg1, Object arg2) {
 
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1, arg2);
     end(remove);
@@ -132,6 +187,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(String arg0, Object... arg1) {
 
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1);
     end(remove);
@@ -140,6 +198,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(String arg0, Object arg1) {
 
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1);
     end(remove);
@@ -148,6 +209,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(String arg0, Throwable arg1) {
 
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0, arg1);
     end(remove);
@@ -156,6 +220,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void debug(String arg0) {
 
+    if (!logger.isDebugEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.debug(arg0);
     end(remove);
@@ -164,6 +231,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(Marker arg0, String arg1, Object arg2, Object arg3) {
 
+    if (!logger.isErrorEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1, arg2, arg3);
     end(remove);
@@ -172,6 +242,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(Marker arg0, String arg1, Object... arg2) {
 
+    if (!logger.isErrorEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1, arg2);
     end(remove);
@@ -180,6 +253,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(Marker arg0, String arg1, Object arg2) {
 
+    if (!logger.isErrorEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1, arg2);
     end(remove);
@@ -188,6 +264,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(Marker arg0, String arg1, Throwable arg2) {
 
+    if (!logger.isErrorEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1, arg2);
     end(remove);
@@ -196,6 +275,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(Marker arg0, String arg1) {
 
+    if (!logger.isErrorEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1);
     end(remove);
@@ -204,6 +286,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(String arg0, Object arg1, Object arg2) {
 
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1, arg2);
     end(remove);
@@ -212,6 +297,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(String arg0, Object... arg1) {
 
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1);
     end(remove);
@@ -220,6 +308,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(String arg0, Object arg1) {
 
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1);
     end(remove);
@@ -228,6 +319,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(String arg0, Throwable arg1) {
 
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0, arg1);
     end(remove);
@@ -236,6 +330,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void error(String arg0) {
 
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.error(arg0);
     end(remove);
@@ -250,6 +347,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(Marker arg0, String arg1, Object arg2, Object arg3) {
 
+    if (!logger.isInfoEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1, arg2, arg3);
     end(remove);
@@ -258,6 +358,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(Marker arg0, String arg1, Object... arg2) {
 
+    if (!logger.isInfoEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1, arg2);
     end(remove);
@@ -266,6 +369,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(Marker arg0, String arg1, Object arg2) {
 
+    if (!logger.isInfoEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1, arg2);
     end(remove);
@@ -274,6 +380,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(Marker arg0, String arg1, Throwable arg2) {
 
+    if (!logger.isInfoEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1, arg2);
     end(remove);
@@ -282,6 +391,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(Marker arg0, String arg1) {
 
+    if (!logger.isInfoEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1);
     end(remove);
@@ -290,6 +402,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(String arg0, Object arg1, Object arg2) {
 
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1, arg2);
     end(remove);
@@ -298,6 +413,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(String arg0, Object... arg1) {
 
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1);
     end(remove);
@@ -306,6 +424,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(String arg0, Object arg1) {
 
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1);
     end(remove);
@@ -314,6 +435,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(String arg0, Throwable arg1) {
 
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0, arg1);
     end(remove);
@@ -322,6 +446,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void info(String arg0) {
 
+    if (!logger.isInfoEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.info(arg0);
     end(remove);
@@ -390,6 +517,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(Marker arg0, String arg1, Object arg2, Object arg3) {
 
+    if (!logger.isTraceEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1, arg2, arg3);
     end(remove);
@@ -398,6 +528,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(Marker arg0, String arg1, Object... arg2) {
 
+    if (!logger.isTraceEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1, arg2);
     end(remove);
@@ -406,6 +539,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(Marker arg0, String arg1, Object arg2) {
 
+    if (!logger.isTraceEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1, arg2);
     end(remove);
@@ -414,6 +550,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(Marker arg0, String arg1, Throwable arg2) {
 
+    if (!logger.isTraceEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1, arg2);
     end(remove);
@@ -422,6 +561,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(Marker arg0, String arg1) {
 
+    if (!logger.isTraceEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1);
     end(remove);
@@ -430,6 +572,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(String arg0, Object arg1, Object arg2) {
 
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1, arg2);
     end(remove);
@@ -438,6 +583,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(String arg0, Object... arg1) {
 
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1);
     end(remove);
@@ -446,6 +594,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(String arg0, Object arg1) {
 
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1);
     end(remove);
@@ -454,6 +605,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(String arg0, Throwable arg1) {
 
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0, arg1);
     end(remove);
@@ -462,6 +616,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void trace(String arg0) {
 
+    if (!logger.isTraceEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.trace(arg0);
     end(remove);
@@ -470,6 +627,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(Marker arg0, String arg1, Object arg2, Object arg3) {
 
+    if (!logger.isWarnEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1, arg2, arg3);
     end(remove);
@@ -478,6 +638,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(Marker arg0, String arg1, Object... arg2) {
 
+    if (!logger.isWarnEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1, arg2);
     end(remove);
@@ -486,6 +649,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(Marker arg0, String arg1, Object arg2) {
 
+    if (!logger.isWarnEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1, arg2);
     end(remove);
@@ -494,6 +660,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(Marker arg0, String arg1, Throwable arg2) {
 
+    if (!logger.isWarnEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1, arg2);
     end(remove);
@@ -502,6 +671,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(Marker arg0, String arg1) {
 
+    if (!logger.isWarnEnabled(arg0)) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1);
     end(remove);
@@ -510,6 +682,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(String arg0, Object arg1, Object arg2) {
 
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1, arg2);
     end(remove);
@@ -518,6 +693,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(String arg0, Object... arg1) {
 
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1);
     end(remove);
@@ -526,6 +704,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(String arg0, Object arg1) {
 
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1);
     end(remove);
@@ -534,6 +715,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(String arg0, Throwable arg1) {
 
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0, arg1);
     end(remove);
@@ -542,6 +726,9 @@ public class FWLoggerImpl implements FWLogger {
   @Override
   public void warn(String arg0) {
 
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
     boolean remove = start();
     logger.warn(arg0);
     end(remove);
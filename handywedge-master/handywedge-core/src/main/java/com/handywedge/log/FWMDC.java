@@ -26,6 +26,20 @@ public class FWMDC {
     return currenLogName;
   }
 
+  /**
+   * ログ名が未設定の場合のみ設定します。
+   *
+   * @return 設定した場合はtrue
+   */
+  public static boolean setLogNameIfAbsent(FWLogName name) {
+
+    if (MDC.get(LOG_NAME) != null) {
+      return false;
+    }
+    MDC.put(LOG_NAME, name.name());
+    return true;
+  }
+
   public static FWLogName getCurrentLogName() {
 
     String logName = MDC.get(LOG_NAME);
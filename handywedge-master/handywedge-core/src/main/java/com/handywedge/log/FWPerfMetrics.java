@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.ToString;
+
+// perfStart/perfEndの計測結果をシグネチャ毎のヒストグラムに集計する
+// fw.perf.mode=log（従来通りPERFログを出力）、metrics（集計のみ）、both（集計とPERFログ）
+// FWLoggerImplはCDI管理外のため、設定は起動時にconfigureで静的に反映する
+public final class FWPerfMetrics {
+
+  public static final String MODE_LOG = "log";
+  public static final String MODE_METRICS = "metrics";
+  public static final String MODE_BOTH = "both";
+
+  private static final FWLogger logger = FWLoggerFactory.getLogger(FWPerfMetrics.class);
+
+  // ロガー名 → シグネチャ → ヒストグラム
+  private static final Map<String, Map<String, FWLatencyHistogram>> histograms =
+      new ConcurrentHashMap<>();
+
+  private static volatile boolean logEnabled = true;
+  private static volatile boolean recordEnabled = false;
+
+  private static ScheduledExecutorService scheduler;
+
+  private FWPerfMetrics() {}
+
+  /**
+   * 計測モードとサマリーログの出力間隔を設定します。アプリケーションの起動時に呼び出されます。
+   */
+  public static synchronized void configure(String mode, long summaryIntervalSec) {
+
+    String m = mode == null ? MODE_LOG : mode.trim().toLowerCase();
+    switch (m) {
+      case MODE_METRICS:
+        recordEnabled = true;
+        logEnabled = false;
+        break;
+      case MODE_BOTH:
+        recordEnabled = true;
+        logEnabled = true;
+        break;
+      default:
+        recordEnabled = false;
+        logEnabled = true;
+        m = MODE_LOG;
+    }
+    logger.info("処理時間の計測モード mode={}", m);
+    if (recordEnabled && summaryIntervalSec > 0L && scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fw-perf-summary");
+        t.setDaemon(true);
+        return t;
+      });
+      scheduler.scheduleWithFixedDelay(FWPerfMetrics::logSummary, summaryIntervalSec,
+          summaryIntervalSec, TimeUnit.SECONDS);
+      logger.info("処理時間のサマリーを{}秒間隔で出力します。", summaryIntervalSec);
+    }
+  }
+
+  public static synchronized void shutdown() {
+
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  static boolean isLogEnabled() {
+    return logEnabled;
+  }
+
+  static boolean isRecordEnabled() {
+    return recordEnabled;
+  }
+
+  static void record(String loggerName, String signature, long elapsedNanos) {
+
+    Map<String, FWLatencyHistogram> bySignature = histograms.get(loggerName);
+    if (bySignature == null) {
+      bySignature = histograms.computeIfAbsent(loggerName, k -> new ConcurrentHashMap<>());
+    }
+    FWLatencyHistogram histogram = bySignature.get(signature);
+    if (histogram == null) {
+      histogram = bySignature.computeIfAbsent(signature, k -> new FWLatencyHistogram());
+    }
+    histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+  }
+
+  /**
+   * シグネチャ毎の集計結果を呼び出し回数の多い順に返します。
+   */
+  public static List<Stat> getStats() {
+
+    List<Stat> stats = new ArrayList<>();
+    histograms.forEach((loggerName, bySignature) -> bySignature
+        .forEach((signature, h) -> stats.add(Stat.of(loggerName + "#" + signature, h))));
+    stats.sort(Comparator.comparingLong(Stat::getCount).reversed());
+    return stats;
+  }
+
+  /**
+   * 集計結果をクリアします。
+   */
+  public static void reset() {
+
+    histograms.clear();
+  }
+
+  // 前回出力時から呼び出しのあったシグネチャのみ出力する（値は累計）
+  private static void logSummary() {
+
+    FWLogName current = FWMDC.setLogName(FWLogName.PERF);
+    try {
+      histograms.forEach((loggerName, bySignature) -> bySignature.forEach((signature, h) -> {
+        Stat stat = Stat.of(loggerName + "#" + signature, h);
+        if (stat.getCount() == h.lastCount) {
+          return;
+        }
+        logger.info("{}() summary.\tCount[{}]\tP50[{}]ms\tP95[{}]ms\tP99[{}]ms\tMax[{}]ms",
+            stat.getSignature(), stat.getCount(), stat.getP50(), stat.getP95(), stat.getP99(),
+            stat.getMax());
+        h.lastCount = stat.getCount();
+      }));
+    } catch (RuntimeException e) {
+      logger.warn("処理時間のサマリー出力でエラーが発生しました。", e);
+    } finally {
+      FWMDC.setLogName(current);
+    }
+  }
+
+  /**
+   * シグネチャ毎の集計結果です。時間はミリ秒です。
+   */
+  @Getter
+  @ToString
+  public static final class Stat {
+
+    private final String signature;
+    private final long count;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+
+    private Stat(String signature, long count, double p50, double p95, double p99, double max) {
+      this.signature = signature;
+      this.count = count;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+      this.max = max;
+    }
+
+    private static Stat of(String signature, FWLatencyHistogram histogram) {
+
+      FWLatencyHistogram.Snapshot s = histogram.snapshot();
+      return new Stat(signature, s.getCount(), s.getP50(), s.getP95(), s.getP99(), s.getMax());
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+// リクエスト毎の処理時間の内訳
+// FWSessionFilterでbeginしたスレッドでのみ記録し、endで1行のJSONとしてRESPログに出力する
+// 各フェーズの記録はbeginされていない場合は何もしない（fw.request.timing=falseの場合など）
+public final class FWRequestTiming {
+
+  // トランザクションメソッドの記録件数の上限（超えた分は件数のみ出力）
+  private static final int MAX_TRANSACTIONS = 100;
+
+  private static final ThreadLocal<FWRequestTiming> current = new ThreadLocal<>();
+
+  private static final FWLoggerImpl logger =
+      new FWLoggerImpl(LoggerFactory.getLogger(FWRequestTiming.class));
+
+  private final String requestId;
+  private final String method;
+  private final String uri;
+  private final long startTime = System.nanoTime();
+
+  private long authNanos;
+  private int connectionCount;
+  private long connectionNanos;
+  private int sqlCount;
+  private long sqlNanos;
+  private long chainNanos = -1L;
+  private final List<String> transactions = new ArrayList<>();
+  private final List<Long> transactionNanos = new ArrayList<>();
+  private int transactionOverflow;
+
+  private FWRequestTiming(String requestId, String method, String uri) {
+    this.requestId = requestId;
+    this.method = method;
+    this.uri = uri;
+  }
+
+  /**
+   * リクエストの計測を開始します。
+   */
+  public static void begin(String requestId, String method, String uri) {
+
+    current.set(new FWRequestTiming(requestId, method, uri));
+  }
+
+  /**
+   * 認証・ACL判定の時間を加算します。
+   */
+  public static void auth(long nanos) {
+
+    FWRequestTiming t = current.get();
+    if (t != null) {
+      t.authNanos += nanos;
+    }
+  }
+
+  /**
+   * コネクションの取得時間を加算します。
+   */
+  public static void connection(long nanos) {
+
+    FWRequestTiming t = current.get();
+    if (t != null) {
+      t.connectionCount++;
+      t.connectionNanos += nanos;
+    }
+  }
+
+  /**
+   * SQLの実行時間を加算します。
+   */
+  public static void sql(long nanos) {
+
+    FWRequestTiming t = current.get();
+    if (t != null) {
+      t.sqlCount++;
+      t.sqlNanos += nanos;
+    }
+  }
+
+  /**
+   * トランザクションメソッド（@FWTransactional）の処理時間を記録します。
+   */
+  public static void transaction(String signature, long nanos) {
+
+    FWRequestTiming t = current.get();
+    if (t == null) {
+      return;
+    }
+    if (t.transactions.size() < MAX_TRANSACTIONS) {
+      t.transactions.add(signature);
+      t.transactionNanos.add(nanos);
+    } else {
+      t.transactionOverflow++;
+    }
+  }
+
+  /**
+   * 後続のフィルター・アプリケーションの処理時間（レスポンスの書き込みを含む）を記録します。
+   */
+  public static void chain(long nanos) {
+
+    FWRequestTiming t = current.get();
+    if (t != null) {
+      t.chainNanos = nanos;
+    }
+  }
+
+  /**
+   * 計測を終了し、処理時間の内訳を出力します。
+   */
+  public static void end(int status, boolean committed) {
+
+    FWRequestTiming t = current.get();
+    if (t == null) {
+      return;
+    }
+    current.remove();
+    logger.respRecord(t.toJson(status, committed));
+  }
+
+  private String toJson(int status, boolean committed) {
+
+    StringBuilder sb = new StringBuilder(256);
+    sb.append('{');
+    string(sb, "requestId", requestId).append(',');
+    string(sb, "method", method).append(',');
+    string(sb, "uri", uri).append(',');
+    sb.append("\"status\":").append(status).append(',');
+    sb.append("\"committed\":").append(committed).append(',');
+    sb.append("\"totalMs\":").append(ms(System.nanoTime() - startTime)).append(',');
+    sb.append("\"authMs\":").append(ms(authNanos)).append(',');
+    if (chainNanos >= 0L) {
+      sb.append("\"chainMs\":").append(ms(chainNanos)).append(',');
+    }
+    sb.append("\"connection\":{\"count\":").append(connectionCount).append(",\"ms\":")
+        .append(ms(connectionNanos)).append("},");
+    sb.append("\"sql\":{\"count\":").append(sqlCount).append(",\"ms\":").append(ms(sqlNanos))
+        .append("},");
+    sb.append("\"tx\":[");
+    for (int i = 0; i < transactions.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append('{');
+      string(sb, "signature", transactions.get(i)).append(',');
+      sb.append("\"ms\":").append(ms(transactionNanos.get(i))).append('}');
+    }
+    sb.append(']');
+    if (transactionOverflow > 0) {
+      sb.append(",\"txOverflow\":").append(transactionOverflow);
+    }
+    return sb.append('}').toString();
+  }
+
+  private static double ms(long nanos) {
+
+    return Math.round(nanos / 1000d) / 1000d;
+  }
+
+  private static StringBuilder string(StringBuilder sb, String name, String value) {
+
+    sb.append('"').append(name).append("\":");
+    if (value == null) {
+      return sb.append("null");
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"');
+  }
+}
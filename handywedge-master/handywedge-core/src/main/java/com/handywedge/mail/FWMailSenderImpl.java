@@ -37,7 +37,7 @@ public class FWMailSenderImpl implements FWMailSender {
   @Override
   public void send(String hostName, int port, FWMailMessage message) throws FWMailSendException {
 
-    long startTime = logger.perfStart("send");
+    long startTime = logger.perfStartNanos("send");
     try {
       Properties prop = new Properties();
       // SMTPサーバを設定
@@ -153,7 +153,7 @@ public class FWMailSenderImpl implements FWMailSender {
     } catch (MessagingException | UnsupportedEncodingException e) {
       throw new FWMailSendException(FWConstantCode.MAIL_SEND_FAIL, e);
     }
-    logger.perfEnd("send", startTime);
+    logger.perfEndNanos("send", startTime);
   }
 
   /**
@@ -26,7 +26,7 @@ public class FWMailTransportImpl implements FWMailTransport {
   @Override
   public void send(FWMailMessage message) throws FWMailException {
 
-    long startTime = logger.perfStart("send");
+    long startTime = logger.perfStartNanos("send");
     logger.debug(message.toString());
 
     String hostName = config.get("fw.mail.host");
@@ -67,6 +67,6 @@ public class FWMailTransportImpl implements FWMailTransport {
         data.close();
       }
     }
-    logger.perfEnd("send", startTime);
+    logger.perfEndNanos("send", startTime);
   }
 }
@@ -38,7 +38,7 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public void register(FWNotice notice) {
-    long startTime = logger.perfStart("register");
+    long startTime = logger.perfStartNanos("register");
     logger.debug("register notice={}", notice);
     String sql = "INSERT INTO fw_notice (id, notice) VALUES (?, ?)";
     FWConnection con = cm.getConnection();
@@ -50,13 +50,13 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
-    logger.perfEnd("register", startTime);
+    logger.perfEndNanos("register", startTime);
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public FWNotice get(int id) {
-    long startTime = logger.perfStart("get");
+    long startTime = logger.perfStartNanos("get");
     logger.debug("get id={}", id);
     String sql = "SELECT * FROM fw_notice WHERE id = ?";
     FWNotice result = null;
@@ -77,14 +77,14 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
     logger.debug("get return notice={}", result);
-    logger.perfEnd("get", startTime);
+    logger.perfEndNanos("get", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public List<FWNotice> list() {
-    long startTime = logger.perfStart("list");
+    long startTime = logger.perfStartNanos("list");
     String sql = "SELECT * FROM fw_notice ORDER BY update_date DESC";
     List<FWNotice> results = new ArrayList<>();
     FWConnection con = cm.getConnection();
@@ -103,14 +103,14 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
     logger.debug("list return list_size={}", results.size());
-    logger.perfEnd("list", startTime);
+    logger.perfEndNanos("list", startTime);
     return results;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public int update(FWNotice notice) {
-    long startTime = logger.perfStart("update");
+    long startTime = logger.perfStartNanos("update");
     logger.debug("update notice={}", notice);
     String sql = "UPDATE fw_notice SET notice = ?, update_date = ? WHERE id = ?";
     FWConnection con = cm.getConnection();
@@ -125,14 +125,14 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
     logger.debug("update return={}", result);
-    logger.perfEnd("update", startTime);
+    logger.perfEndNanos("update", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public int delete(int id) {
-    long startTime = logger.perfStart("delete");
+    long startTime = logger.perfStartNanos("delete");
     logger.debug("delete id={}", id);
     String sql = "DELETE FROM fw_notice WHERE id = ?";
     FWConnection con = cm.getConnection();
@@ -145,7 +145,7 @@ public class FWNoticeManagerImpl implements FWNoticeManager {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
     logger.debug("delete return={}", result);
-    logger.perfEnd("delete", startTime);
+    logger.perfEndNanos("delete", startTime);
     return result;
   }
 }
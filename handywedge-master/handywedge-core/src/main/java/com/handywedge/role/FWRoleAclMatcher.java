@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.role;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+// ロールACLのURLパターンをロール毎に1つの正規表現（選択）にまとめて保持する
+// 後方参照を含むパターンはグループ番号がずれるため、そのロールのみ個別に判定する
+// 構築後は参照のみ。再構築時はマップごと差し替える
+@ApplicationScoped
+public class FWRoleAclMatcher {
+
+  private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+  private volatile Map<String, RoleMatcher> matchers = Collections.emptyMap();
+
+  /**
+   * ACLを元に判定用のマッチャーを構築して差し替えます。
+   */
+  public void compile(List<FWRoleAcl> acl) {
+
+    Map<String, List<FWRoleAcl>> grouping = new LinkedHashMap<>();
+    for (FWRoleAcl roleAcl : acl) {
+      grouping.computeIfAbsent(roleAcl.getRole(), k -> new ArrayList<>()).add(roleAcl);
+    }
+    Map<String, RoleMatcher> compiled = new HashMap<>();
+    grouping.forEach((role, list) -> compiled.put(role, RoleMatcher.of(list)));
+    matchers = Collections.unmodifiableMap(compiled);
+  }
+
+  /**
+   * ACLが1件も設定されていない場合はtrueを返します。
+   */
+  public boolean isEmpty() {
+    return matchers.isEmpty();
+  }
+
+  /**
+   * ロールにURLへのアクセスが許可されている場合はtrueを返します。
+   */
+  public boolean matches(String role, String url) {
+
+    RoleMatcher matcher = matchers.get(role);
+    return matcher != null && matcher.matches(url);
+  }
+
+  private static final class RoleMatcher {
+
+    // 結合できた場合はcombined、できない場合はpatternsで判定する
+    private final Pattern combined;
+    private final Pattern[] patterns;
+
+    private RoleMatcher(Pattern combined, Pattern[] patterns) {
+      this.combined = combined;
+      this.patterns = patterns;
+    }
+
+    private static RoleMatcher of(List<FWRoleAcl> acl) {
+
+      if (acl.size() == 1) {
+        return new RoleMatcher(acl.get(0).getPattern(), null);
+      }
+      StringBuilder sb = new StringBuilder();
+      boolean combinable = true;
+      for (FWRoleAcl roleAcl : acl) {
+        String p = roleAcl.getUrlPattern();
+        if (BACK_REFERENCE.matcher(p).find()) {
+          combinable = false;
+          break;
+        }
+        if (sb.length() > 0) {
+          sb.append('|');
+        }
+        sb.append("(?:").append(p).append(')');
+      }
+      if (combinable) {
+        try {
+          return new RoleMatcher(Pattern.compile(sb.toString()), null);
+        } catch (PatternSyntaxException e) {
+          // 名前付きグループの重複等。個別に判定する
+        }
+      }
+      Pattern[] list = new Pattern[acl.size()];
+      for (int i = 0; i < list.length; i++) {
+        list[i] = acl.get(i).getPattern();
+      }
+      return new RoleMatcher(null, list);
+    }
+
+    private boolean matches(String url) {
+
+      if (combined != null) {
+        return combined.matcher(url).matches();
+      }
+      for (Pattern p : patterns) {
+        if (p.matcher(url).matches()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -10,7 +10,6 @@ package com.handywedge.role;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -33,6 +32,12 @@ public class FWRoleManagerImpl implements FWRoleManager {
   @Inject
   private FWRoleService service;
 
+  @Inject
+  private FWRoleAclMatcher aclMatcher;
+
+  @Inject
+  private FWRoleMasterCache masterCache;
+
   @Override
   public List<String> getActions(String currentStatus) {
     return getActions(currentStatus, ctx.getUser().getRole());
@@ -41,14 +46,15 @@ public class FWRoleManagerImpl implements FWRoleManager {
   @Override
   public List<String> getActions(String currentStatus, String role) {
 
-    long startTime = logger.perfStart("getActions");
+    long startTime = logger.perfStartNanos("getActions");
     try {
       List<String> actions = new ArrayList<>();
       if (role != null) {
-        actions = service.getActions(currentStatus, role);
+        actions = masterCache.isEnable() ? masterCache.getActions(currentStatus, role)
+            : service.getActions(currentStatus, role);
       }
       logger.debug("role={}, actions={}", role, actions);
-      logger.perfEnd("getActions", startTime);
+      logger.perfEndNanos("getActions", startTime);
       return actions;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
@@ -63,18 +69,19 @@ public class FWRoleManagerImpl implements FWRoleManager {
   @Override
   public FWAction checkAction(String preStatus, String postStatus, String role)
       throws FWRoleException {
-    long startTime = logger.perfStart("checkAction");
+    long startTime = logger.perfStartNanos("checkAction");
     try {
       FWAction actionCode = null;
       if (role != null) {
-        actionCode = service.getActionCode(preStatus, postStatus, role);
+        actionCode = masterCache.isEnable() ? masterCache.getAction(preStatus, postStatus, role)
+            : service.getActionCode(preStatus, postStatus, role);
       }
       if (actionCode == null) {
         logger.info("unauthorized. role={}, preStatus={}, postStatus={}", role, preStatus,
             postStatus);
         throw new FWRoleException(FWConstantCode.ROLE_UNAUTHORIZED);
       }
-      logger.perfEnd("checkAction", startTime);
+      logger.perfEndNanos("checkAction", startTime);
       return actionCode;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
@@ -83,33 +90,56 @@ public class FWRoleManagerImpl implements FWRoleManager {
 
   @Override
   public boolean isAccessAllow() {
-    long startTime = logger.perfStart("isAccessAllow");
+    long startTime = logger.perfStartNanos("isAccessAllow");
 
-    List<FWRoleAcl> acl = ctx.getRoleAcl();
-    if (acl.isEmpty()) { // ロール設定が無い場合はロールACL機能は未使用とみなす
+    if (aclMatcher.isEmpty()) { // ロール設定が無い場合はロールACL機能は未使用とみなす
       return true;
     }
-    if (FWStringUtil.isEmpty(ctx.getUser().getRole())) { // ロールACLの設定はあるがユーザーにロール設定がされていない場合はfalseとする
+    String role = ctx.getUser().getRole();
+    if (FWStringUtil.isEmpty(role)) { // ロールACLの設定はあるがユーザーにロール設定がされていない場合はfalseとする
       return false;
     }
-    // ロール別にグルーピングしてログインユーザのロールのURLを抽出
-    List<FWRoleAcl> grouping =
-        acl.stream().collect(Collectors.groupingBy(FWRoleAcl::getRole))
-            .get(ctx.getUser().getRole());
-    if (grouping == null) {
-      return false;
-    }
-    boolean result = false;
-    for (FWRoleAcl roleAcl : grouping) {
-      result = roleAcl.getPattern().matcher(ctx.getRequestUrl()).matches();
-      if (result) {
-        logger.debug("URLパターンマッチ role={}, pattern={}, url={}", roleAcl.getRole(),
-            roleAcl.getUrlPattern(), ctx.getRequestUrl());
-        break;
-      }
+    // ログインユーザのロールのURLパターン（構築済み）と照合
+    boolean result = aclMatcher.matches(role, ctx.getRequestUrl());
+    if (result) {
+      logger.debug("URLパターンマッチ role={}, url={}", role, ctx.getRequestUrl());
     }
 
-    logger.perfEnd("isAccessAllow", startTime);
+    logger.perfEndNanos("isAccessAllow", startTime);
     return result;
   }
+
+  @Override
+  public String getRoleName(String role) {
+
+    if (masterCache.isEnable()) {
+      return masterCache.getRoleName(role);
+    }
+    try {
+      return service.getRoleName(role);
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
+  @Override
+  public String getStatusName(String status) {
+
+    if (masterCache.isEnable()) {
+      return masterCache.getStatusName(status);
+    }
+    try {
+      return service.getStatusName(status);
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
+  @Override
+  public long reload() {
+
+    long version = masterCache.reload();
+    logger.info("マスタデータを再読み込みしました。version={}", version);
+    return version;
+  }
 }
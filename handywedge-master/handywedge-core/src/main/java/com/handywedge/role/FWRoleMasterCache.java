@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.role;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.db.FWInternalConnectionManager;
+import com.handywedge.log.FWLogger;
+import com.handywedge.util.FWInternalUtil;
+
+// ロールACL・ロール・ステータス・アクション（旧式ワークフロー）のマスタデータキャッシュ
+// fw.master.cache=trueの場合のみロール・ステータス・アクションを保持する。ロールACLは常に再読み込みの対象
+// fw.master.cache.reload.interval.secによる変更確認はキャッシュの有効・無効に関係なく行う（ロールACLの反映のため）
+// 参照はスナップショット（不変オブジェクト）から行い、再読み込み時に丸ごと差し替える
+@ApplicationScoped
+public class FWRoleMasterCache {
+
+  private static final String[] TABLES =
+      {"fw_role_acl", "fw_role_master", "fw_status_master", "fw_action", "fw_role_action"};
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWInternalUtil util;
+
+  private boolean enable;
+
+  // nullの場合は従来通りSQLで取得する
+  private volatile Snapshot snapshot;
+
+  private volatile long version;
+
+  private String signature;
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * 設定が有効な場合にマスタデータを読み込み、再読み込み間隔が設定されている場合は変更確認を開始します。<br>
+   * アプリケーションの起動時に呼び出されます。
+   */
+  public void init() {
+
+    long interval = 0L;
+    try {
+      String value = util.getResource(FWMessageResources.MASTER_CACHE_RELOAD_INTERVAL_SEC);
+      interval = Long.parseLong(FWStringUtil.replaceNullString(value, "0"));
+    } catch (Exception e) {
+      logger.warn("マスタデータの再読み込み間隔の設定が不正です。自動再読み込みは行いません。");
+    }
+    synchronized (this) {
+      enable = Boolean.parseBoolean(util.getResource(FWMessageResources.MASTER_CACHE));
+      if (enable) {
+        loadMaster();
+        version++;
+      } else {
+        logger.info("マスタデータキャッシュは無効です。");
+        if (interval > 0L) {
+          loadSignature(); // ロールACLの変更確認の基準
+        }
+      }
+    }
+    if (interval > 0L) {
+      synchronized (this) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread t = new Thread(r, "fw-master-reloader");
+          t.setDaemon(true);
+          return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.SECONDS);
+      }
+      logger.info("マスタデータの変更を{}秒間隔で確認します。", interval);
+    }
+  }
+
+  public boolean isEnable() {
+
+    return snapshot != null;
+  }
+
+  /**
+   * 読み込み済みのマスタデータのバージョンを返します。再読み込みの度に加算されます。
+   */
+  public long getVersion() {
+
+    return version;
+  }
+
+  /**
+   * ロールACL、及び、キャッシュが有効な場合はマスタデータを再読み込みします。<br>
+   * 読み込みに失敗した場合は現在の内容を維持します。
+   *
+   * @return 再読み込み後のバージョン
+   */
+  public synchronized long reload() {
+
+    long start = logger.perfStartNanos("reload");
+    util.cacheRoleAcl();
+    if (enable) {
+      loadMaster();
+    } else {
+      loadSignature();
+    }
+    version++;
+    logger.perfEndNanos("reload", start);
+    return version;
+  }
+
+  // ロールACLは起動時にFWInternalUtil#cacheRoleAclで読み込み済み
+  private void loadMaster() {
+
+    try (Connection con = FWInternalConnectionManager.getConnection()) {
+      String sig = loadSignature(con);
+      Snapshot s = loadSnapshot(con);
+      snapshot = s;
+      signature = sig;
+      logger.info("マスタデータを読み込みました。role={}, status={}, action={}", s.roleNames.size(),
+          s.statusNames.size(), s.actionCount);
+    } catch (SQLException | RuntimeException e) {
+      logger.error("マスタデータの読み込みでエラーが発生しました。", e);
+    }
+  }
+
+  private void loadSignature() {
+
+    try (Connection con = FWInternalConnectionManager.getConnection()) {
+      signature = loadSignature(con);
+    } catch (SQLException | RuntimeException e) {
+      logger.error("マスタデータの変更確認でエラーが発生しました。", e);
+    }
+  }
+
+  // 件数・最終更新日時が変化した場合のみ再読み込みする
+  private void poll() {
+
+    try {
+      String sig;
+      try (Connection con = FWInternalConnectionManager.getConnection()) {
+        sig = loadSignature(con);
+      }
+      synchronized (this) {
+        if (sig.equals(signature)) {
+          return;
+        }
+      }
+      logger.info("マスタデータの変更を検知しました。");
+      reload();
+    } catch (SQLException | RuntimeException e) {
+      logger.error("マスタデータの変更確認でエラーが発生しました。", e);
+    }
+  }
+
+  public void shutdown() {
+
+    ScheduledExecutorService s;
+    synchronized (this) {
+      s = scheduler;
+      scheduler = null;
+    }
+    if (s != null) {
+      s.shutdownNow();
+    }
+  }
+
+  String getRoleName(String role) {
+
+    return snapshot.roleNames.get(role);
+  }
+
+  String getStatusName(String status) {
+
+    return snapshot.statusNames.get(status);
+  }
+
+  /**
+   * 指定ステータスで指定ロールが遷移可能なステータスを返します。
+   */
+  List<String> getActions(String currentStatus, String role) {
+
+    List<String> actions = new ArrayList<>();
+    for (ActionRow row : snapshot.byPreStatus.getOrDefault(currentStatus,
+        Collections.emptyList())) {
+      if (row.roles.contains(role)) {
+        actions.add(row.postStatus);
+      }
+    }
+    return actions;
+  }
+
+  /**
+   * 指定ロールが実行可能なステータス遷移のアクションを返します。該当しない場合はnullを返します。
+   */
+  FWAction getAction(String preStatus, String postStatus, String role) {
+
+    for (ActionRow row : snapshot.byPreStatus.getOrDefault(preStatus, Collections.emptyList())) {
+      if (row.postStatus.equals(postStatus) && row.roles.contains(role)) {
+        return new FWAction(row.actionCode, row.action, preStatus, postStatus);
+      }
+    }
+    return null;
+  }
+
+  private String loadSignature(Connection con) throws SQLException {
+
+    StringBuilder sig = new StringBuilder();
+    try (Statement st = con.createStatement()) {
+      for (String table : TABLES) {
+        try (ResultSet rs =
+            st.executeQuery("SELECT COUNT(*) AS cnt, MAX(update_date) AS max_date FROM " + table)) {
+          rs.next();
+          sig.append(rs.getLong("cnt")).append(':').append(rs.getTimestamp("max_date")).append(',');
+        }
+      }
+    }
+    return sig.toString();
+  }
+
+  private Snapshot loadSnapshot(Connection con) throws SQLException {
+
+    Map<String, String> roleNames = new HashMap<>();
+    Map<String, String> statusNames = new HashMap<>();
+    Map<String, Set<String>> actionRoles = new HashMap<>();
+    List<String[]> actions = new ArrayList<>();
+    try (Statement st = con.createStatement()) {
+      try (ResultSet rs = st.executeQuery("SELECT role, role_name FROM fw_role_master")) {
+        while (rs.next()) {
+          roleNames.put(rs.getString("role"), rs.getString("role_name"));
+        }
+      }
+      try (ResultSet rs = st.executeQuery("SELECT status, status_name FROM fw_status_master")) {
+        while (rs.next()) {
+          statusNames.put(rs.getString("status"), rs.getString("status_name"));
+        }
+      }
+      try (ResultSet rs = st.executeQuery("SELECT role, action_code FROM fw_role_action")) {
+        while (rs.next()) {
+          actionRoles.computeIfAbsent(rs.getString("action_code"), k -> new HashSet<>())
+              .add(rs.getString("role"));
+        }
+      }
+      try (ResultSet rs =
+          st.executeQuery("SELECT action_code, action, pre_status, post_status FROM fw_action")) {
+        while (rs.next()) {
+          actions.add(new String[] {rs.getString("action_code"), rs.getString("action"),
+              rs.getString("pre_status"), rs.getString("post_status")});
+        }
+      }
+    }
+    Map<String, List<ActionRow>> byPreStatus = new HashMap<>();
+    for (String[] a : actions) {
+      Set<String> roles = actionRoles.get(a[0]);
+      if (roles == null) { // 実行可能なロールが無いアクションは保持しない
+        continue;
+      }
+      byPreStatus.computeIfAbsent(a[2], k -> new ArrayList<>())
+          .add(new ActionRow(a[0], a[1], a[3], roles));
+    }
+    for (List<ActionRow> list : byPreStatus.values()) {
+      list.sort(Comparator.comparing(r -> r.actionCode));
+    }
+    return new Snapshot(roleNames, statusNames, byPreStatus, actions.size());
+  }
+
+  private static final class Snapshot {
+
+    private final Map<String, String> roleNames;
+    private final Map<String, String> statusNames;
+    private final Map<String, List<ActionRow>> byPreStatus;
+    private final int actionCount;
+
+    private Snapshot(Map<String, String> roleNames, Map<String, String> statusNames,
+        Map<String, List<ActionRow>> byPreStatus, int actionCount) {
+      this.roleNames = roleNames;
+      this.statusNames = statusNames;
+      this.byPreStatus = byPreStatus;
+      this.actionCount = actionCount;
+    }
+  }
+
+  private static final class ActionRow {
+
+    private final String actionCode;
+    private final String action;
+    private final String postStatus;
+    private final Set<String> roles;
+
+    private ActionRow(String actionCode, String action, String postStatus, Set<String> roles) {
+      this.actionCode = actionCode;
+      this.action = action;
+      this.postStatus = postStatus;
+      this.roles = roles;
+    }
+  }
+}
@@ -47,6 +47,32 @@ public class FWRoleService {
     }
   }
 
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  public String getRoleName(String role) throws SQLException {
+
+    FWConnection con = cm.getConnection();
+    try (FWPreparedStatement ps =
+        con.prepareStatement("SELECT role_name FROM fw_role_master WHERE role = ?")) {
+      ps.setString(1, role);
+      try (FWResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getString("role_name") : null;
+      }
+    }
+  }
+
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  public String getStatusName(String status) throws SQLException {
+
+    FWConnection con = cm.getConnection();
+    try (FWPreparedStatement ps =
+        con.prepareStatement("SELECT status_name FROM fw_status_master WHERE status = ?")) {
+      ps.setString(1, status);
+      try (FWResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getString("status_name") : null;
+      }
+    }
+  }
+
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWAction getActionCode(String preStatus, String postStatus, String role)
       throws SQLException {
@@ -23,8 +23,10 @@ import com.handywedge.db.FWConnectionManager;
 import com.handywedge.db.FWPreparedStatement;
 import com.handywedge.db.FWResultSet;
 import com.handywedge.db.FWTransactional;
+import com.handywedge.interceptor.FWTransactionManager;
 import com.handywedge.log.FWLogger;
 import com.handywedge.user.FWUserData;
+import com.handywedge.user.auth.FWAPITokenCache;
 import com.handywedge.user.auth.FWLoginManager;
 import com.handywedge.util.FWInternalUtil;
 
@@ -46,6 +48,12 @@ public class FWUserService {
   @Inject
   private FWLoginManager loginMgr;
 
+  @Inject
+  private FWAPITokenCache tokenCache;
+
+  @Inject
+  private FWTransactionManager txMgr;
+
   private final String PRE_USER_REGISTER_TOKEN_EXPIRE = "fw.pre.user.register.token.expire";
   private final String USER_RESET_TOKEN_EXPIRE = "fw.user.register.reset.passwd.token.expire";
   private final String DEFAULT_EXPIRE = "4320"; // デフォルト72時間
@@ -58,7 +66,7 @@ public class FWUserService {
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int insert(String id, String passwd, Integer preRegister, String mailAddress)
       throws SQLException {
-    long startTime = logger.perfStart("insert");
+    long startTime = logger.perfStartNanos("insert");
 
     int result = 0;
     FWConnection con = cm.getConnection();
@@ -147,13 +155,13 @@ public class FWUserService {
       logger.debug("preToken insert. token={}", token);
     }
 
-    logger.perfEnd("insert", startTime);
+    logger.perfEndNanos("insert", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int update(FWUserData user) throws SQLException {
-    long startTime = logger.perfStart("update");
+    long startTime = logger.perfStartNanos("update");
 
     int result = 0;
     FWConnection con = cm.getConnection();
@@ -171,13 +179,17 @@ public class FWUserService {
       result = ps.executeUpdate();
       logger.debug("update. result={}", result);
     }
-    logger.perfEnd("update", startTime);
+    // キャッシュ済の名前・ロールをコミット後に破棄
+    String id = user.getId();
+    txMgr.afterCompletion(() -> tokenCache.invalidateUser(id));
+    logger.perfEndNanos("update", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int delete(String id) throws SQLException {
-    long startTime = logger.perfStart("delete");
+    long startTime = logger.perfStartNanos("delete");
+    txMgr.afterCompletion(() -> tokenCache.invalidateUser(id)); // コミット後に破棄
 
     int result = 0;
     FWConnection con = cm.getConnection();
@@ -208,13 +220,13 @@ public class FWUserService {
       result = ps.executeUpdate();
       logger.debug("delete fw_user. result={}", result);
     }
-    logger.perfEnd("delete", startTime);
+    logger.perfEndNanos("delete", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int changePassword(String id, String passwd) throws SQLException {
-    long startTime = logger.perfStart("changePassword");
+    long startTime = logger.perfStartNanos("changePassword");
     FWConnection con = cm.getConnection();
     int passwdResult = 0;
     try (FWPreparedStatement selectPs =
@@ -236,13 +248,13 @@ public class FWUserService {
         }
       }
     }
-    logger.perfEnd("changePassword", startTime);
+    logger.perfEndNanos("changePassword", startTime);
     return passwdResult;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWUserManagerPreRegisterStatus validPreToken(String preToken) throws SQLException {
-    long startTime = logger.perfStart("validPreToken");
+    long startTime = logger.perfStartNanos("validPreToken");
     FWUserManagerPreRegisterStatus result;
     String sql = "SELECT * FROM fw_user_management WHERE pre_token = ?";
     FWConnection con = cm.getConnection();
@@ -270,7 +282,7 @@ public class FWUserService {
       }
     }
     logger.debug("status={}", result);
-    logger.perfEnd("validPreToken", startTime);
+    logger.perfEndNanos("validPreToken", startTime);
     return result;
   }
 
@@ -291,7 +303,7 @@ public class FWUserService {
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int actualRegister(String preToken) throws SQLException {
     int result = 0;
-    long startTime = logger.perfStart("actualRegister");
+    long startTime = logger.perfStartNanos("actualRegister");
     String sql =
         "UPDATE fw_user_management SET pre_register = ?, update_date = ? WHERE pre_token = ?";
     FWConnection con = cm.getConnection();
@@ -313,7 +325,7 @@ public class FWUserService {
       }
     }
 
-    logger.perfEnd("actualRegister", startTime);
+    logger.perfEndNanos("actualRegister", startTime);
     return result;
   }
 
@@ -351,7 +363,7 @@ public class FWUserService {
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWUserManagerPreRegisterStatus validResetToken(String token) throws SQLException {
-    long startTime = logger.perfStart("validResetToken");
+    long startTime = logger.perfStartNanos("validResetToken");
     FWConnection con = cm.getConnection();
     FWUserManagerPreRegisterStatus result = null;
     try (FWPreparedStatement ps =
@@ -373,13 +385,13 @@ public class FWUserService {
         }
       }
     }
-    logger.perfEnd("validResetToken", startTime);
+    logger.perfEndNanos("validResetToken", startTime);
     return result;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public String initResetPassword(String id) throws SQLException {
-    long startTime = logger.perfStart("initResetPassword");
+    long startTime = logger.perfStartNanos("initResetPassword");
     FWConnection con = cm.getConnection();
     // まず削除しておく
     try (FWPreparedStatement ps =
@@ -394,13 +406,13 @@ public class FWUserService {
       ps.setString(2, token);
       ps.executeUpdate();
     }
-    logger.perfEnd("initResetPassword", startTime);
+    logger.perfEndNanos("initResetPassword", startTime);
     return token;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int resetPassword(String id, String password) throws SQLException {
-    long startTime = logger.perfStart("resetPassword");
+    long startTime = logger.perfStartNanos("resetPassword");
     int r = changePassword(id, password);
     if (r != 0) {
       FWConnection con = cm.getConnection();
@@ -410,7 +422,7 @@ public class FWUserService {
         ps.executeUpdate();
       }
     }
-    logger.perfEnd("resetPassword", startTime);
+    logger.perfEndNanos("resetPassword", startTime);
     return r;
   }
 
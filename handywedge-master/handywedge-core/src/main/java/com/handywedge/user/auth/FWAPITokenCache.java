@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.user.auth;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.log.FWLogger;
+
+// APIトークン認証結果のキャッシュ
+// fw.token.cache.ttl.secが1以上の場合のみ有効。ノード間の無効化は行わないのでTTLで鮮度を担保する
+// 全リクエストが参照するのでロックは取らない
+// 上限を超えた場合は期限切れ、登録の古い順に1割程度まとめて削除する
+// キャッシュヒット時もfw.db.connection.lazy=trueでなければコネクションは取得される
+// ヒット時は最終ログイン日時をDBに書き込まない
+// fw.login.time.flush.interval.secで遅延書き込みしない場合、最終ログイン日時はTTL単位の精度になる
+@ApplicationScoped
+public class FWAPITokenCache {
+
+  private static final String DEFAULT_MAX_SIZE = "10000";
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources msgResources;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  // 無効化の度に加算する。DBから読み込む前の値をputに渡し、読み込み中に無効化された結果はキャッシュしない
+  private final AtomicLong generation = new AtomicLong();
+
+  // 削除は1スレッドのみで行う
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private volatile boolean initConfig;
+  private long ttlMillis;
+  private int maxSize;
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private void init() {
+
+    if (initConfig) {
+      return;
+    }
+    synchronized (this) {
+      if (initConfig) {
+        return;
+      }
+      try {
+        ttlMillis = Long.parseLong(FWStringUtil
+            .replaceNullString(msgResources.get(FWMessageResources.TOKEN_CACHE_TTL_SEC), "0"))
+            * 1000;
+        maxSize = Integer.parseInt(FWStringUtil.replaceNullString(
+            msgResources.get(FWMessageResources.TOKEN_CACHE_SIZE), DEFAULT_MAX_SIZE));
+      } catch (Exception e) {
+        logger.warn("APIトークンキャッシュの設定が不正です。キャッシュは無効化されます。");
+        ttlMillis = 0L;
+      }
+      logger.info("APIトークンキャッシュ ttl={}ms, size={}", ttlMillis, maxSize);
+      initConfig = true;
+    }
+  }
+
+  public boolean isEnable() {
+
+    init();
+    return ttlMillis > 0L && maxSize > 0;
+  }
+
+  public Entry get(String token) {
+
+    if (!isEnable()) {
+      return null;
+    }
+    Entry entry = entries.get(token);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.isExpired(System.currentTimeMillis(), ttlMillis)) {
+      entries.remove(token, entry);
+      return null;
+    }
+    return entry;
+  }
+
+  // DBから読み込む前に取得し、putに渡す
+  public long generation() {
+
+    return generation.get();
+  }
+
+  public void put(String token, Entry entry, long readGeneration) {
+
+    if (!isEnable() || generation.get() != readGeneration) {
+      return;
+    }
+    entries.put(token, entry);
+    // 登録と無効化が競合した場合に備えて登録後に再確認する
+    if (generation.get() != readGeneration) {
+      entries.remove(token, entry);
+      return;
+    }
+    if (entries.size() > maxSize) {
+      evict();
+    }
+  }
+
+  public void invalidate(String token) {
+
+    generation.incrementAndGet();
+    entries.remove(token);
+  }
+
+  public void invalidateUser(String userId) {
+
+    generation.incrementAndGet();
+    entries.values().removeIf(e -> e.getUserId().equals(userId));
+  }
+
+  public void clear() {
+
+    generation.incrementAndGet();
+    entries.clear();
+  }
+
+  // 期限切れを削除し、それでも上限の9割を超える場合は登録の古い順に削除する
+  private void evict() {
+
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = System.currentTimeMillis();
+      entries.values().removeIf(e -> e.isExpired(now, ttlMillis));
+      int over = entries.size() - maxSize * 9 / 10;
+      if (over <= 0) {
+        return;
+      }
+      List<Map.Entry<String, Entry>> oldest = new ArrayList<>(entries.entrySet());
+      oldest.sort(Comparator.comparingLong(e -> e.getValue().cachedAt));
+      for (int i = 0; i < over && i < oldest.size(); i++) {
+        Map.Entry<String, Entry> e = oldest.get(i);
+        entries.remove(e.getKey(), e.getValue());
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  public static final class Entry {
+
+    private final String userId;
+    private final String userName;
+    private final String role;
+    private final String roleName;
+    private final Locale locale;
+    private final Timestamp createDate;
+    private final long cachedAt;
+
+    public Entry(String userId, String userName, String role, String roleName, Locale locale,
+        Timestamp createDate) {
+      this.userId = userId;
+      this.userName = userName;
+      this.role = role;
+      this.roleName = roleName;
+      this.locale = locale;
+      this.createDate = createDate;
+      this.cachedAt = System.currentTimeMillis();
+    }
+
+    boolean isExpired(long now, long ttlMillis) {
+      return cachedAt + ttlMillis < now;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public String getUserName() {
+      return userName;
+    }
+
+    public String getRole() {
+      return role;
+    }
+
+    public String getRoleName() {
+      return roleName;
+    }
+
+    public Locale getLocale() {
+      return locale;
+    }
+
+    public Timestamp getCreateDate() {
+      return createDate;
+    }
+  }
+}
@@ -24,9 +24,9 @@ import com.handywedge.db.FWConnectionManager;
 import com.handywedge.db.FWPreparedStatement;
 import com.handywedge.db.FWResultSet;
 import com.handywedge.db.FWTransactional;
+import com.handywedge.interceptor.FWTransactionManager;
 import com.handywedge.log.FWLogger;
 import com.handywedge.user.FWFullUser;
-import com.handywedge.user.FWInnerUserService;
 import com.handywedge.user.FWUser;
 import com.handywedge.user.FWUserImpl;
 import com.handywedge.util.FWInternalUtil;
@@ -57,20 +57,29 @@ public class FWLoginManagerImpl implements FWLoginManager {
   private FWFullRESTContext restCtx;
 
   @Inject
-  private FWInnerUserService userService;
+  private FWRequestContext reqCtx;
 
   @Inject
-  private FWRequestContext reqCtx;
+  private FWAPITokenCache tokenCache;
+
+  @Inject
+  private FWTransactionManager txMgr;
+
+  @Inject
+  private FWLoginTimeWriter loginTimeWriter;
+
+  private volatile boolean initTokenTimeout;
+  private long tokenTimeout;
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public boolean login(String id, String password) {
 
-    long startTime = logger.perfStart("login");
+    long startTime = logger.perfStartNanos("login");
 
     if (!FWStringUtil.isEmpty(user.getId())) {
       logger.info("login ok.(exist session)");
-      logger.perfEnd("login", startTime);
+      logger.perfEndNanos("login", startTime);
       return true;
     }
 
@@ -78,11 +87,11 @@ public class FWLoginManagerImpl implements FWLoginManager {
       // セッションオブジェクトにユーザー情報をセット
       login(id);
       logger.info("login ok.");
-      logger.perfEnd("login", startTime);
+      logger.perfEndNanos("login", startTime);
       return true;
     } else {
       logger.info("login failed.");
-      logger.perfEnd("login", startTime);
+      logger.perfEndNanos("login", startTime);
       return false;
     }
   }
@@ -126,7 +135,7 @@ public class FWLoginManagerImpl implements FWLoginManager {
   @Override
   public boolean checkPassword(String id, String password) {
 
-    long startTime = logger.perfStart("checkPassword");
+    long startTime = logger.perfStartNanos("checkPassword");
     String dbPass = null;
     FWConnection con = cm.getConnection();
 
@@ -150,17 +159,17 @@ public class FWLoginManagerImpl implements FWLoginManager {
     }
     if (dbPass == null) {
       logger.info("user id not found.");
-      logger.perfEnd("checkPassword", startTime);
+      logger.perfEndNanos("checkPassword", startTime);
       return false;
     }
 
     if (FWPasswordUtil.checkPassword(password, dbPass)) {
       logger.info("check ok.");
-      logger.perfEnd("checkPassword", startTime);
+      logger.perfEndNanos("checkPassword", startTime);
       return true;
     } else {
       logger.info("check failed. no match password.");
-      logger.perfEnd("checkPassword", startTime);
+      logger.perfEndNanos("checkPassword", startTime);
       return false;
     }
   }
@@ -175,7 +184,7 @@ public class FWLoginManagerImpl implements FWLoginManager {
   @Override
   public String publishAPIToken(String id, boolean multiple) {
 
-    long startTime = logger.perfStart("publishAPIToken");
+    long startTime = logger.perfStartNanos("publishAPIToken");
     logger.debug("generate token start.");
     String token = FWInternalUtil.generateToken();
     logger.debug("generate token end.");
@@ -184,6 +193,7 @@ public class FWLoginManagerImpl implements FWLoginManager {
     try {
       if (!multiple) {
         logger.debug("token delete.");
+        txMgr.afterCompletion(() -> tokenCache.invalidateUser(id)); // コミット後に破棄
         try (FWPreparedStatement ps =
             con.prepareStatement("DELETE FROM fw_api_token WHERE id = ?")) {
           ps.setString(1, id);
@@ -202,7 +212,7 @@ public class FWLoginManagerImpl implements FWLoginManager {
     }
     logger.debug("publishAPIToken end. token={}", token);
     updateLoginTime(id);
-    logger.perfEnd("publishAPIToken", startTime);
+    logger.perfEndNanos("publishAPIToken", startTime);
     return token;
   }
 
@@ -210,7 +220,8 @@ public class FWLoginManagerImpl implements FWLoginManager {
   @Override
   public void removeAPIToken(String token) {
 
-    long startTime = logger.perfStart("removeAPIToken");
+    long startTime = logger.perfStartNanos("removeAPIToken");
+    txMgr.afterCompletion(() -> tokenCache.invalidate(token)); // コミット後に破棄
     FWConnection con = cm.getConnection();
     try (
         FWPreparedStatement ps = con.prepareStatement("DELETE FROM fw_api_token WHERE token = ?")) {
@@ -219,13 +230,14 @@ public class FWLoginManagerImpl implements FWLoginManager {
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
-    logger.perfEnd("removeAPIToken", startTime);
+    logger.perfEndNanos("removeAPIToken", startTime);
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public void removeAllAPIToken(String id) {
-    long startTime = logger.perfStart("removeAllAPIToken");
+    long startTime = logger.perfStartNanos("removeAllAPIToken");
+    txMgr.afterCompletion(() -> tokenCache.invalidateUser(id)); // コミット後に破棄
     FWConnection con = cm.getConnection();
     try (FWPreparedStatement ps = con.prepareStatement("DELETE FROM fw_api_token WHERE id = ?")) {
       ps.setString(1, id);
@@ -233,98 +245,207 @@ public class FWLoginManagerImpl implements FWLoginManager {
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
-    logger.perfEnd("removeAllAPIToken", startTime);
+    logger.perfEndNanos("removeAllAPIToken", startTime);
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public boolean authAPIToken(String token) {
-    long startTime = logger.perfStart("authAPIToken");
+    long startTime = logger.perfStartNanos("authAPIToken");
 
-    FWUser u = null;
-    try {
-      u = userService.getUserByToken(token);
-    } catch (SQLException e) {
-      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    FWAPITokenCache.Entry entry = tokenCache.get(token);
+    boolean cacheHit = entry != null;
+    if (!cacheHit) {
+      entry = findToken(token);
     }
-    if (u == null) {
+    if (entry == null) {
       logger.info("invalid_token. token={}", token);
-      logger.perfEnd("authAPIToken", startTime);
+      logger.perfEndNanos("authAPIToken", startTime);
       return false;
     }
 
-    // やや冗長的ではあるが修正を最小限に
-    FWUser innerUser = getUser(u.getId());
-    restCtx.setUserId(innerUser.getId());
-    restCtx.setUserName(innerUser.getName());
-    restCtx.setUserRole(innerUser.getRole());
-    if (FWStringUtil.isEmpty(innerUser.getRoleName())) { // ロールマスタに名称が無い場合はコードを名称としてセット
-      restCtx.setUserRoleName(restCtx.getUserRole());
-    } else {
-      restCtx.setUserRoleName(innerUser.getRoleName());
-    }
-    if (innerUser.getLocale() != null) {
-      restCtx.setUserLocale(innerUser.getLocale());
-    }
-    restCtx.setToken(token);
-    updateLoginTime(u.getId());
+    setRESTContext(token, entry);
+    updateLoginTime(entry.getUserId(), cacheHit);
     logger.debug("authAPIToken ok.");
-    logger.perfEnd("authAPIToken", startTime);
+    logger.perfEndNanos("authAPIToken", startTime);
     return true;
   }
 
   @FWTransactional(dataSourceName = "jdbc/fw")
   @Override
   public boolean expirationAPIToken(String token) {
-    long startTime = logger.perfStart("expirationAPIToken");
-
-    long timeout = 0L;
-    try {
-      timeout = Long.parseLong(msgResources.get(FWMessageResources.TOKEN_TIMEOUT_SEC)) * 1000;
-    } catch (Exception e) {
-    }
+    long startTime = logger.perfStartNanos("expirationAPIToken");
 
+    long timeout = getTokenTimeout();
     logger.debug("##### expirationAPIToken token:" + token);
     logger.debug("##### expirationAPIToken timeout:" + timeout);
 
     if (timeout > 0L) { // Token Timeout 有効
-      FWConnection con = cm.getConnection();
-      try (FWPreparedStatement ps =
-          con.prepareStatement("SELECT create_date FROM fw_api_token WHERE token = ?")) {
-        ps.setString(1, token);
-        try (FWResultSet rs = ps.executeQuery()) {
-          if (rs.next()) {
-            Timestamp ts = rs.getTimestamp("create_date");
-            logger.debug("##### expirationAPIToken timeout:" + ts);
-            logger.debug("##### expirationAPIToken check:"
-                + (ts.getTime() + timeout < System.currentTimeMillis()));
-            if (ts.getTime() + timeout < System.currentTimeMillis()) {
-              logger.info("expired_token. token={}", token);
-              logger.perfEnd("authAPIToken", startTime);
-              return false;
-            }
-          } else {
-            logger.info("invalid_token. token={}", token);
-            logger.perfEnd("authAPIToken", startTime);
-            return false;
-
-          }
+      FWAPITokenCache.Entry entry = tokenCache.get(token);
+      Timestamp ts = null;
+      if (entry != null && entry.getCreateDate() != null) {
+        ts = entry.getCreateDate();
+      } else {
+        ts = getTokenCreateDate(token);
+      }
+      if (ts != null) {
+        logger.debug("##### expirationAPIToken timeout:" + ts);
+        logger.debug("##### expirationAPIToken check:"
+            + (ts.getTime() + timeout < System.currentTimeMillis()));
+        if (isExpired(ts, timeout)) {
+          tokenCache.invalidate(token);
+          logger.info("expired_token. token={}", token);
+          logger.perfEndNanos("authAPIToken", startTime);
+          return false;
         }
-      } catch (SQLException e) {
-        throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+      } else {
+        logger.info("invalid_token. token={}", token);
+        logger.perfEndNanos("authAPIToken", startTime);
+        return false;
       }
     }
 
     logger.debug("expirationAPIToken ok.");
-    logger.perfEnd("expirationAPIToken", startTime);
+    logger.perfEndNanos("expirationAPIToken", startTime);
     return true;
   }
 
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  @Override
+  public FWAPITokenResult resolveAPIToken(String token) {
+    long startTime = logger.perfStartNanos("resolveAPIToken");
+
+    FWAPITokenCache.Entry entry = tokenCache.get(token);
+    boolean cacheHit = entry != null;
+    if (!cacheHit) {
+      entry = findToken(token);
+    }
+    if (entry == null) {
+      logger.info("invalid_token. token={}", token);
+      logger.perfEndNanos("resolveAPIToken", startTime);
+      return new FWAPITokenResult(FWAPITokenResult.Status.INVALID, null);
+    }
+    // authAPITokenと同様に有効期限切れでもユーザー情報を設定する（トークン任意のAPIで参照されるため）
+    setRESTContext(token, entry);
+    updateLoginTime(entry.getUserId(), cacheHit);
+    long timeout = getTokenTimeout();
+    if (timeout > 0L && isExpired(entry.getCreateDate(), timeout)) { // Token Timeout 有効
+      tokenCache.invalidate(token);
+      logger.info("expired_token. token={}", token);
+      logger.perfEndNanos("resolveAPIToken", startTime);
+      return new FWAPITokenResult(FWAPITokenResult.Status.EXPIRED, entry.getUserId());
+    }
+    logger.debug("resolveAPIToken ok.");
+    logger.perfEndNanos("resolveAPIToken", startTime);
+    return new FWAPITokenResult(FWAPITokenResult.Status.VALID, entry.getUserId());
+  }
+
+  // トークン・ユーザー・ロール・発行日時を1回の問い合わせで取得し、キャッシュに登録する
+  private FWAPITokenCache.Entry findToken(String token) {
+
+    FWAPITokenCache.Entry entry;
+    long generation = tokenCache.generation(); // 読み込み中に無効化された場合はキャッシュしない
+    StringBuilder sql = new StringBuilder();
+    sql.append("SELECT fat.create_date, fu.id, fu.name, fu.role, fu.language, fu.country,");
+    sql.append(" frm.role_name FROM fw_api_token fat");
+    sql.append(" INNER JOIN fw_user fu ON fu.id = fat.id");
+    sql.append(" LEFT JOIN fw_role_master frm ON frm.role = fu.role");
+    sql.append(" WHERE fat.token = ?");
+    FWConnection con = cm.getConnection();
+    try (FWPreparedStatement ps = con.prepareStatement(sql.toString())) {
+      ps.setString(1, token);
+      try (FWResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) {
+          return null;
+        }
+        Locale locale = null;
+        String lang = rs.getString("language");
+        if (!FWStringUtil.isEmpty(lang)) {
+          String country = rs.getString("country");
+          locale = new Locale.Builder().setLanguage(lang).setRegion(country).build();
+        }
+        entry = new FWAPITokenCache.Entry(rs.getString("id"), rs.getString("name"),
+            rs.getString("role"), rs.getString("role_name"), locale,
+            rs.getTimestamp("create_date"));
+      }
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+    tokenCache.put(token, entry, generation);
+    return entry;
+  }
+
+  private void setRESTContext(String token, FWAPITokenCache.Entry entry) {
+
+    restCtx.setUserId(entry.getUserId());
+    restCtx.setUserName(entry.getUserName());
+    restCtx.setUserRole(entry.getRole());
+    if (FWStringUtil.isEmpty(entry.getRoleName())) { // ロールマスタに名称が無い場合はコードを名称としてセット
+      restCtx.setUserRoleName(restCtx.getUserRole());
+    } else {
+      restCtx.setUserRoleName(entry.getRoleName());
+    }
+    if (entry.getLocale() != null) {
+      restCtx.setUserLocale(entry.getLocale());
+    }
+    restCtx.setToken(token);
+  }
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private long getTokenTimeout() {
+
+    if (!initTokenTimeout) {
+      long timeout = 0L;
+      try {
+        timeout = Long.parseLong(msgResources.get(FWMessageResources.TOKEN_TIMEOUT_SEC)) * 1000;
+      } catch (Exception e) {
+      }
+      tokenTimeout = timeout;
+      initTokenTimeout = true;
+    }
+    return tokenTimeout;
+  }
+
+  private boolean isExpired(Timestamp createDate, long timeout) {
+    return createDate != null && createDate.getTime() + timeout < System.currentTimeMillis();
+  }
+
+
+  private Timestamp getTokenCreateDate(String token) {
+    FWConnection con = cm.getConnection();
+    try (FWPreparedStatement ps =
+        con.prepareStatement("SELECT create_date FROM fw_api_token WHERE token = ?")) {
+      ps.setString(1, token);
+      try (FWResultSet rs = ps.executeQuery()) {
+        if (rs.next()) {
+          return rs.getTimestamp("create_date");
+        } else {
+          return null;
+        }
+      }
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
+  // キャッシュヒット時はDBに書き込まない。遅延書き込みが有効な場合は記録する
+  private void updateLoginTime(String id, boolean cacheHit) {
+
+    if (cacheHit && !loginTimeWriter.isEnable()) {
+      user.setLastLoginTime(new Timestamp(System.currentTimeMillis()));
+      return;
+    }
+    updateLoginTime(id);
+  }
 
   private void updateLoginTime(String id) {
     // 最終ログイン時間更新
     Timestamp t = new Timestamp(System.currentTimeMillis());
     user.setLastLoginTime(t);
+    if (loginTimeWriter.isEnable()) {
+      loginTimeWriter.record(id, t);
+      return;
+    }
     FWConnection con = cm.getConnection();
     try (FWPreparedStatement ps = con.prepareStatement(
         "UPDATE fw_user SET last_login_date = ?, update_date = ? WHERE id = ?");) {
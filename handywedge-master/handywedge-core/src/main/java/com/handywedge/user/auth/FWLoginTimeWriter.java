@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.user.auth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.db.FWDataSourceRegistry;
+import com.handywedge.log.FWLogger;
+
+// 最終ログイン時間の遅延書き込み
+// ユーザー毎に最新の時刻のみ保持し、一定間隔でまとめてバッチ更新する
+// fw.login.time.flush.interval.secが0（デフォルト）の場合は使用しない（呼び出し元で同期更新）
+@ApplicationScoped
+public class FWLoginTimeWriter {
+
+  private static final String DATA_SOURCE_NAME = "jdbc/fw";
+  private static final String UPDATE_SQL =
+      "UPDATE fw_user SET last_login_date = ?, update_date = ? WHERE id = ?";
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources msgResources;
+
+  @Inject
+  private FWDataSourceRegistry dataSourceRegistry;
+
+  private final Map<String, Timestamp> pending = new ConcurrentHashMap<>();
+
+  private volatile boolean initConfig;
+  private long intervalSec;
+  private ScheduledExecutorService scheduler;
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private void init() {
+
+    if (initConfig) {
+      return;
+    }
+    synchronized (this) {
+      if (initConfig) {
+        return;
+      }
+      try {
+        intervalSec = Long.parseLong(FWStringUtil.replaceNullString(
+            msgResources.get(FWMessageResources.LOGIN_TIME_FLUSH_INTERVAL_SEC), "0"));
+      } catch (Exception e) {
+        logger.warn("最終ログイン時間の書き込み間隔が不正です。同期更新を行います。");
+        intervalSec = 0L;
+      }
+      if (intervalSec > 0L) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread t = new Thread(r, "fw-login-time-writer");
+          t.setDaemon(true);
+          return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalSec, intervalSec,
+            TimeUnit.SECONDS);
+        logger.info("最終ログイン時間の遅延書き込みを開始します。interval={}s", intervalSec);
+      }
+      initConfig = true;
+    }
+  }
+
+  public boolean isEnable() {
+
+    init();
+    return intervalSec > 0L;
+  }
+
+  public void record(String id, Timestamp time) {
+
+    pending.merge(id, time, (oldTime, newTime) -> oldTime.after(newTime) ? oldTime : newTime);
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      // 次回のフラッシュでリトライするためスケジューラは止めない
+      logger.error("最終ログイン時間の書き込みに失敗しました。", e);
+    }
+  }
+
+  /**
+   * 保留中の最終ログイン時間をまとめて更新します。
+   */
+  public synchronized void flush() throws SQLException {
+
+    if (pending.isEmpty()) {
+      return;
+    }
+    Map<String, Timestamp> batch = new HashMap<>();
+    for (String id : pending.keySet()) {
+      Timestamp t = pending.remove(id);
+      if (t != null) {
+        batch.put(id, t);
+      }
+    }
+    long start = System.nanoTime();
+    boolean success = false;
+    try (Connection con = dataSourceRegistry.getConnection(DATA_SOURCE_NAME)) {
+      con.setAutoCommit(false);
+      try (PreparedStatement ps = con.prepareStatement(UPDATE_SQL)) {
+        for (Map.Entry<String, Timestamp> e : batch.entrySet()) {
+          ps.setTimestamp(1, e.getValue());
+          ps.setTimestamp(2, e.getValue());
+          ps.setString(3, e.getKey());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+        con.commit();
+        success = true;
+      } finally {
+        if (!success) {
+          con.rollback();
+        }
+      }
+    } finally {
+      if (!success) {
+        // 書き込めなかった時刻を戻す（より新しい時刻が記録済ならそちらを優先）
+        batch.forEach(this::record);
+      }
+    }
+    logger.debug("flush 'last_login_date'. count={}, elapsed={}ms", batch.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * スケジューラを停止し、保留中の最終ログイン時間を書き込みます。
+   */
+  public void shutdown() {
+
+    ScheduledExecutorService s;
+    synchronized (this) {
+      s = scheduler;
+      scheduler = null;
+    }
+    if (s == null) {
+      return;
+    }
+    s.shutdown();
+    try {
+      s.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushQuietly();
+  }
+}
@@ -13,6 +13,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.ResourceBundle;
@@ -27,6 +28,7 @@ import com.handywedge.context.FWApplicationContext;
 import com.handywedge.db.FWInternalConnectionManager;
 import com.handywedge.log.FWLogger;
 import com.handywedge.role.FWRoleAcl;
+import com.handywedge.role.FWRoleAclMatcher;
 
 @ApplicationScoped
 public class FWInternalUtil {
@@ -37,6 +39,9 @@ public class FWInternalUtil {
   @Inject
   private FWLogger logger;
 
+  @Inject
+  private FWRoleAclMatcher aclMatcher;
+
   private static final String NO_USE_ROLE_ACL = "fw.no.use.role.acl";
   private static final String NO_USE_USER_MANAGEMENT = "fw.no.use.user.management";
 
@@ -44,8 +49,8 @@ public class FWInternalUtil {
   public void cacheRoleAcl() {
     String use = getResource(NO_USE_ROLE_ACL);
     if (FWStringUtil.isEmpty(use) || Boolean.parseBoolean(use)) {
-      long start = logger.perfStart("cacheRoleAcl");
-      List<FWRoleAcl> acl = appCtx.getRoleAcl();
+      long start = logger.perfStartNanos("cacheRoleAcl");
+      List<FWRoleAcl> acl = new ArrayList<>();
 
       // Requestスコープインスタンスが注入されていない段階なので例外的に生のConnectionを操作する。
       try (Connection con = FWInternalConnectionManager.getConnection();
@@ -54,12 +59,19 @@ public class FWInternalUtil {
         while (rs.next()) {
           acl.add(new FWRoleAcl(rs.getString("role"), rs.getString("url_pattern")));
         }
+        // 再読み込みの場合も読み込みが完了してから差し替える
+        aclMatcher.compile(acl);
+        List<FWRoleAcl> cache = appCtx.getRoleAcl();
+        synchronized (cache) {
+          cache.clear();
+          cache.addAll(acl);
+        }
         logger.info("role acl設定数={}", acl.size());
       } catch (SQLException e) {
         logger.debug(e.toString());
         logger.warn("ロールACLテーブルのアクセスでエラーが発生しました。ロールACL機能は無効化されます。");
       }
-      logger.perfEnd("cacheRoleAcl", start);
+      logger.perfEndNanos("cacheRoleAcl", start);
     } else {
       logger.info("ロールACL機能は無効です。");
     }
@@ -71,7 +83,7 @@ public class FWInternalUtil {
   public void checkUserManagement() {
     String use = getResource(NO_USE_USER_MANAGEMENT);
     if (FWStringUtil.isEmpty(use) || Boolean.parseBoolean(use)) {
-      long start = logger.perfStart("checkUserManagement");
+      long start = logger.perfStartNanos("checkUserManagement");
       try (Connection con = FWInternalConnectionManager.getConnection();
           Statement st = con.createStatement();
           ResultSet rs = st.executeQuery("SELECT count(*) FROM fw_user_management");) {
@@ -82,7 +94,7 @@ public class FWInternalUtil {
         logger.warn("ユーザー管理テーブルが存在しません。");
         appCtx.setUserManagementEnable(false);
       }
-      logger.perfEnd("checkUserManagement", start);
+      logger.perfEndNanos("checkUserManagement", start);
     } else {
       logger.info("ユーザー管理テーブルは無効です。");
       appCtx.setUserManagementEnable(false);
@@ -144,7 +156,10 @@ public class FWInternalUtil {
     return result.toString();
   }
 
-  private String getResource(String key) {
+  /**
+   * セッションスコープにアクセスせずに設定値を取得します。起動時など、リクエスト外で使用します。
+   */
+  public String getResource(String key) {
     ResourceBundle rb = ResourceBundle.getBundle(appCtx.getApplicationId());
     if (!rb.containsKey(key)) {
       return null;
@@ -26,6 +26,8 @@ import com.handywedge.config.FWMessageResources;
 import com.handywedge.context.FWFullRESTContext;
 import com.handywedge.log.FWLogger;
 import com.handywedge.log.FWMDC;
+import com.handywedge.log.FWRequestTiming;
+import com.handywedge.user.auth.FWAPITokenResult;
 import com.handywedge.user.auth.FWLoginManager;
 import com.handywedge.util.FWThreadLocal;
 
@@ -48,13 +50,15 @@ public class FWRESTFilter implements Filter {
 
   private String[] oicLoginSourceIp = {};
 
+  private volatile FWRouteTable routeTable;
+
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {}
 
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
-    long startTime = logger.perfStart("doFilter");
+    long startTime = logger.perfStartNanos("doFilter");
     HttpServletRequest httpServletRequest = (HttpServletRequest) request;
     HttpServletResponse httpServletResponse = (HttpServletResponse) response;
     httpServletRequest.getSession(true);// REST内ではセッションへのアクセスがなくinvalidateが出来ないので念のため作って最後に廃棄
@@ -70,14 +74,16 @@ public class FWRESTFilter implements Filter {
         } catch (Exception e) {
         }
       }
+      if (routeTable == null) {
+        routeTable = createRouteTable(restCtx.getContextPath());
+      }
 
-      if (httpServletRequest.getMethod().equalsIgnoreCase("POST")
-          && (requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/token/pub")
-              || requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/token/pub/"))) {
-        logger.info("API Token publish request.");
-      } else if (httpServletRequest.getMethod().equalsIgnoreCase("POST")
-          && (requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/oic/login")
-              || requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/oic/login/"))) {
+      FWRouteTable.Route route = routeTable.match(httpServletRequest.getMethod(), requestUrl,
+          FWRouteTable.Route.TOKEN_REQUIRED);
+      if (route == FWRouteTable.Route.AUTH_EXEMPT) {
+        logger.info("Authorization exempt request. method={}, uri={}",
+            httpServletRequest.getMethod(), requestUrl);
+      } else if (route == FWRouteTable.Route.OIC_RESTRICTED) {
         logger.info("OIC API Token publish request.");
         // IP制限
         String ip = httpServletRequest.getRemoteAddr();
@@ -93,23 +99,8 @@ public class FWRESTFilter implements Filter {
           httpServletResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
           return;
         }
-      } else if (httpServletRequest.getMethod().equalsIgnoreCase("POST")
-          && (requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user")
-              || requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user/"))) {
-        logger.info("User register request.");
-      } else if (httpServletRequest.getMethod().equalsIgnoreCase("GET")
-          && (requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user/actual"))) {
-        logger.info("User actual register request.");
-      } else if (httpServletRequest.getMethod().equalsIgnoreCase("POST")
-          && (requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user/password/reset"))
-          || requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user/password/reset/")) {
-        logger.info("password reset request.(POST)");
-      } else if (httpServletRequest.getMethod().equalsIgnoreCase("GET")
-          && requestUrl.equals(restCtx.getContextPath() + "/fw/rest/api/user/password/reset")) {
-        logger.info("password reset request.(GET)");
       } else {
-        boolean noTokenRequest =
-            requestUrl.startsWith(restCtx.getContextPath() + "/fw/rest/app/no_token/");
+        boolean noTokenRequest = route == FWRouteTable.Route.TOKEN_OPTIONAL;
         if (noTokenRequest) {
           logger.info("No Token API request.");
         }
@@ -128,12 +119,18 @@ public class FWRESTFilter implements Filter {
         }
         if (!FWStringUtil.isEmpty(tokenHeader)) { // トークン認証
           String token = FWStringUtil.splitBearerToken(tokenHeader);
-          if ((FWStringUtil.isEmpty(token) || !loginMgr.authAPIToken(token)) && !noTokenRequest) {
+          long authStart = System.nanoTime();
+          FWAPITokenResult result = FWStringUtil.isEmpty(token) ? null
+              : loginMgr.resolveAPIToken(token); // 認証と有効期限チェックを1回の問い合わせで行う
+          FWRequestTiming.auth(System.nanoTime() - authStart);
+          if ((result == null || result.getStatus() == FWAPITokenResult.Status.INVALID)
+              && !noTokenRequest) {
             logger.warn("APIToken Authorization false. Authorization={}", tokenHeader);
             httpServletResponse.setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
             httpServletResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return;
-          } else if (!loginMgr.expirationAPIToken(token) && !noTokenRequest) {
+          } else if (result != null && result.getStatus() == FWAPITokenResult.Status.EXPIRED
+              && !noTokenRequest) {
             logger.warn("APIToken Authorization false. Authorization={}", tokenHeader);
             httpServletResponse.setHeader("WWW-Authenticate", "Bearer error=\"expired_token\"");
             httpServletResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -150,11 +147,32 @@ public class FWRESTFilter implements Filter {
       FWMDC.put(FWMDC.USER_ID, restCtx.getUserId());
       chain.doFilter(httpServletRequest, httpServletResponse);
     } finally {
-      logger.perfEnd("doFilter", startTime);
+      logger.perfEndNanos("doFilter", startTime);
       FWThreadLocal.put(FWThreadLocal.LOGIN, false); // RESTは常にセッション破棄する
     }
   }
 
+  // 認証区分のルーティングテーブル。コンテキストパスはアプリケーションで不変なので初回に1度だけ作成する
+  static FWRouteTable createRouteTable(String contextPath) {
+
+    String api = contextPath + "/fw/rest/api";
+    return new FWRouteTable()
+        .addExact("POST", api + "/token/pub", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("POST", api + "/token/pub/", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("POST", api + "/oic/login", FWRouteTable.Route.OIC_RESTRICTED)
+        .addExact("POST", api + "/oic/login/", FWRouteTable.Route.OIC_RESTRICTED)
+        .addExact("POST", api + "/user", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("POST", api + "/user/", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("GET", api + "/user/actual", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("POST", api + "/user/password/reset", FWRouteTable.Route.AUTH_EXEMPT)
+        .addExact("GET", api + "/user/password/reset", FWRouteTable.Route.AUTH_EXEMPT)
+        // 従来の判定条件に合わせて末尾スラッシュ付きはメソッドを問わない
+        .addExact(FWRouteTable.ANY_METHOD, api + "/user/password/reset/",
+            FWRouteTable.Route.AUTH_EXEMPT)
+        .addPrefix(FWRouteTable.ANY_METHOD, contextPath + "/fw/rest/app/no_token/",
+            FWRouteTable.Route.TOKEN_OPTIONAL);
+  }
+
   @Override
   public void destroy() {}
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.web.filter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// リクエストの認証区分を判定するルーティングテーブル
+// 完全一致はハッシュマップ、前方一致はパスセグメント単位のトライ木でHTTPメソッド毎に保持する
+// 構築後は参照のみなので同期は行わない（構築したテーブルはvolatileなフィールドで公開すること）
+final class FWRouteTable {
+
+  /**
+   * 任意のHTTPメソッドに一致することを示します。
+   */
+  static final String ANY_METHOD = "*";
+
+  enum Route {
+    // 認証不要
+    AUTH_EXEMPT,
+    // OICログイン（接続元IP制限）
+    OIC_RESTRICTED,
+    // トークンがあれば認証する
+    TOKEN_OPTIONAL,
+    // トークン認証必須
+    TOKEN_REQUIRED;
+  }
+
+  private final Map<String, Map<String, Route>> exact = new HashMap<>();
+  private final Map<String, Node> prefix = new HashMap<>();
+
+  FWRouteTable addExact(String method, String path, Route route) {
+
+    if (path != null) {
+      exact.computeIfAbsent(method.toUpperCase(), k -> new HashMap<>()).put(path, route);
+    }
+    return this;
+  }
+
+  FWRouteTable addPrefix(String method, String path, Route route) {
+
+    if (path == null) {
+      return this;
+    }
+    Node node = prefix.computeIfAbsent(method.toUpperCase(), k -> new Node());
+    int start = 0;
+    int end;
+    while ((end = path.indexOf('/', start)) >= 0) {
+      node = node.child(path.substring(start, end));
+      start = end + 1;
+    }
+    if (start < path.length()) {
+      node = node.child(path.substring(start));
+    }
+    node.route = route;
+    return this;
+  }
+
+  /**
+   * パスに一致する区分を返します。完全一致を優先し、次に最長の前方一致を返します。
+   */
+  Route match(String method, String path, Route defaultRoute) {
+
+    String m = method.toUpperCase();
+    Route route = matchExact(m, path);
+    if (route == null) {
+      route = matchExact(ANY_METHOD, path);
+    }
+    if (route == null) {
+      route = matchPrefix(m, path);
+    }
+    if (route == null) {
+      route = matchPrefix(ANY_METHOD, path);
+    }
+    return route != null ? route : defaultRoute;
+  }
+
+  private Route matchExact(String method, String path) {
+
+    Map<String, Route> routes = exact.get(method);
+    return routes != null ? routes.get(path) : null;
+  }
+
+  // 前方一致はセグメント境界（"/"）で区切られたパスのみ対象
+  private Route matchPrefix(String method, String path) {
+
+    Node node = prefix.get(method);
+    if (node == null) {
+      return null;
+    }
+    Route found = null;
+    int start = 0;
+    int end;
+    while ((end = path.indexOf('/', start)) >= 0) {
+      node = node.find(path, start, end);
+      if (node == null) {
+        return found;
+      }
+      if (node.route != null) {
+        found = node.route;
+      }
+      if (node.children.length == 0) {
+        return found;
+      }
+      start = end + 1;
+    }
+    return found;
+  }
+
+  // 子ノードは数件のため、リクエスト毎にセグメントを切り出さずに配列を線形に比較する
+  private static final class Node {
+
+    private String[] segments = new String[0];
+    private Node[] children = new Node[0];
+    private Route route;
+
+    private Node child(String segment) {
+      Node node = find(segment, 0, segment.length());
+      if (node == null) {
+        node = new Node();
+        int n = segments.length;
+        segments = Arrays.copyOf(segments, n + 1);
+        children = Arrays.copyOf(children, n + 1);
+        segments[n] = segment;
+        children[n] = node;
+      }
+      return node;
+    }
+
+    private Node find(String path, int start, int end) {
+      int length = end - start;
+      for (int i = 0; i < segments.length; i++) {
+        String segment = segments[i];
+        if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -20,9 +20,17 @@ import jakarta.servlet.annotation.WebListener;
 import com.handywedge.common.FWConstantCode;
 import com.handywedge.common.FWRuntimeException;
 import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
 import com.handywedge.context.FWApplicationContext;
+import com.handywedge.db.FWDataSourceRegistry;
+import com.handywedge.db.FWSqlMetrics;
+import com.handywedge.log.FWAsyncLogSink;
 import com.handywedge.log.FWLogger;
+import com.handywedge.log.FWPerfMetrics;
+import com.handywedge.role.FWRoleMasterCache;
+import com.handywedge.user.auth.FWLoginTimeWriter;
 import com.handywedge.util.FWInternalUtil;
+import com.handywedge.workflow.FWWFRouteGraph;
 
 @WebListener
 public class FWServletContextListener implements ServletContextListener {
@@ -36,12 +44,71 @@ public class FWServletContextListener implements ServletContextListener {
   @Inject
   private FWApplicationContext appCtx;
 
+  @Inject
+  private FWDataSourceRegistry dataSourceRegistry;
+
+  @Inject
+  private FWLoginTimeWriter loginTimeWriter;
+
+  @Inject
+  private FWWFRouteGraph wfRouteGraph;
+
+  @Inject
+  private FWRoleMasterCache roleMasterCache;
+
   @Override
   public void contextInitialized(ServletContextEvent sce) {
     logger.info("アプリケーションのデプロイ処理を行います。");
     init(sce);
+    initPerfMetrics();
     util.cacheRoleAcl();
     util.checkUserManagement();
+    wfRouteGraph.init();
+    roleMasterCache.init();
+  }
+
+  private void initPerfMetrics() {
+    long interval = 60L;
+    try {
+      String value = util.getResource(FWMessageResources.PERF_SUMMARY_INTERVAL_SEC);
+      if (!FWStringUtil.isEmpty(value)) {
+        interval = Long.parseLong(value);
+      }
+    } catch (NumberFormatException e) {
+      logger.warn("処理時間のサマリー出力間隔の設定が不正です。デフォルト値を使用します。");
+    }
+    FWPerfMetrics.configure(util.getResource(FWMessageResources.PERF_MODE), interval);
+
+    long slowThreshold = 0L;
+    try {
+      String value = util.getResource(FWMessageResources.SQL_SLOW_THRESHOLD_MS);
+      if (!FWStringUtil.isEmpty(value)) {
+        slowThreshold = Long.parseLong(value);
+      }
+    } catch (NumberFormatException e) {
+      logger.warn("スロークエリの閾値の設定が不正です。スロークエリは出力しません。");
+    }
+    FWSqlMetrics.configure(Boolean.parseBoolean(util.getResource(FWMessageResources.SQL_METRICS)),
+        slowThreshold);
+
+    if (Boolean.parseBoolean(util.getResource(FWMessageResources.LOG_ASYNC))) {
+      int bufferSize = 8192;
+      int sampleRate = 10;
+      try {
+        String value = util.getResource(FWMessageResources.LOG_ASYNC_BUFFER_SIZE);
+        if (!FWStringUtil.isEmpty(value)) {
+          bufferSize = Integer.parseInt(value);
+        }
+        value = util.getResource(FWMessageResources.LOG_ASYNC_SAMPLE_RATE);
+        if (!FWStringUtil.isEmpty(value)) {
+          sampleRate = Integer.parseInt(value);
+        }
+      } catch (NumberFormatException e) {
+        logger.warn("ログの非同期出力の設定が不正です。デフォルト値を使用します。");
+      }
+      FWAsyncLogSink.configure(bufferSize, util.getResource(FWMessageResources.LOG_ASYNC_POLICY),
+          sampleRate);
+    }
   }
 
   private void init(ServletContextEvent sce) {
@@ -60,6 +127,13 @@ public class FWServletContextListener implements ServletContextListener {
 
   @Override
   public void contextDestroyed(ServletContextEvent sce) {
+    loginTimeWriter.shutdown();
+    wfRouteGraph.shutdown();
+    roleMasterCache.shutdown();
+    FWPerfMetrics.shutdown();
+    FWAsyncLogSink.shutdown();
+    dataSourceRegistry.getStatistics().forEach((name, stats) -> logger
+        .info("コネクション取得統計 dataSourceName={}, {}", name, stats));
     Collections.list(DriverManager.getDrivers()).forEach(driver -> {
       try {
         DriverManager.deregisterDriver(driver);
@@ -18,6 +18,7 @@ import com.handywedge.config.FWMessageResources;
 import com.handywedge.context.FWFullContext;
 import com.handywedge.log.FWLogger;
 import com.handywedge.log.FWMDC;
+import com.handywedge.log.FWRequestTiming;
 import com.handywedge.role.FWRoleManager;
 import com.handywedge.user.FWFullUser;
 import com.handywedge.util.FWThreadLocal;
@@ -49,9 +50,9 @@ public class FWSessionFilter implements Filter {
   @Inject
   private FWMessageResources messageResources;
 
-  private String[] ignoreAuthPath;
+  private volatile FWRouteTable routeTable;
 
-  private boolean initConfig;
+  private volatile Boolean requestTiming;
 
   @Override
   public void init(FilterConfig filterConfig) throws ServletException {}
@@ -66,18 +67,11 @@ public class FWSessionFilter implements Filter {
     HttpServletResponse httpServletResponse = (HttpServletResponse) response;
     context.setHttpServletRequest(httpServletRequest);
 
-    if (!initConfig) { // rbがセッションスコープにアクセスするのでinitではなくこのタイミングで実施
-      initConfig = true;
-      try {
-        String uri = messageResources.get(FWMessageResources.IGNORE_AUTH_URL);
-        if (!FWStringUtil.isEmpty(uri)) {
-          this.ignoreAuthPath = uri.split(",");
-        } else {
-          ignoreAuthPath = null;
-        }
-      } catch (Exception e) {
-        ignoreAuthPath = null;
-      }
+    if (routeTable == null) { // rbがセッションスコープにアクセスするのでinitではなくこのタイミングで実施
+      routeTable = createRouteTable();
+    }
+    if (requestTiming == null) {
+      requestTiming = Boolean.valueOf(messageResources.get(FWMessageResources.REQUEST_TIMING));
     }
 
     // @セキュリティ webサーバーやapサーバーで設定がありそうだがフィルターで念の為に設定
@@ -103,8 +97,12 @@ public class FWSessionFilter implements Filter {
         terminate(httpServletRequest);
       }
     }
+    if (requestTiming) {
+      FWRequestTiming.begin(context.getRequestId(), httpServletRequest.getMethod(), requestUrl);
+    }
     // REST APIはRESTフィルターで処理
     if (requestUrl.startsWith(context.getContextPath() + "/fw/rest/")) {
+      long chainStart = System.nanoTime();
       try {
         context.setRest(true);
         chain.doFilter(httpServletRequest, httpServletResponse);
@@ -114,6 +112,8 @@ public class FWSessionFilter implements Filter {
         terminateError(e);
         throw new ServletException(e);
       } finally {
+        FWRequestTiming.chain(System.nanoTime() - chainStart);
+        endTiming(httpServletResponse);
         logger.respLog(requestUrl, filterStart);
         terminate(httpServletRequest);
       }
@@ -122,7 +122,7 @@ public class FWSessionFilter implements Filter {
     try {
       FWFullUser user = (FWFullUser) context.getUser();
       String loginUrl = FWStringUtil.getLoginUrl();
-      if (!isExternalAuth(requestUrl) && FWStringUtil.isEmpty(user.getId())) {
+      if (!isExternalAuth(httpServletRequest) && FWStringUtil.isEmpty(user.getId())) {
         Cookie[] cookies = httpServletRequest.getCookies();
         if (cookies != null) {
           String cookieName = messageResources.get(FWMessageResources.SESSION_COOKIE_NAME);
@@ -142,18 +142,20 @@ public class FWSessionFilter implements Filter {
       }
       FWMDC.put(FWMDC.USER_ID, user.getId());
 
-      long start = logger.perfStart("doFilter");
+      long start = logger.perfStartNanos("doFilter");
       try {
-        if (!isExternalAuth(requestUrl) && !roleMgr.isAccessAllow()) {
+        if (!isExternalAuth(httpServletRequest) && !isAccessAllow()) {
           logger.warn("許可されていないURLへアクセスがありました。user_id={}, role={}, url={}",
               context.getUser().getId(), context.getUser().getRole(), context.getRequestUrl());
           httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "このURLへのアクセスは許可されていません。");
           return;
         }
+        long chainStart = System.nanoTime();
         try {
           chain.doFilter(httpServletRequest, httpServletResponse);
         } finally {
-          logger.perfEnd("doFilter", start);
+          FWRequestTiming.chain(System.nanoTime() - chainStart);
+          logger.perfEndNanos("doFilter", start);
         }
       } finally {
         context.setLastAccessTime(new Date());
@@ -166,33 +168,61 @@ public class FWSessionFilter implements Filter {
       terminateError(e);
       throw new ServletException(e);
     } finally {
+      endTiming(httpServletResponse);
       logger.respLog(requestUrl, filterStart);
       terminate(httpServletRequest);
     }
   }
 
-  private boolean isExternalAuth(String requestUrl) {
+  private boolean isAccessAllow() {
+
+    long start = System.nanoTime();
+    try {
+      return roleMgr.isAccessAllow();
+    } finally {
+      FWRequestTiming.auth(System.nanoTime() - start);
+    }
+  }
+
+  // レスポンスのコミットは強制せず、終了時点のステータスとコミット済みかどうかを記録する
+  private void endTiming(HttpServletResponse response) {
 
+    try {
+      FWRequestTiming.end(response.getStatus(), response.isCommitted());
+    } catch (RuntimeException e) {
+      logger.warn("リクエストの処理時間内訳の出力でエラーが発生しました。", e);
+    }
+  }
+
+  private boolean isExternalAuth(HttpServletRequest request) {
+
+    return routeTable.match(request.getMethod(), request.getRequestURI(),
+        FWRouteTable.Route.TOKEN_REQUIRED) == FWRouteTable.Route.AUTH_EXEMPT;
+  }
+
+  // 認証除外URLは設定値から初回に1度だけ作成する
+  private FWRouteTable createRouteTable() {
+
+    FWRouteTable table = new FWRouteTable();
     // #142575073 認証除外機能
-    if (ignoreAuthPath != null) {
-      for (String path : ignoreAuthPath) {
-        if (requestUrl.equals(FWStringUtil.concatContext(path))) {
-          return true;
+    try {
+      String uri = messageResources.get(FWMessageResources.IGNORE_AUTH_URL);
+      if (!FWStringUtil.isEmpty(uri)) {
+        for (String path : uri.split(",")) {
+          table.addExact(FWRouteTable.ANY_METHOD, FWStringUtil.concatContext(path),
+              FWRouteTable.Route.AUTH_EXEMPT);
         }
       }
+    } catch (Exception e) {
+      logger.warn("認証除外URLの設定を読み込めません。認証除外は無効になります。", e);
     }
-
-    String loginUrl = FWStringUtil.getLoginUrl();
-    String registerUrl = FWStringUtil.getRegisterUrl();
-    String preRegisterUrl = FWStringUtil.getPreRegisterUrl();
-    String actRegisterFailUrl = FWStringUtil.getActRegisterFailUrl();
-    String actRegisterSuccessUrl = FWStringUtil.getActRegisterSuccessUrl();
-    String resetPasswordFailUrl = FWStringUtil.getResetPasswdFailUrl();
-    String resetPasswordSuccessUrl = FWStringUtil.getResetPasswdSuccessUrl();
-    return (requestUrl.equals(loginUrl) || requestUrl.equals(registerUrl)
-        || requestUrl.equals(preRegisterUrl) || requestUrl.equals(actRegisterFailUrl)
-        || requestUrl.equals(actRegisterSuccessUrl) || requestUrl.equals(resetPasswordFailUrl)
-        || requestUrl.equals(resetPasswordSuccessUrl));
+    for (String url : new String[] {FWStringUtil.getLoginUrl(), FWStringUtil.getRegisterUrl(),
+        FWStringUtil.getPreRegisterUrl(), FWStringUtil.getActRegisterFailUrl(),
+        FWStringUtil.getActRegisterSuccessUrl(), FWStringUtil.getResetPasswdFailUrl(),
+        FWStringUtil.getResetPasswdSuccessUrl()}) {
+      table.addExact(FWRouteTable.ANY_METHOD, url, FWRouteTable.Route.AUTH_EXEMPT);
+    }
+    return table;
   }
 
   private void terminate(HttpServletRequest request) {
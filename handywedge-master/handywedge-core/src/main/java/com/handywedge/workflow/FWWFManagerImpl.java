@@ -10,7 +10,14 @@ package com.handywedge.workflow;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import jakarta.enterprise.context.ApplicationScoped;
@@ -36,35 +43,107 @@ public class FWWFManagerImpl implements FWWFManager {
   @Inject
   private FWWFService service;
 
+  @Inject
+  private FWWFRouteGraph routeGraph;
+
   @Override
   public FWWFStatus getStatus(String wfId) {
-    long startTime = logger.perfStart("getStatus");
+    long startTime = logger.perfStartNanos("getStatus");
     try {
       FWWFStatus status = null;
       if (wfId != null) {
         status = service.getStatus(wfId);
       }
       logger.debug("wfId={}", wfId);
-      logger.perfEnd("getStatus", startTime);
+      logger.perfEndNanos("getStatus", startTime);
       return status;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
   }
 
+  @Override
+  public Map<String, FWWFStatus> getStatuses(Collection<String> wfIds) {
+    long startTime = logger.perfStartNanos("getStatuses");
+    try {
+      Map<String, FWWFStatus> statuses = service.getStatuses(wfIds);
+      logger.debug("wfIds={}", wfIds.size());
+      logger.perfEndNanos("getStatuses", startTime);
+      return statuses;
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
+  @Override
+  public Map<String, List<FWWFAction>> getActionsBulk(Collection<String> wfIds, String role) {
+    long startTime = logger.perfStartNanos("getActionsBulk");
+    try {
+      // 現在ステータス一括取得
+      Map<String, FWWFStatus> statuses = service.getStatuses(wfIds);
+      // ステータス毎の実行可能なアクション一括取得
+      Map<String, List<FWWFAction>> actionsByStatus;
+      if (role != null && !statuses.isEmpty()) {
+        Set<String> statusCodes = new HashSet<>();
+        statuses.values().forEach(status -> statusCodes.add(status.getStatus()));
+        actionsByStatus = findActions(statusCodes, role);
+      } else {
+        actionsByStatus = new HashMap<>();
+      }
+      // 実行可能なアクションが存在するWFのみRollbackアクションを一括取得
+      Set<String> rollbackTargets = new HashSet<>();
+      statuses.forEach((wfId, status) -> {
+        if (actionsByStatus.containsKey(status.getStatus())) {
+          rollbackTargets.add(wfId);
+        }
+      });
+      Map<String, FWWFAction> rollbackActions = rollbackTargets.isEmpty() ? new HashMap<>()
+          : service.getRollbackActions(rollbackTargets);
+
+      Map<String, List<FWWFAction>> result = new LinkedHashMap<>();
+      for (String wfId : wfIds) {
+        if (wfId == null || result.containsKey(wfId)) {
+          continue;
+        }
+        List<FWWFAction> actions = new ArrayList<>();
+        FWWFStatus status = statuses.get(wfId);
+        if (status != null) {
+          for (FWWFAction action : actionsByStatus.getOrDefault(status.getStatus(),
+              Collections.emptyList())) {
+            actions.add(copyAction(action)); // 同一ステータスのWF間で共有しないよう複製
+          }
+        }
+        FWWFAction rollbackAction = rollbackActions.get(wfId);
+        if (!actions.isEmpty() && rollbackAction != null) {
+          rollbackAction.setActionCode(ROLLBACK_ACTION_CODE);
+          rollbackAction.setAction(ROLLBACK_ACTION_NAME);
+          rollbackAction.setRollbackAction(true);
+          actions.add(rollbackAction);
+        }
+        actions.forEach(action -> action.setWfId(wfId));
+        result.put(wfId, actions);
+      }
+      logger.debug("role={}, wfIds={}", role, result.size());
+      logger.perfEndNanos("getActionsBulk", startTime);
+      return result;
+    } catch (SQLException e) {
+      throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
+    }
+  }
+
   @Override
   public FWWFAction getAction(String actionCode) {
-    long startTime = logger.perfStart("getAction");
+    long startTime = logger.perfStartNanos("getAction");
     FWWFAction action = getAction(actionCode, ctx.getUser().getRole());
-    logger.perfEnd("getAction", startTime);
+    logger.perfEndNanos("getAction", startTime);
     return action;
   }
 
   @Override
   public FWWFAction getActionInfo(String actionCode, String role) {
-    long startTime = logger.perfStart("getActionInfo");
+    long startTime = logger.perfStartNanos("getActionInfo");
     FWWFAction action = getAction(actionCode, role);
-    logger.perfEnd("getActionInfo", startTime);
+    logger.perfEndNanos("getActionInfo", startTime);
     return action;
   }
 
@@ -73,7 +152,7 @@ public class FWWFManagerImpl implements FWWFManager {
       // 実行可能なアクション取得
       FWWFAction action = null;
       if (role != null) {
-        action = service.getAction(actionCode, role);
+        action = findAction(actionCode, role);
       }
       logger.debug("role={}, actionCode={}", role, actionCode);
       return action;
@@ -84,17 +163,17 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public List<FWWFAction> getActions(String wfId) {
-    long startTime = logger.perfStart("getActions");
+    long startTime = logger.perfStartNanos("getActions");
     List<FWWFAction> actions = getActions(wfId, ctx.getUser().getRole());
-    logger.perfEnd("getActions", startTime);
+    logger.perfEndNanos("getActions", startTime);
     return actions;
   }
 
   @Override
   public List<FWWFAction> getActionInfos(String wfId, String role) {
-    long startTime = logger.perfStart("getActionInfos");
+    long startTime = logger.perfStartNanos("getActionInfos");
     List<FWWFAction> actions = getActions(wfId, role);
-    logger.perfEnd("getActionInfos", startTime);
+    logger.perfEndNanos("getActionInfos", startTime);
     return actions;
   }
 
@@ -108,7 +187,7 @@ public class FWWFManagerImpl implements FWWFManager {
       // 実行可能なアクションリスト取得
       List<FWWFAction> actions = new ArrayList<>();
       if (status != null && role != null) {
-        actions = service.getActions(status.getStatus(), role);
+        actions = findActions(status.getStatus(), role);
       }
       // RollBackアクション生成
       if (wfId != null && !actions.isEmpty()) {
@@ -134,17 +213,17 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public List<FWWFAction> getGoActions(String wfId) {
-    long startTime = logger.perfStart("getGoActions");
+    long startTime = logger.perfStartNanos("getGoActions");
     List<FWWFAction> actions = getGoActions(wfId, ctx.getUser().getRole());
-    logger.perfEnd("getGoActions", startTime);
+    logger.perfEndNanos("getGoActions", startTime);
     return actions;
   }
 
   @Override
   public List<FWWFAction> getGoActionInfos(String wfId, String role) {
-    long startTime = logger.perfStart("getGoActionInfos");
+    long startTime = logger.perfStartNanos("getGoActionInfos");
     List<FWWFAction> actions = getGoActions(wfId, role);
-    logger.perfEnd("getGoActionInfos", startTime);
+    logger.perfEndNanos("getGoActionInfos", startTime);
     return actions;
   }
 
@@ -158,7 +237,7 @@ public class FWWFManagerImpl implements FWWFManager {
       // 実行可能なアクションリスト取得
       List<FWWFAction> actions = new ArrayList<>();
       if (status != null && role != null) {
-        actions = service.getActions(status.getStatus(), role);
+        actions = findActions(status.getStatus(), role);
       }
       // ワークフローIDのセット
       actions.forEach(action -> action.setWfId(wfId));
@@ -171,17 +250,17 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public FWWFAction getRollBackAction(String wfId) {
-    long startTime = logger.perfStart("getRollBackAction");
+    long startTime = logger.perfStartNanos("getRollBackAction");
     FWWFAction action = getRollBackAction(wfId, ctx.getUser().getRole());
-    logger.perfEnd("getRollBackAction", startTime);
+    logger.perfEndNanos("getRollBackAction", startTime);
     return action;
   }
 
   @Override
   public FWWFAction getRollBackActionInfo(String wfId, String role) {
-    long startTime = logger.perfStart("getRollBackActionInfo");
+    long startTime = logger.perfStartNanos("getRollBackActionInfo");
     FWWFAction action = getRollBackAction(wfId, ctx.getUser().getRole());
-    logger.perfEnd("getRollBackActionInfo", startTime);
+    logger.perfEndNanos("getRollBackActionInfo", startTime);
     return action;
   }
 
@@ -197,7 +276,7 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public FWWFAction checkAction(String wfId, String actionCode) throws FWWFException {
-    long startTime = logger.perfStart("checkAction");
+    long startTime = logger.perfStartNanos("checkAction");
     try {
       FWWFAction action = generateActionWithStatusCheck(wfId, actionCode, ctx.getUser().getRole());
       if (action == null) {
@@ -206,7 +285,7 @@ public class FWWFManagerImpl implements FWWFManager {
         throw new FWWFException(FWConstantCode.ROLE_UNAUTHORIZED);
       }
       logger.debug("role={}, wfId={}, actionCode={}", ctx.getUser().getRole(), wfId, actionCode);
-      logger.perfEnd("checkAction", startTime);
+      logger.perfEndNanos("checkAction", startTime);
       return action;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
@@ -234,7 +313,7 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public FWWFLog doInitAction(FWWFAction wfAction, String description) throws FWWFException {
-    long startTime = logger.perfStart("doInitAction");
+    long startTime = logger.perfStartNanos("doInitAction");
     try {
       String role = ctx.getUser().getRole();
       String actionCode = wfAction.getActionCode();
@@ -272,7 +351,7 @@ public class FWWFManagerImpl implements FWWFManager {
       service.insertWFProgressManagement(wfProgressManagement);
 
       logger.debug("role={}, wfId={}, actionCode={}", role, wfId, actionCode);
-      logger.perfEnd("doInitAction", startTime);
+      logger.perfEndNanos("doInitAction", startTime);
       return wfLog;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
@@ -302,7 +381,7 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public FWWFLog doAction(FWWFAction wfAction, String description) throws FWWFException {
-    long startTime = logger.perfStart("doAction");
+    long startTime = logger.perfStartNanos("doAction");
     try {
       String role = ctx.getUser().getRole();
       String actionCode = wfAction.getActionCode();
@@ -347,7 +426,7 @@ public class FWWFManagerImpl implements FWWFManager {
       }
 
       logger.debug("role={}, wfId={}, actionCode={}", role, wfId, actionCode);
-      logger.perfEnd("doAction", startTime);
+      logger.perfEndNanos("doAction", startTime);
       return wfLog;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
@@ -356,7 +435,7 @@ public class FWWFManagerImpl implements FWWFManager {
 
   @Override
   public List<FWWFLog> getWFLogs(String wfId) {
-    long startTime = logger.perfStart("getWFLogs");
+    long startTime = logger.perfStartNanos("getWFLogs");
     try {
       List<FWWFLog> logs = new ArrayList<>();
       if (wfId != null) {
@@ -368,13 +447,71 @@ public class FWWFManagerImpl implements FWWFManager {
         });
       }
       logger.debug("wfId={}", wfId);
-      logger.perfEnd("getWFLogs", startTime);
+      logger.perfEndNanos("getWFLogs", startTime);
       return logs;
     } catch (SQLException e) {
       throw new FWRuntimeException(FWConstantCode.DB_FATAL, e);
     }
   }
 
+  @Override
+  public void reloadRoutes() {
+    if (routeGraph.isEnable()) {
+      routeGraph.reload();
+    }
+  }
+
+  // ルート定義のキャッシュが有効な場合はSQLを発行しない
+  private FWWFAction findAction(String actionCode, String role) throws SQLException {
+    if (routeGraph.isEnable()) {
+      return routeGraph.getAction(actionCode, role);
+    }
+    return service.getAction(actionCode, role);
+  }
+
+  private FWWFAction findAction(String actionCode, String status, String role)
+      throws SQLException {
+    if (routeGraph.isEnable()) {
+      return routeGraph.getAction(actionCode, status, role);
+    }
+    return service.getAction(actionCode, status, role);
+  }
+
+  private List<FWWFAction> findActions(String status, String role) throws SQLException {
+    if (routeGraph.isEnable()) {
+      return routeGraph.getActions(status, role);
+    }
+    return service.getActions(status, role);
+  }
+
+  private Map<String, List<FWWFAction>> findActions(Collection<String> statuses, String role)
+      throws SQLException {
+    if (routeGraph.isEnable()) {
+      Map<String, List<FWWFAction>> actions = new HashMap<>();
+      for (String status : statuses) {
+        List<FWWFAction> list = routeGraph.getActions(status, role);
+        if (!list.isEmpty()) {
+          actions.put(status, list);
+        }
+      }
+      return actions;
+    }
+    return service.getActions(statuses, role);
+  }
+
+  private FWWFAction copyAction(FWWFAction src) {
+    FWWFAction action = new FWWFAction();
+    action.setActionCode(src.getActionCode());
+    action.setAction(src.getAction());
+    action.setPreStatus(src.getPreStatus());
+    action.setPreStatusName(src.getPreStatusName());
+    action.setPostStatus(src.getPostStatus());
+    action.setPostStatusName(src.getPostStatusName());
+    action.setRollbackAction(src.isRollbackAction());
+    action.setLastAction(src.isLastAction());
+    return action;
+  }
+
   private FWWFAction generateAction(String wfId, String actionCode, String role)
       throws SQLException {
     // 該当するアクションの取得
@@ -383,7 +520,7 @@ public class FWWFManagerImpl implements FWWFManager {
       boolean rollbackFlg = actionCode.equals(ROLLBACK_ACTION_CODE);
       if (!rollbackFlg) {
         // 承認系アクション(現在ステータスとの整合性チェックなし)
-        action = service.getAction(actionCode, role);
+        action = findAction(actionCode, role);
         action.setWfId(wfId);
       } else {
         // 否認系アクション（ロールバック）
@@ -407,7 +544,7 @@ public class FWWFManagerImpl implements FWWFManager {
           status = service.getStatus(wfId);
           // アクションコード、ロールに加え、ステータスの突合を行う場合（＝現在ステータスとの整合性チェック）
           if (status != null) {
-              action = service.getAction(actionCode, status.getStatus(), role);
+              action = findAction(actionCode, status.getStatus(), role);
               action.setWfId(wfId);
           }
         }
@@ -430,7 +567,7 @@ public class FWWFManagerImpl implements FWWFManager {
     // 否認系アクション（ロールバック）
     if (status != null) {
       // ステータス有り＝チェック：実行可能なアクション取得。存在することにより現在ステータスより前に戻すことが可能なロールであると判断
-      if (service.getActions(status.getStatus(), role).isEmpty()) {
+      if (findActions(status.getStatus(), role).isEmpty()) {
         return null;
       }
     }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.workflow;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.db.FWInternalConnectionManager;
+import com.handywedge.log.FWLogger;
+import com.handywedge.util.FWInternalUtil;
+
+// ワークフロールート定義（ステータス→ロール→アクション）のキャッシュ
+// fw.wf.route.cache=trueの場合のみ有効。定義は不変オブジェクトとして保持し、再読み込み時に丸ごと差し替える
+@ApplicationScoped
+public class FWWFRouteGraph {
+
+  private static final String[] TABLES = {"fw_wf_rote", "fw_role_action", "fw_status_master"};
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWInternalUtil util;
+
+  // nullの場合は無効（従来通りSQLで取得する）
+  private volatile Graph graph;
+
+  private String signature;
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * 設定が有効な場合にルート定義を読み込みます。アプリケーションの起動時に呼び出されます。
+   */
+  public void init() {
+
+    if (!Boolean.parseBoolean(util.getResource(FWMessageResources.WF_ROUTE_CACHE))) {
+      logger.info("ワークフロールートキャッシュは無効です。");
+      return;
+    }
+    reload();
+    long interval = 0L;
+    try {
+      String value = util.getResource(FWMessageResources.WF_ROUTE_RELOAD_INTERVAL_SEC);
+      interval = Long.parseLong(FWStringUtil.replaceNullString(value, "0"));
+    } catch (Exception e) {
+      logger.warn("ワークフロールートの再読み込み間隔の設定が不正です。自動再読み込みは行いません。");
+    }
+    if (interval > 0L) {
+      synchronized (this) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread t = new Thread(r, "fw-wf-route-reloader");
+          t.setDaemon(true);
+          return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.SECONDS);
+      }
+      logger.info("ワークフロールートの変更を{}秒間隔で確認します。", interval);
+    }
+  }
+
+  public boolean isEnable() {
+
+    return graph != null;
+  }
+
+  /**
+   * ルート定義を再読み込みします。<br>
+   * 読み込みに失敗した場合は現在の定義を維持します。
+   */
+  public synchronized void reload() {
+
+    long start = logger.perfStartNanos("reload");
+    try (Connection con = FWInternalConnectionManager.getConnection()) {
+      String sig = loadSignature(con);
+      graph = loadGraph(con);
+      signature = sig;
+      logger.info("ワークフロールートを読み込みました。route={}", graph.routes.size());
+    } catch (SQLException | RuntimeException e) {
+      logger.error("ワークフロールートの読み込みでエラーが発生しました。", e);
+    }
+    logger.perfEndNanos("reload", start);
+  }
+
+  // 件数・最終更新日時が変化した場合のみ再読み込みする
+  private void poll() {
+
+    try {
+      String sig;
+      try (Connection con = FWInternalConnectionManager.getConnection()) {
+        sig = loadSignature(con);
+      }
+      synchronized (this) {
+        if (sig.equals(signature)) {
+          return;
+        }
+      }
+      logger.info("ワークフロールートの変更を検知しました。");
+      reload();
+    } catch (SQLException | RuntimeException e) {
+      logger.error("ワークフロールートの変更確認でエラーが発生しました。", e);
+    }
+  }
+
+  public void shutdown() {
+
+    ScheduledExecutorService s;
+    synchronized (this) {
+      s = scheduler;
+      scheduler = null;
+    }
+    if (s != null) {
+      s.shutdownNow();
+    }
+  }
+
+  /**
+   * 指定ロールが実行可能なアクションを返します。該当しない場合はnullを返します。
+   */
+  FWWFAction getAction(String actionCode, String role) {
+
+    Graph g = graph;
+    Route route = g.routes.get(actionCode);
+    if (route == null || !g.isAllowed(role, actionCode)) {
+      return null;
+    }
+    return route.toAction();
+  }
+
+  /**
+   * 指定ステータスで指定ロールが実行可能なアクションを返します。該当しない場合はnullを返します。
+   */
+  FWWFAction getAction(String actionCode, String status, String role) {
+
+    Graph g = graph;
+    Route route = g.routes.get(actionCode);
+    if (route == null || status == null || !status.equals(route.preStatus)
+        || !g.isAllowed(role, actionCode)) {
+      return null;
+    }
+    return route.toAction();
+  }
+
+  /**
+   * 指定ステータスで指定ロールが実行可能なアクションをアクションコード順に返します。
+   */
+  List<FWWFAction> getActions(String status, String role) {
+
+    Graph g = graph;
+    List<FWWFAction> actions = new ArrayList<>();
+    for (Route route : g.byPreStatus.getOrDefault(status, Collections.emptyList())) {
+      if (g.isAllowed(role, route.actionCode)) {
+        actions.add(route.toAction());
+      }
+    }
+    return actions;
+  }
+
+  private String loadSignature(Connection con) throws SQLException {
+
+    StringBuilder sig = new StringBuilder();
+    try (Statement st = con.createStatement()) {
+      for (String table : TABLES) {
+        try (ResultSet rs =
+            st.executeQuery("SELECT COUNT(*) AS cnt, MAX(update_date) AS max_date FROM " + table)) {
+          rs.next();
+          sig.append(rs.getLong("cnt")).append(':').append(rs.getTimestamp("max_date")).append(',');
+        }
+      }
+    }
+    return sig.toString();
+  }
+
+  private Graph loadGraph(Connection con) throws SQLException {
+
+    Map<String, Route> routes = new HashMap<>();
+    Set<String> preStatuses = new HashSet<>();
+    List<String[]> rows = new ArrayList<>();
+    try (Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery(
+            "SELECT wfrt.action_code AS action_code, wfrt.action AS action, wfrt.pre_status AS pre_status, sm1.status_name AS pre_status_name, wfrt.post_status AS post_status, sm2.status_name AS status_name FROM fw_wf_rote AS wfrt"
+                + " LEFT JOIN fw_status_master AS sm1 ON wfrt.pre_status = sm1.status"
+                + " LEFT JOIN fw_status_master AS sm2 ON wfrt.post_status = sm2.status")) {
+      while (rs.next()) {
+        rows.add(new String[] {rs.getString("action_code"), rs.getString("action"),
+            rs.getString("pre_status"), rs.getString("pre_status_name"),
+            rs.getString("post_status"), rs.getString("status_name")});
+        preStatuses.add(rs.getString("pre_status"));
+      }
+    }
+    Map<String, List<Route>> byPreStatus = new HashMap<>();
+    for (String[] row : rows) {
+      // 遷移後ステータスから始まるルートが無い場合は最終アクション
+      boolean last = row[4] == null || !preStatuses.contains(row[4]);
+      Route route = new Route(row[0], row[1], row[2], row[3], row[4], row[5], last);
+      routes.put(route.actionCode, route);
+      byPreStatus.computeIfAbsent(route.preStatus, k -> new ArrayList<>()).add(route);
+    }
+    for (List<Route> list : byPreStatus.values()) {
+      list.sort(Comparator.comparing(r -> r.actionCode));
+    }
+
+    Map<String, Set<String>> roleActions = new HashMap<>();
+    try (Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("SELECT role, action_code FROM fw_role_action")) {
+      while (rs.next()) {
+        roleActions.computeIfAbsent(rs.getString("role"), k -> new HashSet<>())
+            .add(rs.getString("action_code"));
+      }
+    }
+    return new Graph(routes, byPreStatus, roleActions);
+  }
+
+  private static final class Graph {
+
+    private final Map<String, Route> routes;
+    private final Map<String, List<Route>> byPreStatus;
+    private final Map<String, Set<String>> roleActions;
+
+    private Graph(Map<String, Route> routes, Map<String, List<Route>> byPreStatus,
+        Map<String, Set<String>> roleActions) {
+      this.routes = routes;
+      this.byPreStatus = byPreStatus;
+      this.roleActions = roleActions;
+    }
+
+    private boolean isAllowed(String role, String actionCode) {
+      Set<String> actions = roleActions.get(role);
+      return actions != null && actions.contains(actionCode);
+    }
+  }
+
+  private static final class Route {
+
+    private final String actionCode;
+    private final String action;
+    private final String preStatus;
+    private final String preStatusName;
+    private final String postStatus;
+    private final String postStatusName;
+    private final boolean lastAction;
+
+    private Route(String actionCode, String action, String preStatus, String preStatusName,
+        String postStatus, String postStatusName, boolean lastAction) {
+      this.actionCode = actionCode;
+      this.action = action;
+      this.preStatus = preStatus;
+      this.preStatusName = preStatusName;
+      this.postStatus = postStatus;
+      this.postStatusName = postStatusName;
+      this.lastAction = lastAction;
+    }
+
+    // 呼び出し元でwfId等を設定するので都度DTOを生成する
+    private FWWFAction toAction() {
+      FWWFAction a = new FWWFAction();
+      a.setActionCode(actionCode);
+      a.setAction(action);
+      a.setPreStatus(preStatus);
+      a.setPreStatusName(preStatusName);
+      a.setPostStatus(postStatus);
+      a.setPostStatusName(postStatusName);
+      a.setLastAction(lastAction);
+      return a;
+    }
+  }
+}
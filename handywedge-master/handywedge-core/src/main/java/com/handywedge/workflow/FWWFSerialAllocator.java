@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.workflow;
+
+import java.sql.SQLException;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.handywedge.common.FWStringUtil;
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.db.FWConnection;
+import com.handywedge.db.FWPreparedStatement;
+import com.handywedge.db.FWResultSet;
+import com.handywedge.log.FWLogger;
+
+// ワークフローログの通番（wf_ser_no）の採番
+// fw.wf.serial.strategyで方式を切り替える
+// max : WFID毎の最大値+1（従来通り）。fw_wf_id_managementの行をロックしてから最大値を取得するため、
+//       同一WFへの同時アクションはトランザクション終了まで直列化される
+// sequence : シーケンスの値をそのまま使用する
+// identity : wf_ser_noを自動採番列とし、登録時に生成された値を使用する
+// block : シーケンス値1つにつきfw.wf.serial.block.size件の範囲を確保し、メモリ上で払い出す
+// sequence、identity、blockはWF全体で一意な値となり、WFID毎の連番ではなくなる
+// sequence、identityは登録順に値が大きくなるが、blockは単調増加にならない
+// （範囲はサーバー毎に確保するため、サーバーAが100～199、サーバーBが200～299を確保した後に
+//   同一WFのアクションをB→Aの順に処理すると、後のアクションの方が小さい値になる）
+// blockはロック・シーケンスのアクセスを減らす代わりに順序を保証しないため、wf_ser_noの大小で
+// アクションの前後を判定する場合は、同一WFのアクションが同一サーバーで処理される構成でのみ使用すること
+@ApplicationScoped
+public class FWWFSerialAllocator {
+
+  static final String STRATEGY_MAX = "max";
+  static final String STRATEGY_SEQUENCE = "sequence";
+  static final String STRATEGY_IDENTITY = "identity";
+  static final String STRATEGY_BLOCK = "block";
+
+  private static final String DEFAULT_SEQUENCE_SQL = "SELECT nextval('fw_wf_ser_no_seq')";
+  private static final int DEFAULT_BLOCK_SIZE = 100;
+
+  @Inject
+  private FWLogger logger;
+
+  @Inject
+  private FWMessageResources msgResources;
+
+  private volatile boolean initConfig;
+  private String strategy;
+  private String sequenceSql;
+  private int blockSize;
+
+  // 払い出し中の範囲 [nextValue, limitValue)
+  private long nextValue;
+  private long limitValue;
+
+  // rbがセッションスコープにアクセスするので初回アクセス時に設定を読み込む
+  private void init() {
+
+    if (initConfig) {
+      return;
+    }
+    synchronized (this) {
+      if (initConfig) {
+        return;
+      }
+      String s = FWStringUtil
+          .replaceNullString(msgResources.get(FWMessageResources.WF_SERIAL_STRATEGY), STRATEGY_MAX)
+          .trim().toLowerCase();
+      switch (s) {
+        case STRATEGY_MAX:
+        case STRATEGY_SEQUENCE:
+        case STRATEGY_IDENTITY:
+        case STRATEGY_BLOCK:
+          strategy = s;
+          break;
+        default:
+          logger.warn("ワークフロー通番の採番方式の設定が不正です。maxを使用します。strategy={}", s);
+          strategy = STRATEGY_MAX;
+      }
+      sequenceSql = FWStringUtil.replaceNullString(
+          msgResources.get(FWMessageResources.WF_SERIAL_SEQUENCE_SQL), DEFAULT_SEQUENCE_SQL);
+      try {
+        blockSize = Integer.parseInt(FWStringUtil.replaceNullString(
+            msgResources.get(FWMessageResources.WF_SERIAL_BLOCK_SIZE),
+            String.valueOf(DEFAULT_BLOCK_SIZE)));
+      } catch (Exception e) {
+        blockSize = 0;
+      }
+      if (blockSize <= 0) {
+        logger.warn("ワークフロー通番の確保件数の設定が不正です。デフォルト値を使用します。");
+        blockSize = DEFAULT_BLOCK_SIZE;
+      }
+      logger.info("ワークフロー通番の採番方式 strategy={}", strategy);
+      initConfig = true;
+    }
+  }
+
+  /**
+   * 登録時にDBで自動採番する（identity）場合はtrueを返します。
+   */
+  boolean isIdentity() {
+
+    init();
+    return STRATEGY_IDENTITY.equals(strategy);
+  }
+
+  /**
+   * 次の通番を返します。identityの場合は呼び出さないで下さい。
+   */
+  int next(FWConnection con, String wfId) throws SQLException {
+
+    init();
+    switch (strategy) {
+      case STRATEGY_SEQUENCE:
+        return toInt(nextSequence(con));
+      case STRATEGY_BLOCK:
+        return nextBlock(con);
+      default:
+        return nextMax(con, wfId);
+    }
+  }
+
+  // 最大値を読んでから登録するまでの間に同一WFの採番が割り込まないよう、WFID管理の行をロックする
+  // ロックは呼び出し元（insertWFLog）のトランザクション終了まで保持される
+  private int nextMax(FWConnection con, String wfId) throws SQLException {
+
+    try (FWPreparedStatement ps = con.prepareStatement(
+        "SELECT wf_id FROM fw_wf_id_management WHERE wf_id = ? FOR UPDATE")) {
+      ps.setString(1, wfId);
+      try (FWResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) {
+          logger.debug("fw_wf_id_management not found. wfId={}", wfId);
+        }
+      }
+    }
+    try (FWPreparedStatement ps =
+        con.prepareStatement("SELECT MAX(wf_ser_no) AS max_wf_ser_no FROM fw_wf_log"
+            + " WHERE wf_id = ?")) {
+      ps.setString(1, wfId);
+      try (FWResultSet rs = ps.executeQuery()) {
+        if (rs.next()) {
+          return rs.getInt("max_wf_ser_no") + 1;
+        }
+        return 1;
+      }
+    }
+  }
+
+  // シーケンスはトランザクションに関係なく進むので、ロールバックされても範囲が重複することはない
+  private synchronized int nextBlock(FWConnection con) throws SQLException {
+
+    if (nextValue >= limitValue) {
+      long block = nextSequence(con);
+      nextValue = block * blockSize;
+      limitValue = nextValue + blockSize;
+      logger.debug("reserve wf_ser_no block. from={}, to={}", nextValue, limitValue - 1);
+    }
+    return toInt(nextValue++);
+  }
+
+  private long nextSequence(FWConnection con) throws SQLException {
+
+    try (FWPreparedStatement ps = con.prepareStatement(sequenceSql);
+        FWResultSet rs = ps.executeQuery()) {
+      if (!rs.next()) {
+        throw new SQLException("sequence returned no value. sql=" + sequenceSql);
+      }
+      return rs.getLong(1);
+    }
+  }
+
+  private int toInt(long value) throws SQLException {
+
+    if (value > Integer.MAX_VALUE) {
+      throw new SQLException("wf_ser_no overflow. value=" + value);
+    }
+    return (int) value;
+  }
+}
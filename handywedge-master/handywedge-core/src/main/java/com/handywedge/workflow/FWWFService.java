@@ -7,9 +7,15 @@
  */
 package com.handywedge.workflow;
 
+import java.sql.Array;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -23,9 +29,17 @@ import com.handywedge.db.FWTransactional;
 @ApplicationScoped
 public class FWWFService {
 
+  // 一括取得の検索条件は件数に関わらず配列パラメータ1つで渡す（= ANY(?)）。
+  // IN句のプレースホルダを件数分並べるとSQL文が件数毎に変わり、実行計画とステートメントのキャッシュ、
+  // SQL毎の集計が効かなくなるため
+  private static final String ARRAY_TYPE = "varchar";
+
   @Inject
   private FWConnectionManager cm;
 
+  @Inject
+  private FWWFSerialAllocator serialAllocator;
+
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWWFStatus getStatus(String wfId) throws SQLException {
     FWConnection con = cm.getConnection();
@@ -46,6 +60,34 @@ public class FWWFService {
     }
   }
 
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  public Map<String, FWWFStatus> getStatuses(Collection<String> wfIds) throws SQLException {
+    FWConnection con = cm.getConnection();
+    Map<String, FWWFStatus> statuses = new HashMap<>();
+    String[] ids = distinct(wfIds);
+    if (ids.length == 0) {
+      return statuses;
+    }
+    Array array = con.createArrayOf(ARRAY_TYPE, ids);
+    try (FWPreparedStatement ps = con.prepareStatement(
+        "SELECT wfid.wf_id AS wf_id, wfid.status_code AS status_code, sm.status_name AS status_name FROM fw_wf_id_management wfid"
+            + " INNER JOIN fw_status_master AS sm ON wfid.status_code = sm.status"
+            + " WHERE wfid.wf_id = ANY(?)")) {
+      ps.setArray(1, array);
+      try (FWResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          FWWFStatus status = new FWWFStatus();
+          status.setStatus(rs.getString("status_code"));
+          status.setStatusName(rs.getString("status_name"));
+          statuses.put(rs.getString("wf_id"), status);
+        }
+      }
+    } finally {
+      array.free();
+    }
+    return statuses;
+  }
+
   @FWTransactional(dataSourceName = "jdbc/fw")
   public int insertWFIDManagement(FWWFIDManagement wfIdManagement) throws SQLException {
     FWConnection con = cm.getConnection();
@@ -102,6 +144,92 @@ public class FWWFService {
     }
   }
 
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  public Map<String, FWWFAction> getRollbackActions(Collection<String> wfIds)
+      throws SQLException {
+    FWConnection con = cm.getConnection();
+    Map<String, FWWFAction> actions = new HashMap<>();
+    String[] ids = distinct(wfIds);
+    if (ids.length == 0) {
+      return actions;
+    }
+    Map<String, FWWFAction> pre = new HashMap<>();
+    Map<String, FWWFAction> post = new HashMap<>();
+    Array array = con.createArrayOf(ARRAY_TYPE, ids);
+    // WF毎に進捗管理の最新(odr=1)と1つ前(odr=2)のステータスを取得する
+    try (FWPreparedStatement ps = con.prepareStatement(
+        "SELECT st_base.wf_id AS wf_id, st_base.odr AS odr, st_base.status_code AS status_code, sm.status_name AS status_name FROM"
+            + " (SELECT wf_id, status_code, row_number() over (partition by wf_id order by wf_ser_no desc) AS odr from fw_wf_progress_management WHERE wf_id = ANY(?)) AS st_base"
+            + " INNER JOIN fw_status_master AS sm ON st_base.status_code = sm.status"
+            + " WHERE st_base.odr <= 2")) {
+      ps.setArray(1, array);
+      try (FWResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          FWWFAction action = new FWWFAction();
+          if (rs.getInt("odr") == 1) {
+            action.setPreStatus(rs.getString("status_code"));
+            action.setPreStatusName(rs.getString("status_name"));
+            pre.put(rs.getString("wf_id"), action);
+          } else {
+            action.setPostStatus(rs.getString("status_code"));
+            action.setPostStatusName(rs.getString("status_name"));
+            post.put(rs.getString("wf_id"), action);
+          }
+        }
+      }
+    } finally {
+      array.free();
+    }
+    pre.forEach((wfId, action) -> {
+      FWWFAction p = post.get(wfId);
+      if (p != null) {
+        action.setPostStatus(p.getPostStatus());
+        action.setPostStatusName(p.getPostStatusName());
+        actions.put(wfId, action);
+      }
+    });
+    return actions;
+  }
+
+  @FWTransactional(dataSourceName = "jdbc/fw")
+  public Map<String, List<FWWFAction>> getActions(Collection<String> statuses, String role)
+      throws SQLException {
+    FWConnection con = cm.getConnection();
+    Map<String, List<FWWFAction>> actions = new HashMap<>();
+    String[] codes = distinct(statuses);
+    if (codes.length == 0) {
+      return actions;
+    }
+    Array array = con.createArrayOf(ARRAY_TYPE, codes);
+    try (FWPreparedStatement ps = con.prepareStatement(
+        "SELECT wfrt.action_code AS action_code, wfrt.action AS action, wfrt.pre_status AS pre_status, sm1.status_name AS pre_status_name, wfrt.post_status AS post_status, sm2.status_name AS status_name, CASE WHEN wfrt2.pre_status IS NULL THEN 'true' ELSE 'false' END AS last_action_bool FROM fw_wf_rote AS wfrt"
+            + " INNER JOIN fw_role_action AS ra ON wfrt.action_code = ra.action_code"
+            + " LEFT JOIN fw_status_master AS sm1 ON wfrt.pre_status = sm1.status"
+            + " LEFT JOIN fw_status_master AS sm2 ON wfrt.post_status = sm2.status"
+            + " LEFT JOIN (SELECT pre_status FROM fw_wf_rote GROUP BY pre_status) AS wfrt2 ON wfrt.post_status = wfrt2.pre_status"
+            + " WHERE wfrt.pre_status = ANY(?) AND ra.role = ?"
+            + " ORDER BY wfrt.action_code ASC")) {
+      ps.setArray(1, array);
+      ps.setString(2, role);
+      try (FWResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          FWWFAction action = new FWWFAction();
+          action.setActionCode(rs.getString("action_code"));
+          action.setAction(rs.getString("action"));
+          action.setPreStatus(rs.getString("pre_status"));
+          action.setPreStatusName(rs.getString("pre_status_name"));
+          action.setPostStatus(rs.getString("post_status"));
+          action.setPostStatusName(rs.getString("status_name"));
+          action.setLastAction(Boolean.valueOf(rs.getString("last_action_bool")));
+          actions.computeIfAbsent(action.getPreStatus(), k -> new ArrayList<>()).add(action);
+        }
+      }
+    } finally {
+      array.free();
+    }
+    return actions;
+  }
+
   @FWTransactional(dataSourceName = "jdbc/fw")
   public List<FWWFAction> getActions(String status, String role) throws SQLException {
     FWConnection con = cm.getConnection();
@@ -200,18 +328,11 @@ public class FWWFService {
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWWFLog insertWFLog(FWWFLog wfLog) throws SQLException {
     FWConnection con = cm.getConnection();
-    // 履歴最大値取得
-    int wfSerNo = 1;
-    try (FWPreparedStatement ps = con.prepareStatement(
-        "SELECT MAX(wf_ser_no) AS max_wf_ser_no FROM fw_wf_log"
-            + " WHERE wf_id = ?")) {
-      ps.setString(1, wfLog.getWfId());
-      try (FWResultSet rs = ps.executeQuery()) {
-        if (rs.next()) {
-          wfSerNo = rs.getInt("max_wf_ser_no") + 1;
-        }
-      }
+    if (serialAllocator.isIdentity()) {
+      return insertWFLogIdentity(con, wfLog);
     }
+    // 通番採番
+    int wfSerNo = serialAllocator.next(con, wfLog.getWfId());
     // 履歴登録処理
     try (FWPreparedStatement ps = con.prepareStatement(
         "INSERT INTO fw_wf_log (wf_id, wf_ser_no, action_date, action_owner, action_code, status_code, description) VALUES(?, ?, ?, ?, ?, ?, ?)")) {
@@ -229,6 +350,30 @@ public class FWWFService {
     return getWFLog(wfLog.getWfId(), wfSerNo);
   }
 
+  // 通番をDBの自動採番列で生成する
+  private FWWFLog insertWFLogIdentity(FWConnection con, FWWFLog wfLog) throws SQLException {
+    int wfSerNo;
+    try (FWPreparedStatement ps = con.prepareStatement(
+        "INSERT INTO fw_wf_log (wf_id, action_date, action_owner, action_code, status_code, description) VALUES(?, ?, ?, ?, ?, ?)",
+        Statement.RETURN_GENERATED_KEYS)) {
+      int idx = 1;
+      ps.setString(idx++, wfLog.getWfId());
+      ps.setTimestamp(idx++, wfLog.getActionDate());
+      ps.setString(idx++, wfLog.getActionOwner());
+      ps.setString(idx++, wfLog.getActionCode());
+      ps.setString(idx++, wfLog.getStatusCode());
+      ps.setString(idx++, wfLog.getDescription());
+      ps.executeUpdate();
+      try (FWResultSet rs = ps.getGeneratedKeys()) {
+        if (!rs.next()) {
+          throw new SQLException("wf_ser_no was not generated. wfId=" + wfLog.getWfId());
+        }
+        wfSerNo = rs.getInt("wf_ser_no");
+      }
+    }
+    return getWFLog(wfLog.getWfId(), wfSerNo);
+  }
+
   @FWTransactional(dataSourceName = "jdbc/fw")
   public FWWFLog getWFLog(String wfId, int wfSerNo) throws SQLException {
     FWConnection con = cm.getConnection();
@@ -333,4 +478,11 @@ public class FWWFService {
       return ps.executeUpdate();
     }
   }
+
+  // 重複とnullを除いた配列パラメータの値
+  private static String[] distinct(Collection<String> values) {
+    LinkedHashSet<String> set = new LinkedHashSet<>(values);
+    set.remove(null);
+    return set.toArray(new String[0]);
+  }
 }
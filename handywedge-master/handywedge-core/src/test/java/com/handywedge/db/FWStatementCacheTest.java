@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * コネクション単位のPreparedStatementキャッシュを検証します。<br>
+ * 統計情報は全コネクションの累計のため、各テストの前後の差分で確認します。
+ */
+public class FWStatementCacheTest {
+
+  private static final String SQL_A = "SELECT name FROM fw_cache_test WHERE id = ?";
+  private static final String SQL_B = "SELECT id FROM fw_cache_test WHERE name = ?";
+  private static final String SQL_C = "SELECT COUNT(*) FROM fw_cache_test WHERE id > ?";
+
+  private Connection con;
+  private FWTestConnectionManager cm;
+  private FWFullConnection wrapper;
+  private FWSqlMetrics.StatementCacheStat before;
+
+  // JDBCドライバーが返した物理ステートメント
+  private final List<PreparedStatement> prepared = new ArrayList<>();
+
+  @Before
+  public void setUp() throws SQLException {
+
+    con = DriverManager.getConnection("jdbc:h2:mem:cache" + System.nanoTime());
+    try (Statement st = con.createStatement()) {
+      st.execute("CREATE TABLE fw_cache_test (id int PRIMARY KEY, name varchar(64))");
+      st.execute("INSERT INTO fw_cache_test VALUES (1, 'handy'), (2, 'wedge')");
+    }
+    cm = new FWTestConnectionManager(2);
+    wrapper = cm.open(recording(con));
+    before = FWSqlMetrics.getStatementCacheStat();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+
+    cm.close();
+    con.close();
+  }
+
+  @Test
+  public void hitReusesPhysicalStatement() throws SQLException {
+
+    FWPreparedStatement first = wrapper.prepareStatement(SQL_A);
+    assertEquals("handy", queryName(first, 1));
+    first.close();
+    assertTrue(first.isClosed());
+
+    FWPreparedStatement second = wrapper.prepareStatement(SQL_A);
+    assertSame(first, second);
+    assertFalse(second.isClosed());
+    assertEquals("wedge", queryName(second, 2));
+    second.close();
+
+    assertEquals(1, prepared.size());
+    assertFalse(prepared.get(0).isClosed());
+    assertEquals(1, hits());
+    assertEquals(1, misses());
+  }
+
+  @Test
+  public void sameSqlInUseIsPreparedSeparately() throws SQLException {
+
+    FWPreparedStatement first = wrapper.prepareStatement(SQL_A);
+    FWPreparedStatement second = wrapper.prepareStatement(SQL_A);
+    first.close();
+    second.close();
+
+    // 同じキーは1つだけ保持し、もう一方は物理クローズする
+    assertEquals(2, prepared.size());
+    assertFalse(prepared.get(0).isClosed());
+    assertTrue(prepared.get(1).isClosed());
+    assertEquals(0, hits());
+    assertEquals(2, misses());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws SQLException {
+
+    wrapper.prepareStatement(SQL_A).close();
+    wrapper.prepareStatement(SQL_B).close();
+    wrapper.prepareStatement(SQL_A).close(); // Bが最も古くなる
+    wrapper.prepareStatement(SQL_C).close();
+
+    assertEquals(3, prepared.size());
+    assertFalse(prepared.get(0).isClosed());
+    assertTrue(prepared.get(1).isClosed());
+    assertFalse(prepared.get(2).isClosed());
+    assertEquals(1, evictions());
+
+    wrapper.prepareStatement(SQL_B).close();
+    assertEquals(4, prepared.size());
+    assertEquals(1, hits());
+  }
+
+  @Test
+  public void clearsOnConnectionClose() throws SQLException {
+
+    wrapper.prepareStatement(SQL_A).close();
+    wrapper.prepareStatement(SQL_B).close();
+    assertFalse(prepared.get(0).isClosed());
+
+    wrapper.close();
+
+    assertTrue(con.isClosed());
+    assertTrue(prepared.get(0).isClosed());
+    assertTrue(prepared.get(1).isClosed());
+    assertEquals(0, evictions());
+  }
+
+  private String queryName(FWPreparedStatement ps, int id) throws SQLException {
+
+    ps.setInt(1, id);
+    try (FWResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getString(1);
+    }
+  }
+
+  private long hits() {
+    return FWSqlMetrics.getStatementCacheStat().getHit() - before.getHit();
+  }
+
+  private long misses() {
+    return FWSqlMetrics.getStatementCacheStat().getMiss() - before.getMiss();
+  }
+
+  private long evictions() {
+    return FWSqlMetrics.getStatementCacheStat().getEviction() - before.getEviction();
+  }
+
+  // prepareStatementが返した物理ステートメントを記録するコネクション
+  private Connection recording(Connection target) {
+
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class}, (p, method, args) -> {
+          try {
+            Object result = method.invoke(target, args);
+            if (method.getName().equals("prepareStatement")) {
+              prepared.add((PreparedStatement) result);
+            }
+            return result;
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+}
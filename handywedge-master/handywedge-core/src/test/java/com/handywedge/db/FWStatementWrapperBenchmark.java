@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.handywedge.cdi.FWBeanManager;
+
+import jakarta.enterprise.context.spi.CreationalContext;
+import jakarta.enterprise.inject.spi.Bean;
+import jakarta.enterprise.inject.spi.BeanManager;
+
+/**
+ * JDBCラッパーの生成コストを変更前後で計測します。<br>
+ * 変更前（legacy）はステートメントと結果セットの生成毎に{@link FWBeanManager#getBean}で
+ * コネクションマネージャーを取得していました。CDIコンテナ外で同じ呼び出しを再現するため、
+ * JNDIにスタブのBeanManagerを登録し、getBeans・resolve・createCreationalContext・getReferenceを
+ * 実際に呼び出します。スタブは型で引くだけなので、Weldでの実際のコストより小さい下限値です。<br>
+ * H2のインメモリDBを使用し、テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FWStatementWrapperBenchmark {
+
+  private static final String SQL = "SELECT id, name FROM fw_bench WHERE id = ?";
+
+  private Connection con;
+  private PreparedStatement raw;
+  private FWConnectionWrapper wrapped;
+  private FWConnectionWrapper cached;
+  private TrackingConnectionManager manager;
+
+  @Setup
+  public void setUp() throws SQLException {
+
+    con = DriverManager.getConnection("jdbc:h2:mem:bench" + System.nanoTime());
+    try (Statement st = con.createStatement()) {
+      st.execute("CREATE TABLE fw_bench (id int PRIMARY KEY, name varchar(64))");
+      st.execute("INSERT INTO fw_bench VALUES (1, 'handywedge')");
+    }
+    raw = con.prepareStatement(SQL);
+    manager = new TrackingConnectionManager();
+    wrapped = new FWConnectionWrapper(con, manager);
+    cached = new FWConnectionWrapper(con, manager, 32);
+
+    StubBeanManager.register(FWFullConnectionManager.class, manager);
+    System.setProperty(Context.INITIAL_CONTEXT_FACTORY, StubContextFactory.class.getName());
+    if (FWBeanManager.getBean(FWFullConnectionManager.class) != manager) {
+      throw new IllegalStateException("stub BeanManager is not used.");
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+
+    raw.close();
+    con.close();
+  }
+
+  // ラッパーのコンストラクタのみ（ステートメントの準備は含まない）
+  @Benchmark
+  public Object wrapperOnly() {
+
+    FWPreparedStatementWrapper ps = new FWPreparedStatementWrapper(raw, SQL, manager);
+    manager.reset();
+    return ps;
+  }
+
+  // 変更前のコンストラクタ。生成毎にBeanManagerでマネージャーを取得していた
+  @Benchmark
+  public Object legacyWrapperOnly() {
+
+    FWPreparedStatementWrapper ps = new FWPreparedStatementWrapper(raw, SQL,
+        FWBeanManager.getBean(FWFullConnectionManager.class));
+    manager.reset();
+    return ps;
+  }
+
+  @Benchmark
+  public void rawJdbc(Blackhole bh) throws SQLException {
+
+    try (PreparedStatement ps = con.prepareStatement(SQL)) {
+      ps.setInt(1, 1);
+      try (ResultSet rs = ps.executeQuery()) {
+        rs.next();
+        bh.consume(rs.getString(2));
+      }
+    }
+  }
+
+  @Benchmark
+  public void wrapped(Blackhole bh) throws SQLException {
+
+    query(wrapped, bh);
+  }
+
+  // 変更前はステートメントと結果セットの生成毎に1回ずつルックアップしていた
+  @Benchmark
+  public void legacyWrapped(Blackhole bh) throws SQLException {
+
+    bh.consume(FWBeanManager.getBean(FWFullConnectionManager.class));
+    bh.consume(FWBeanManager.getBean(FWFullConnectionManager.class));
+    query(wrapped, bh);
+  }
+
+  // fw.db.statement.cache.size=32相当
+  @Benchmark
+  public void wrappedWithStatementCache(Blackhole bh) throws SQLException {
+
+    query(cached, bh);
+  }
+
+  private void query(FWConnectionWrapper connection, Blackhole bh) throws SQLException {
+
+    try (FWPreparedStatement ps = connection.prepareStatement(SQL)) {
+      ps.setInt(1, 1);
+      try (FWResultSet rs = ps.executeQuery()) {
+        rs.next();
+        bh.consume(rs.getString(2));
+      }
+    }
+  }
+
+  // FWConnectionManagerImplと同様に、開いている間だけリストで追跡する。
+  // wrapperOnlyはクローズしないため、計測中に増え続けないよう都度クリアする
+  private static class TrackingConnectionManager implements FWFullConnectionManager {
+
+    private final List<FWStatement> statements = new ArrayList<>();
+    private final List<FWResultSet> resultSets = new ArrayList<>();
+
+    @Override
+    public FWFullConnection getConnection(String dataSource) {
+
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void begin(String dataSource, boolean readOnly, boolean autoCommit) {}
+
+    @Override
+    public boolean isAcquired() {
+
+      return false;
+    }
+
+    @Override
+    public FWFullConnection getConnection() {
+
+      return null;
+    }
+
+    @Override
+    public void addStatement(FWStatement statement) {
+
+      statements.add(statement);
+    }
+
+    @Override
+    public void addResltSet(FWResultSet resultSet) {
+
+      resultSets.add(resultSet);
+    }
+
+    @Override
+    public void removeStatement(FWStatement statement) {
+
+      removeLast(statements, statement);
+    }
+
+    @Override
+    public void removeResultSet(FWResultSet resultSet) {
+
+      removeLast(resultSets, resultSet);
+    }
+
+    private static <T> void removeLast(List<T> list, T element) {
+
+      for (int i = list.size() - 1; i >= 0; i--) {
+        if (list.get(i) == element) {
+          list.remove(i);
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void close() {}
+
+    void reset() {
+
+      statements.clear();
+      resultSets.clear();
+    }
+  }
+
+  /**
+   * 型毎に登録したインスタンスを返すBeanManagerのスタブです。
+   */
+  static final class StubBeanManager {
+
+    private static final Map<Class<?>, Set<Bean<?>>> beans = new ConcurrentHashMap<>();
+    private static final Map<Bean<?>, Object> references = new ConcurrentHashMap<>();
+    private static final BeanManager instance = (BeanManager) Proxy.newProxyInstance(
+        BeanManager.class.getClassLoader(), new Class<?>[] {BeanManager.class},
+        (p, method, args) -> {
+          switch (method.getName()) {
+            case "getBeans":
+              return beans.getOrDefault(args[0], Collections.emptySet());
+            case "resolve":
+              Set<?> set = (Set<?>) args[0];
+              return set.size() == 1 ? set.iterator().next() : null;
+            case "createCreationalContext":
+              return new StubCreationalContext<>();
+            case "getReference":
+              return references.get(args[0]);
+            default:
+              throw new UnsupportedOperationException(method.toString());
+          }
+        });
+
+    private StubBeanManager() {}
+
+    static void register(Class<?> type, Object reference) {
+
+      Bean<?> bean = (Bean<?>) Proxy.newProxyInstance(Bean.class.getClassLoader(),
+          new Class<?>[] {Bean.class}, (p, method, args) -> {
+            if (method.getName().equals("hashCode")) {
+              return System.identityHashCode(p);
+            } else if (method.getName().equals("equals")) {
+              return p == args[0];
+            }
+            throw new UnsupportedOperationException(method.toString());
+          });
+      beans.put(type, Collections.singleton(bean));
+      references.put(bean, reference);
+    }
+  }
+
+  private static final class StubCreationalContext<T> implements CreationalContext<T> {
+
+    @Override
+    public void push(T incompleteInstance) {}
+
+    @Override
+    public void release() {}
+  }
+
+  /**
+   * java:comp/env/BeanManagerでスタブのBeanManagerを返すJNDIのコンテキストファクトリーです。
+   */
+  public static final class StubContextFactory implements InitialContextFactory {
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) {
+
+      return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(),
+          new Class<?>[] {Context.class}, (p, method, args) -> {
+            if (method.getName().equals("lookup")
+                && "java:comp/env/BeanManager".equals(String.valueOf(args[0]))) {
+              return StubBeanManager.instance;
+            } else if (method.getName().equals("close")) {
+              return null;
+            }
+            throw new UnsupportedOperationException(method.toString());
+          });
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(new OptionsBuilder().include(FWStatementWrapperBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.db;
+
+import java.sql.Connection;
+
+/**
+ * テスト用のコネクションマネージャーです。<br>
+ * JNDIを使用せず、スレッド毎に{@link #open(Connection)}で指定したJDBCコネクションを返します。<br>
+ * トランザクションの制御とJDBCコネクションのクローズは呼び出し元で行って下さい。
+ */
+public class FWTestConnectionManager implements FWFullConnectionManager {
+
+  private final ThreadLocal<FWFullConnection> connection = new ThreadLocal<>();
+
+  private final int statementCacheSize;
+
+  public FWTestConnectionManager() {
+
+    this(0);
+  }
+
+  /**
+   * @param statementCacheSize コネクション毎のステートメントキャッシュ件数。0の場合は無効
+   */
+  public FWTestConnectionManager(int statementCacheSize) {
+
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  /**
+   * 現在のスレッドで使用するJDBCコネクションを設定します。
+   *
+   * @param con JDBCコネクション
+   * @return ラップしたコネクション
+   */
+  public FWFullConnection open(Connection con) {
+
+    FWFullConnection wrapper = new FWConnectionWrapper(con, this, statementCacheSize);
+    connection.set(wrapper);
+    return wrapper;
+  }
+
+  @Override
+  public FWFullConnection getConnection(String dataSource) {
+
+    throw new UnsupportedOperationException("JNDI is not available in tests.");
+  }
+
+  @Override
+  public void begin(String dataSource, boolean readOnly, boolean autoCommit) {}
+
+  @Override
+  public boolean isAcquired() {
+
+    return connection.get() != null;
+  }
+
+  @Override
+  public FWFullConnection getConnection() {
+
+    return connection.get();
+  }
+
+  @Override
+  public void addStatement(FWStatement statement) {}
+
+  @Override
+  public void addResltSet(FWResultSet resultSet) {}
+
+  @Override
+  public void removeStatement(FWStatement statement) {}
+
+  @Override
+  public void removeResultSet(FWResultSet resultSet) {}
+
+  @Override
+  public void close() {
+
+    connection.remove();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.log;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 出力しないレベル（DEBUG）のログ呼び出しのコストを計測します。<br>
+ * FWLoggerImplと生のSLF4J、以前のレベル判定の前にMDCを操作していた実装（legacy）を比較します。
+ * DEBUGが無効なログ設定（log4j2の既定はERROR）で実行してください。<br>
+ * テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FWLoggerBenchmark {
+
+  private static final String FW_PREFIX = "com.handywedge";
+
+  private Logger slf4j;
+  private FWLogger fwLogger;
+  private String arg1 = "arg1";
+  private Integer arg2 = 2;
+
+  @Setup
+  public void setUp() {
+
+    slf4j = LoggerFactory.getLogger(FWLoggerBenchmark.class);
+    fwLogger = FWLoggerFactory.getLogger(FWLoggerBenchmark.class);
+    if (slf4j.isDebugEnabled()) {
+      throw new IllegalStateException("DEBUG must be disabled for this benchmark.");
+    }
+  }
+
+  @Benchmark
+  public void slf4jDisabled() {
+
+    slf4j.debug("benchmark. arg1={}, arg2={}", arg1, arg2);
+  }
+
+  @Benchmark
+  public void fwLoggerDisabled() {
+
+    fwLogger.debug("benchmark. arg1={}, arg2={}", arg1, arg2);
+  }
+
+  // 変更前のFWLoggerImpl#debug。レベルに関わらずMDCでFW/APを設定してから出力していた
+  @Benchmark
+  public void legacyDisabled() {
+
+    boolean remove = false;
+    if (FWMDC.getCurrentLogName() == null) {
+      FWMDC.setLogName(slf4j.getName().startsWith(FW_PREFIX) ? FWLogName.FW : FWLogName.AP);
+      remove = true;
+    }
+    try {
+      slf4j.debug("benchmark. arg1={}, arg2={}", arg1, arg2);
+    } finally {
+      if (remove) {
+        FWMDC.remove(FWMDC.LOG_NAME);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(
+        new OptionsBuilder().include(FWLoggerBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.role;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ロールACLの判定コストを計測します。<br>
+ * 1,000件（20ロール×50パターン）のACLで、構築済みのマッチャーと、
+ * 以前のリクエスト毎にロールでグルーピングしてパターンを1件ずつ照合する判定（legacy）を比較します。<br>
+ * テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FWRoleAclMatcherBenchmark {
+
+  private static final int ROLES = 20;
+  private static final int PATTERNS_PER_ROLE = 50;
+  private static final String ROLE = "ROLE10";
+
+  // first: 最初のパターンに一致、last: 最後のパターンに一致、deny: どれにも一致しない
+  @Param({"first", "last", "deny"})
+  private String url;
+
+  private String requestUrl;
+  private List<FWRoleAcl> acl;
+  private FWRoleAclMatcher matcher;
+
+  @Setup
+  public void setUp() {
+
+    List<FWRoleAcl> list = new ArrayList<>();
+    for (int r = 0; r < ROLES; r++) {
+      for (int p = 0; p < PATTERNS_PER_ROLE; p++) {
+        list.add(new FWRoleAcl(String.format("ROLE%02d", r),
+            "/handywedge-app/module" + r + "/page" + p + "/.*"));
+      }
+    }
+    // FWContextImplと同様に同期リストで保持する
+    acl = Collections.synchronizedList(list);
+    matcher = new FWRoleAclMatcher();
+    matcher.compile(acl);
+
+    switch (url) {
+      case "first":
+        requestUrl = "/handywedge-app/module10/page0/list.xhtml";
+        break;
+      case "last":
+        requestUrl = "/handywedge-app/module10/page" + (PATTERNS_PER_ROLE - 1) + "/list.xhtml";
+        break;
+      default:
+        requestUrl = "/handywedge-app/module11/page0/list.xhtml";
+        break;
+    }
+    if (compiled() != legacy()) {
+      throw new IllegalStateException("result mismatch. url=" + requestUrl);
+    }
+  }
+
+  @Benchmark
+  public boolean compiled() {
+
+    return matcher.matches(ROLE, requestUrl);
+  }
+
+  // 変更前のFWRoleManagerImpl#isAccessAllowの判定
+  @Benchmark
+  public boolean legacy() {
+
+    List<FWRoleAcl> grouping =
+        acl.stream().collect(Collectors.groupingBy(FWRoleAcl::getRole)).get(ROLE);
+    if (grouping == null) {
+      return false;
+    }
+    for (FWRoleAcl roleAcl : grouping) {
+      if (roleAcl.getPattern().matcher(requestUrl).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(new OptionsBuilder().include(FWRoleAclMatcherBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.log.FWLogger;
+
+/**
+ * CDIコンテナを使用せずにBeanを組み立てるテスト用のユーティリティです。
+ */
+public final class FWTestBeans {
+
+  private FWTestBeans() {}
+
+  /**
+   * {@code @Inject}フィールドに値を設定します。スーパークラスのフィールドも対象とします。
+   *
+   * @param target 設定先のBean
+   * @param fieldName フィールド名
+   * @param value 設定する値
+   * @return 設定先のBean
+   */
+  public static <T> T inject(T target, String fieldName, Object value) {
+
+    for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+      try {
+        Field field = c.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+        return target;
+      } catch (NoSuchFieldException e) {
+        // スーパークラスを検索する
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    throw new IllegalArgumentException(
+        "field not found. class=" + target.getClass().getName() + ", field=" + fieldName);
+  }
+
+  /**
+   * 何も出力しないロガーを返します。isXxxEnabledは全てfalseを返します。
+   */
+  public static FWLogger logger() {
+
+    return stub(FWLogger.class, null);
+  }
+
+  /**
+   * get(String)で指定した設定値を返すFWMessageResourcesを返します。
+   *
+   * @param values キーと設定値
+   */
+  public static FWMessageResources resources(Map<String, String> values) {
+
+    return stub(FWMessageResources.class, values);
+  }
+
+  // 戻り値がプリミティブの場合は初期値、それ以外はnullを返す
+  private static <T> T stub(Class<T> type, Map<String, String> values) {
+
+    Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (p, method, args) -> {
+          if (values != null && method.getName().equals("get") && args != null
+              && args.length >= 1 && args[0] instanceof String) {
+            return values.get(args[0]);
+          }
+          if (method.getName().equals("toString") && args == null) {
+            return type.getSimpleName() + " stub";
+          }
+          Class<?> r = method.getReturnType();
+          if (r == boolean.class) {
+            return false;
+          } else if (r == long.class) {
+            return 0L;
+          } else if (r == int.class) {
+            return 0;
+          } else if (r.isPrimitive() && r != void.class) {
+            throw new UnsupportedOperationException(method.toString());
+          }
+          return null;
+        });
+    return type.cast(proxy);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.web.filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * FWRESTFilterのリクエストの認証区分の判定コストを計測します。<br>
+ * ルーティングテーブルと、以前のリクエスト毎に文字列を連結して比較する判定（legacy）を比較します。
+ * 大半のリクエストは全ての比較に一致しないトークン認証必須のAPIです。
+ * 実行時間に加えて、割り当て量（-prof gc）も比較してください。<br>
+ * テスト実行時には実行されません。mainメソッドから実行してください。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FWRouteTableBenchmark {
+
+  private static final String CONTEXT_PATH = "/handywedge-app";
+
+  @Param({"POST /fw/rest/api/token/pub", "GET /fw/rest/app/no_token/master/list",
+      "POST /fw/rest/app/order/detail/update"})
+  private String request;
+
+  private String method;
+  private String uri;
+  private FWRouteTable routeTable;
+
+  @Setup
+  public void setUp() {
+
+    int sp = request.indexOf(' ');
+    method = request.substring(0, sp);
+    // リクエスト毎に生成されるURIと同様に、定数とは別のインスタンスにする
+    uri = new String(CONTEXT_PATH + request.substring(sp + 1));
+    routeTable = FWRESTFilter.createRouteTable(CONTEXT_PATH);
+    if (routeTable() != legacy()) {
+      throw new IllegalStateException("route mismatch. request=" + request);
+    }
+  }
+
+  @Benchmark
+  public FWRouteTable.Route routeTable() {
+
+    return routeTable.match(method, uri, FWRouteTable.Route.TOKEN_REQUIRED);
+  }
+
+  @Benchmark
+  public FWRouteTable.Route legacy() {
+
+    return legacyMatch(method, uri, CONTEXT_PATH);
+  }
+
+  // 変更前のFWRESTFilter#doFilterの判定
+  private static FWRouteTable.Route legacyMatch(String method, String requestUrl,
+      String contextPath) {
+
+    if (method.equalsIgnoreCase("POST")
+        && (requestUrl.equals(contextPath + "/fw/rest/api/token/pub")
+            || requestUrl.equals(contextPath + "/fw/rest/api/token/pub/"))) {
+      return FWRouteTable.Route.AUTH_EXEMPT;
+    } else if (method.equalsIgnoreCase("POST")
+        && (requestUrl.equals(contextPath + "/fw/rest/api/oic/login")
+            || requestUrl.equals(contextPath + "/fw/rest/api/oic/login/"))) {
+      return FWRouteTable.Route.OIC_RESTRICTED;
+    } else if (method.equalsIgnoreCase("POST")
+        && (requestUrl.equals(contextPath + "/fw/rest/api/user")
+            || requestUrl.equals(contextPath + "/fw/rest/api/user/"))) {
+      return FWRouteTable.Route.AUTH_EXEMPT;
+    } else if (method.equalsIgnoreCase("GET")
+        && (requestUrl.equals(contextPath + "/fw/rest/api/user/actual"))) {
+      return FWRouteTable.Route.AUTH_EXEMPT;
+    } else if (method.equalsIgnoreCase("POST")
+        && (requestUrl.equals(contextPath + "/fw/rest/api/user/password/reset"))
+        || requestUrl.equals(contextPath + "/fw/rest/api/user/password/reset/")) {
+      return FWRouteTable.Route.AUTH_EXEMPT;
+    } else if (method.equalsIgnoreCase("GET")
+        && requestUrl.equals(contextPath + "/fw/rest/api/user/password/reset")) {
+      return FWRouteTable.Route.AUTH_EXEMPT;
+    }
+    return requestUrl.startsWith(contextPath + "/fw/rest/app/no_token/")
+        ? FWRouteTable.Route.TOKEN_OPTIONAL
+        : FWRouteTable.Route.TOKEN_REQUIRED;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    new Runner(
+        new OptionsBuilder().include(FWRouteTableBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.handywedge.config.FWMessageResources;
+import com.handywedge.context.FWFullContext;
+import com.handywedge.db.FWFullConnection;
+import com.handywedge.db.FWTestConnectionManager;
+import com.handywedge.test.FWTestBeans;
+import com.handywedge.user.FWUserImpl;
+
+/**
+ * 同一WFへのアクションを並列に実行した場合の通番の採番を検証します。<br>
+ * FWWFManagerImpl#doActionを実行し、FWWFServiceのメソッド毎にコミットします（@FWTransactionalと同様）。
+ */
+public class FWWFSerialAllocatorTest {
+
+  private static final String WF_ID = "WF0001";
+  private static final String ROLE = "R1";
+  private static final int THREADS = 8;
+  private static final int ACTIONS_PER_THREAD = 25;
+  private static final int ACTIONS = THREADS * ACTIONS_PER_THREAD;
+
+  private String url;
+  private Connection keepAlive;
+
+  // 実行中のスレッドのユーザー
+  private final ThreadLocal<FWUserImpl> currentUser = new ThreadLocal<>();
+
+  @After
+  public void tearDown() throws SQLException {
+
+    keepAlive.close();
+  }
+
+  @Test
+  public void maxIsGaplessUnderParallelActions() throws Exception {
+
+    List<Integer> serNos = runParallelActions(FWWFSerialAllocator.STRATEGY_MAX);
+
+    // WFID管理の行ロックで直列化されるため、1からの連番になる
+    for (int i = 0; i < ACTIONS; i++) {
+      assertEquals(i + 1, serNos.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void sequenceIsUniqueUnderParallelActions() throws Exception {
+
+    runParallelActions(FWWFSerialAllocator.STRATEGY_SEQUENCE);
+  }
+
+  @Test
+  public void identityIsUniqueUnderParallelActions() throws Exception {
+
+    runParallelActions(FWWFSerialAllocator.STRATEGY_IDENTITY);
+  }
+
+  @Test
+  public void blockIsUniqueUnderParallelActions() throws Exception {
+
+    runParallelActions(FWWFSerialAllocator.STRATEGY_BLOCK);
+  }
+
+  private void createTables(String strategy) throws SQLException {
+
+    url = "jdbc:h2:mem:wf" + System.nanoTime() + ";MODE=PostgreSQL;LOCK_TIMEOUT=30000";
+    keepAlive = DriverManager.getConnection(url); // 全てのコネクションが閉じてもDBを破棄しない
+    String serNoType = FWWFSerialAllocator.STRATEGY_IDENTITY.equals(strategy)
+        ? "int GENERATED BY DEFAULT AS IDENTITY"
+        : "int NOT NULL";
+    try (Statement st = keepAlive.createStatement()) {
+      st.execute("CREATE TABLE fw_user (id varchar(128) PRIMARY KEY, name varchar(256))");
+      st.execute("CREATE TABLE fw_status_master (status varchar(16), status_name varchar(128))");
+      st.execute("CREATE TABLE fw_wf_rote (action_code varchar(16) PRIMARY KEY,"
+          + " action varchar(128), pre_status varchar(16), post_status varchar(16))");
+      st.execute("CREATE TABLE fw_role_action (role varchar(16), action_code varchar(16),"
+          + " PRIMARY KEY (role, action_code))");
+      st.execute("CREATE TABLE fw_wf_id_management (wf_id varchar(36) PRIMARY KEY,"
+          + " status_code varchar(16), create_date timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL,"
+          + " update_date timestamp)");
+      st.execute("CREATE TABLE fw_wf_log (wf_id varchar(36) NOT NULL, wf_ser_no " + serNoType
+          + ", action_date timestamp, action_owner varchar(128), action_code varchar(16),"
+          + " status_code varchar(16), description varchar(1024),"
+          + " PRIMARY KEY (wf_id, wf_ser_no))");
+      st.execute("CREATE TABLE fw_wf_progress_management (wf_id varchar(36) NOT NULL,"
+          + " wf_ser_no int NOT NULL, action_code varchar(16), status_code varchar(16),"
+          + " create_date timestamp, PRIMARY KEY (wf_id, wf_ser_no))");
+      st.execute("CREATE SEQUENCE fw_wf_ser_no_seq");
+
+      // S0 -(A1)-> S1 -(A2)-> S2。A1は最終アクションではないので進捗管理に登録される
+      st.execute("INSERT INTO fw_status_master VALUES ('S0', '作成'), ('S1', '申請'),"
+          + " ('S2', '承認')");
+      st.execute("INSERT INTO fw_wf_rote VALUES ('A1', '申請', 'S0', 'S1'),"
+          + " ('A2', '承認', 'S1', 'S2')");
+      st.execute("INSERT INTO fw_role_action VALUES ('" + ROLE + "', 'A1'), ('" + ROLE
+          + "', 'A2')");
+      st.execute("INSERT INTO fw_wf_id_management (wf_id, status_code) VALUES ('" + WF_ID
+          + "', 'S0')");
+    }
+  }
+
+  // 全てのアクションが主キー違反なく登録され、登録件数と通番の件数が一致することを確認して通番を昇順で返す
+  private List<Integer> runParallelActions(String strategy) throws Exception {
+
+    createTables(strategy);
+
+    Map<String, String> config = new HashMap<>();
+    config.put(FWMessageResources.WF_SERIAL_STRATEGY, strategy);
+    config.put(FWMessageResources.WF_SERIAL_SEQUENCE_SQL,
+        "SELECT NEXT VALUE FOR fw_wf_ser_no_seq");
+    config.put(FWMessageResources.WF_SERIAL_BLOCK_SIZE, "10");
+
+    FWWFSerialAllocator allocator = new FWWFSerialAllocator();
+    FWTestBeans.inject(allocator, "logger", FWTestBeans.logger());
+    FWTestBeans.inject(allocator, "msgResources", FWTestBeans.resources(config));
+
+    FWTestConnectionManager cm = new FWTestConnectionManager();
+    FWWFService service = new CommitPerCallService(cm);
+    FWTestBeans.inject(service, "cm", cm);
+    FWTestBeans.inject(service, "serialAllocator", allocator);
+
+    FWWFManagerImpl manager = new FWWFManagerImpl();
+    FWTestBeans.inject(manager, "logger", FWTestBeans.logger());
+    FWTestBeans.inject(manager, "ctx", context());
+    FWTestBeans.inject(manager, "service", service);
+    FWTestBeans.inject(manager, "routeGraph", new FWWFRouteGraph()); // 未読み込みのため無効
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<Integer>>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < THREADS; t++) {
+        String owner = "user" + t;
+        Callable<List<Integer>> task = () -> {
+          List<Integer> result = new ArrayList<>();
+          FWUserImpl user = new FWUserImpl();
+          user.setId(owner);
+          user.setRole(ROLE);
+          currentUser.set(user);
+          try (Connection con = DriverManager.getConnection(url)) {
+            con.setAutoCommit(false);
+            cm.open(con);
+            start.await();
+            for (int i = 0; i < ACTIONS_PER_THREAD; i++) {
+              FWWFAction action = new FWWFAction();
+              action.setWfId(WF_ID);
+              action.setActionCode("A1");
+              FWWFLog log = manager.doAction(action, owner + "-" + i);
+              assertEquals(owner, log.getActionOwner());
+              assertEquals("S1", log.getStatusCode());
+              assertTrue(log.getWfSerNo() > 0);
+              result.add(log.getWfSerNo());
+            }
+          } finally {
+            cm.close();
+            currentUser.remove();
+          }
+          return result;
+        };
+        futures.add(executor.submit(task));
+      }
+      start.countDown();
+
+      List<Integer> serNos = new ArrayList<>();
+      for (Future<List<Integer>> future : futures) {
+        serNos.addAll(future.get(2, TimeUnit.MINUTES)); // 主キー違反の場合はここで失敗する
+      }
+      Collections.sort(serNos);
+      assertEquals(ACTIONS, serNos.size());
+      assertEquals(ACTIONS, serNos.stream().distinct().count());
+      assertEquals(ACTIONS, count("fw_wf_log"));
+      assertEquals(ACTIONS, count("fw_wf_progress_management"));
+      return serNos;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // getUserのみ実装したコンテキスト
+  private FWFullContext context() {
+
+    return (FWFullContext) Proxy.newProxyInstance(FWFullContext.class.getClassLoader(),
+        new Class<?>[] {FWFullContext.class}, (p, method, args) -> {
+          if (method.getName().equals("getUser")) {
+            return currentUser.get();
+          }
+          throw new UnsupportedOperationException(method.toString());
+        });
+  }
+
+  private int count(String table) throws SQLException {
+
+    try (Statement st = keepAlive.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  // 更新系のメソッド毎にコミットする。インターセプターが無いため@FWTransactionalの境界を再現する
+  private static final class CommitPerCallService extends FWWFService {
+
+    // FWWFService#cmと別名にする（FWTestBeans.injectはサブクラスのフィールドから検索する）
+    private final FWTestConnectionManager connections;
+
+    CommitPerCallService(FWTestConnectionManager connections) {
+      this.connections = connections;
+    }
+
+    @Override
+    public int updateWFIDManagement(FWWFIDManagement wfIdManagement) throws SQLException {
+      return commit(() -> super.updateWFIDManagement(wfIdManagement));
+    }
+
+    @Override
+    public FWWFLog insertWFLog(FWWFLog wfLog) throws SQLException {
+      return commit(() -> super.insertWFLog(wfLog));
+    }
+
+    @Override
+    public int insertWFProgressManagement(FWWFProgressManagement wfProgressManagement)
+        throws SQLException {
+      return commit(() -> super.insertWFProgressManagement(wfProgressManagement));
+    }
+
+    private <T> T commit(Callable<T> call) throws SQLException {
+      FWFullConnection con = connections.getConnection();
+      try {
+        T result = call.call();
+        con.commit();
+        return result;
+      } catch (Exception e) {
+        con.rollback();
+        if (e instanceof SQLException) {
+          throw (SQLException) e;
+        }
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
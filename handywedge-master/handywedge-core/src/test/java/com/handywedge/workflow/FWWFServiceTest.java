@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 Handywedge Co.,Ltd.
+ *
+ * This software is released under the MIT License.
+ *
+ * http://opensource.org/licenses/mit-license.php
+ */
+package com.handywedge.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.handywedge.db.FWTestConnectionManager;
+import com.handywedge.test.FWTestBeans;
+
+/**
+ * 一覧画面向けの一括取得を検証します。<br>
+ * 検索条件の件数に関わらず、同じSQL文で問い合わせることも確認します。
+ */
+public class FWWFServiceTest {
+
+  private Connection con;
+  private FWTestConnectionManager cm;
+  private FWWFService service;
+
+  // prepareStatementに渡されたSQL文
+  private final Set<String> preparedSql = new HashSet<>();
+
+  @Before
+  public void setUp() throws SQLException {
+
+    con = DriverManager.getConnection("jdbc:h2:mem:wf" + System.nanoTime() + ";MODE=PostgreSQL");
+    try (Statement st = con.createStatement()) {
+      st.execute("CREATE TABLE fw_status_master (status varchar(16), status_name varchar(256))");
+      st.execute("CREATE TABLE fw_wf_id_management (wf_id varchar(36) PRIMARY KEY,"
+          + " status_code varchar(16), create_date timestamp, update_date timestamp)");
+      st.execute("CREATE TABLE fw_wf_progress_management (wf_id varchar(36), wf_ser_no int,"
+          + " action_code varchar(16), status_code varchar(16))");
+      st.execute("CREATE TABLE fw_wf_rote (action_code varchar(16), action varchar(256),"
+          + " pre_status varchar(16), post_status varchar(16))");
+      st.execute("CREATE TABLE fw_role_action (role varchar(16), action_code varchar(16))");
+
+      st.execute("INSERT INTO fw_status_master VALUES ('S1', '申請'), ('S2', '承認'),"
+          + " ('S3', '完了')");
+      st.execute("INSERT INTO fw_wf_id_management (wf_id, status_code) VALUES ('WF1', 'S1'),"
+          + " ('WF2', 'S2'), ('WF3', 'S3')");
+      st.execute("INSERT INTO fw_wf_progress_management VALUES ('WF2', 1, 'A1', 'S1'),"
+          + " ('WF2', 2, 'A2', 'S2'), ('WF3', 1, 'A1', 'S1'), ('WF3', 2, 'A2', 'S2'),"
+          + " ('WF3', 3, 'A3', 'S3')");
+      st.execute("INSERT INTO fw_wf_rote VALUES ('A2', '承認', 'S1', 'S2'),"
+          + " ('A3', '完了', 'S2', 'S3'), ('A4', '差戻し', 'S2', 'S1')");
+      st.execute("INSERT INTO fw_role_action VALUES ('R1', 'A2'), ('R1', 'A3'), ('R2', 'A4')");
+    }
+
+    cm = new FWTestConnectionManager();
+    cm.open(recording(con));
+    service = new FWWFService();
+    FWTestBeans.inject(service, "cm", cm);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+
+    cm.close();
+    con.close();
+  }
+
+  @Test
+  public void getStatusesIgnoresDuplicatesAndNulls() throws SQLException {
+
+    Map<String, FWWFStatus> statuses =
+        service.getStatuses(Arrays.asList("WF1", "WF2", "WF1", null, "WF9"));
+
+    assertEquals(2, statuses.size());
+    assertEquals("S1", statuses.get("WF1").getStatus());
+    assertEquals("承認", statuses.get("WF2").getStatusName());
+    assertTrue(service.getStatuses(Collections.emptyList()).isEmpty());
+  }
+
+  @Test
+  public void getStatusesUsesOneStatementForAnySize() throws SQLException {
+
+    service.getStatuses(Arrays.asList("WF1"));
+    service.getStatuses(Arrays.asList("WF1", "WF2"));
+    service.getStatuses(Arrays.asList("WF1", "WF2", "WF3"));
+
+    assertEquals(1, preparedSql.size());
+  }
+
+  @Test
+  public void getActionsGroupsByPreStatus() throws SQLException {
+
+    Map<String, List<FWWFAction>> actions = service.getActions(Arrays.asList("S1", "S2"), "R1");
+
+    assertEquals(2, actions.size());
+    assertEquals("A2", actions.get("S1").get(0).getActionCode());
+    assertEquals(1, actions.get("S2").size());
+    assertEquals("A3", actions.get("S2").get(0).getActionCode());
+  }
+
+  @Test
+  public void getRollbackActionsReturnsLatestTwoStatuses() throws SQLException {
+
+    Map<String, FWWFAction> actions = service.getRollbackActions(Arrays.asList("WF1", "WF2", "WF3"));
+
+    // WF1は進捗が無いため対象外
+    assertEquals(2, actions.size());
+    assertEquals("S2", actions.get("WF2").getPreStatus());
+    assertEquals("S1", actions.get("WF2").getPostStatus());
+    assertEquals("S3", actions.get("WF3").getPreStatus());
+    assertEquals("S2", actions.get("WF3").getPostStatus());
+  }
+
+  // prepareStatementのSQL文を記録するコネクション
+  private Connection recording(Connection target) {
+
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class}, (p, method, args) -> {
+          if (method.getName().equals("prepareStatement")) {
+            preparedSql.add((String) args[0]);
+          }
+          try {
+            return method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+}
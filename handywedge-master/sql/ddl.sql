@@ -16,6 +16,7 @@ DROP TABLE IF EXISTS fw_wf_id_management;
 DROP TABLE IF EXISTS fw_wf_log;
 DROP TABLE IF EXISTS fw_wf_progress_management;
 DROP TABLE IF EXISTS fw_wf_rote;
+DROP SEQUENCE IF EXISTS fw_wf_ser_no_seq;
 
 
 
@@ -237,6 +238,13 @@ CREATE TABLE fw_wf_log
 ) WITHOUT OIDS;
 
 
+-- ワークフローログ通番 : fw.wf.serial.strategy=sequence、blockの場合に使用します。
+-- blockはサーバー毎に範囲を確保するため、複数サーバーではwf_ser_noが登録順に増加しない場合があります。
+-- 既存データがある場合はfw_wf_logのwf_ser_noの最大値より大きい値から開始して下さい（blockの場合は最大値÷確保件数より大きい値）。
+-- identityの場合はfw_wf_log.wf_ser_noを「int GENERATED BY DEFAULT AS IDENTITY」として下さい。
+CREATE SEQUENCE fw_wf_ser_no_seq;
+
+
 -- ワークフロー進捗管理
 CREATE TABLE fw_wf_progress_management
 (